@@ -0,0 +1,307 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.mongo;
+
+import dev.demeng.pluginbase.model.BlockPosition;
+import dev.demeng.pluginbase.model.Position;
+import dev.demeng.pluginbase.model.Vector3d;
+import java.util.UUID;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.UuidCodec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Provides codecs for the models of the library, which are immutable and therefore cannot be
+ * handled by POJO codecs. They are stored as documents with the same field names as their JSON
+ * form, so documents saved through Gson are read back unchanged.
+ *
+ * <p>UUIDs are written as standard binary UUIDs, and read from standard or legacy Java binary
+ * UUIDs as well as from the strings Gson stored them as.</p>
+ */
+public class ModelCodecProvider implements CodecProvider {
+
+  private static final Codec<Position> POSITION = new PositionCodec();
+  private static final Codec<BlockPosition> BLOCK_POSITION = new BlockPositionCodec();
+  private static final Codec<Vector3d> VECTOR = new Vector3dCodec();
+  private static final Codec<UUID> UUID_CODEC = new LenientUuidCodec();
+
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> Codec<T> get(final Class<T> clazz, final CodecRegistry registry) {
+
+    if (clazz == Position.class) {
+      return (Codec<T>) POSITION;
+    }
+
+    if (clazz == BlockPosition.class) {
+      return (Codec<T>) BLOCK_POSITION;
+    }
+
+    if (clazz == Vector3d.class) {
+      return (Codec<T>) VECTOR;
+    }
+
+    if (clazz == UUID.class) {
+      return (Codec<T>) UUID_CODEC;
+    }
+
+    return null;
+  }
+
+  private static double readDouble(@NotNull final BsonReader reader) {
+    switch (reader.getCurrentBsonType()) {
+      case INT32:
+        return reader.readInt32();
+      case INT64:
+        return reader.readInt64();
+      default:
+        return reader.readDouble();
+    }
+  }
+
+  private static int readInt(@NotNull final BsonReader reader) {
+    switch (reader.getCurrentBsonType()) {
+      case INT64:
+        return (int) reader.readInt64();
+      case DOUBLE:
+        return (int) reader.readDouble();
+      default:
+        return reader.readInt32();
+    }
+  }
+
+  @NotNull
+  private static <T> T require(@Nullable final T value, @NotNull final String field) {
+
+    if (value == null) {
+      throw new BsonInvalidOperationException("Missing field '" + field + "'");
+    }
+
+    return value;
+  }
+
+  private static final class LenientUuidCodec implements Codec<UUID> {
+
+    private static final UuidCodec STANDARD = new UuidCodec(UuidRepresentation.STANDARD);
+    private static final UuidCodec JAVA_LEGACY = new UuidCodec(UuidRepresentation.JAVA_LEGACY);
+
+    @Override
+    public void encode(final BsonWriter writer, final UUID value, final EncoderContext context) {
+      STANDARD.encode(writer, value, context);
+    }
+
+    @Override
+    public UUID decode(final BsonReader reader, final DecoderContext context) {
+
+      if (reader.getCurrentBsonType() == BsonType.STRING) {
+        try {
+          return UUID.fromString(reader.readString());
+        } catch (final IllegalArgumentException ex) {
+          throw new BsonInvalidOperationException("Invalid UUID string: " + ex.getMessage());
+        }
+      }
+
+      return reader.peekBinarySubType() == BsonBinarySubType.UUID_LEGACY.getValue()
+          ? JAVA_LEGACY.decode(reader, context) : STANDARD.decode(reader, context);
+    }
+
+    @Override
+    public Class<UUID> getEncoderClass() {
+      return UUID.class;
+    }
+  }
+
+  private static final class PositionCodec implements Codec<Position> {
+
+    @Override
+    public void encode(
+        final BsonWriter writer,
+        final Position value,
+        final EncoderContext context) {
+      writer.writeStartDocument();
+      writer.writeString("world", value.getWorld());
+      writer.writeDouble("x", value.getX());
+      writer.writeDouble("y", value.getY());
+      writer.writeDouble("z", value.getZ());
+      writer.writeEndDocument();
+    }
+
+    @Override
+    public Position decode(final BsonReader reader, final DecoderContext context) {
+
+      String world = null;
+      double x = 0;
+      double y = 0;
+      double z = 0;
+
+      reader.readStartDocument();
+
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+        switch (reader.readName()) {
+          case "world":
+            world = reader.readString();
+            break;
+          case "x":
+            x = readDouble(reader);
+            break;
+          case "y":
+            y = readDouble(reader);
+            break;
+          case "z":
+            z = readDouble(reader);
+            break;
+          default:
+            reader.skipValue();
+            break;
+        }
+      }
+
+      reader.readEndDocument();
+      return Position.of(require(world, "world"), x, y, z);
+    }
+
+    @Override
+    public Class<Position> getEncoderClass() {
+      return Position.class;
+    }
+  }
+
+  private static final class BlockPositionCodec implements Codec<BlockPosition> {
+
+    @Override
+    public void encode(
+        final BsonWriter writer,
+        final BlockPosition value,
+        final EncoderContext context) {
+      writer.writeStartDocument();
+      writer.writeString("world", value.getWorld());
+      writer.writeInt32("x", value.getX());
+      writer.writeInt32("y", value.getY());
+      writer.writeInt32("z", value.getZ());
+      writer.writeEndDocument();
+    }
+
+    @Override
+    public BlockPosition decode(final BsonReader reader, final DecoderContext context) {
+
+      String world = null;
+      int x = 0;
+      int y = 0;
+      int z = 0;
+
+      reader.readStartDocument();
+
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+        switch (reader.readName()) {
+          case "world":
+            world = reader.readString();
+            break;
+          case "x":
+            x = readInt(reader);
+            break;
+          case "y":
+            y = readInt(reader);
+            break;
+          case "z":
+            z = readInt(reader);
+            break;
+          default:
+            reader.skipValue();
+            break;
+        }
+      }
+
+      reader.readEndDocument();
+      return BlockPosition.of(require(world, "world"), x, y, z);
+    }
+
+    @Override
+    public Class<BlockPosition> getEncoderClass() {
+      return BlockPosition.class;
+    }
+  }
+
+  private static final class Vector3dCodec implements Codec<Vector3d> {
+
+    @Override
+    public void encode(
+        final BsonWriter writer,
+        final Vector3d value,
+        final EncoderContext context) {
+      writer.writeStartDocument();
+      writer.writeDouble("x", value.getX());
+      writer.writeDouble("y", value.getY());
+      writer.writeDouble("z", value.getZ());
+      writer.writeEndDocument();
+    }
+
+    @Override
+    public Vector3d decode(final BsonReader reader, final DecoderContext context) {
+
+      double x = 0;
+      double y = 0;
+      double z = 0;
+
+      reader.readStartDocument();
+
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+        switch (reader.readName()) {
+          case "x":
+            x = readDouble(reader);
+            break;
+          case "y":
+            y = readDouble(reader);
+            break;
+          case "z":
+            z = readDouble(reader);
+            break;
+          default:
+            reader.skipValue();
+            break;
+        }
+      }
+
+      reader.readEndDocument();
+      return Vector3d.of(x, y, z);
+    }
+
+    @Override
+    public Class<Vector3d> getEncoderClass() {
+      return Vector3d.class;
+    }
+  }
+}
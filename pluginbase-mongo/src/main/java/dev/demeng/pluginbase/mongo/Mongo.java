@@ -26,10 +26,24 @@
 
 package dev.demeng.pluginbase.mongo;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import lombok.Getter;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.Conventions;
+import org.bson.codecs.pojo.PojoCodecProvider;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -40,8 +54,63 @@ public class Mongo implements IMongo {
   @Getter @NotNull private final MongoClient client;
   @Getter @NotNull private final MongoDatabase database;
 
-  public Mongo(@NotNull final MongoCredentials credentials) {
-    this.client = MongoClients.create(credentials.getUri());
+  /**
+   * The codecs used to encode and decode documents, shared by every database of the client.
+   */
+  @Getter @NotNull private final CodecRegistry codecRegistry;
+
+  /**
+   * The command latency and connection pool metrics of the client.
+   */
+  @Getter @NotNull private final MongoMetrics metrics = new MongoMetrics();
+
+  @NotNull private final List<MongoWriteQueue<?>> writeQueues = new CopyOnWriteArrayList<>();
+
+  /**
+   * Creates a new Mongo datasource.
+   *
+   * <p>Objects are encoded straight to BSON, without going through JSON. The library's models are
+   * supported out of the box, and any other class is mapped by the driver's POJO codecs, which are
+   * built once per class and cached. Mapped classes need a no-argument constructor, or a
+   * constructor annotated with {@link org.bson.codecs.pojo.annotations.BsonCreator}, and their
+   * fields are read through getters and may be written directly.</p>
+   *
+   * <p>UUIDs are stored as standard binary UUIDs, and UUIDs stored as strings, as they were when
+   * documents went through Gson, are still read.</p>
+   *
+   * <p>The client is configured with the connection URI first, then the settings of the
+   * credentials.</p>
+   *
+   * @param credentials The database credentials
+   * @param codecs      Additional codecs, which take priority over the default ones
+   */
+  public Mongo(@NotNull final MongoCredentials credentials, @NotNull final CodecProvider... codecs) {
+
+    final PojoCodecProvider pojoCodecs = PojoCodecProvider.builder()
+        .automatic(true)
+        .conventions(Arrays.asList(Conventions.CLASS_AND_PROPERTY_CONVENTION,
+            Conventions.ANNOTATION_CONVENTION, Conventions.SET_PRIVATE_FIELDS_CONVENTION,
+            Conventions.OBJECT_ID_GENERATORS))
+        .build();
+
+    // The POJO codecs come last, since they accept nearly any class.
+    final List<CodecProvider> providers = new ArrayList<>(Arrays.asList(codecs));
+    providers.add(new ModelCodecProvider());
+
+    this.codecRegistry = CodecRegistries.fromRegistries(
+        CodecRegistries.fromProviders(providers),
+        MongoClientSettings.getDefaultCodecRegistry(),
+        CodecRegistries.fromProviders(pojoCodecs));
+
+    final MongoClientSettings.Builder settings = MongoClientSettings.builder()
+        .applyConnectionString(new ConnectionString(credentials.getUri()))
+        .codecRegistry(this.codecRegistry)
+        .uuidRepresentation(UuidRepresentation.STANDARD)
+        .addCommandListener(this.metrics)
+        .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(this.metrics));
+    credentials.apply(settings);
+
+    this.client = MongoClients.create(settings.build());
     this.database = this.client.getDatabase(credentials.getDatabase());
   }
 
@@ -50,8 +119,89 @@ public class Mongo implements IMongo {
     return this.client.getDatabase(name);
   }
 
+  /**
+   * Gets a collection of the main database whose documents are mapped to the provided class.
+   *
+   * <p>Unless a codec is provided for it, the class is mapped by the automatic POJO codecs, which
+   * need a no-argument constructor or a constructor annotated with
+   * {@link org.bson.codecs.pojo.annotations.BsonCreator}. Immutable classes, such as Lombok
+   * {@code @Value} classes or {@code @Data} classes with only final fields, therefore cannot be
+   * decoded without annotating their constructor.</p>
+   *
+   * @param name The name of the collection
+   * @param type The class of the documents
+   * @param <T>  The type of the documents
+   * @return The collection
+   */
+  @NotNull
+  public <T> MongoCollection<T> getCollection(
+      @NotNull final String name,
+      @NotNull final Class<T> type) {
+    return this.database.getCollection(name, type);
+  }
+
+  /**
+   * Creates a paged scan of the collection of the main database. Use
+   * {@link MongoScan#withFilter(org.bson.conversions.Bson)} to read only some documents.
+   *
+   * @param collection The name of the collection
+   * @return The scan
+   */
+  @NotNull
+  public MongoScan<Document> scan(@NotNull final String collection) {
+    return this.scan(this.database.getCollection(collection));
+  }
+
+  /**
+   * Creates a paged scan of the collection. Use
+   * {@link MongoScan#withFilter(org.bson.conversions.Bson)} to read only some documents.
+   *
+   * @param collection The collection
+   * @param <T>        The type of the documents
+   * @return The scan
+   */
+  @NotNull
+  public <T> MongoScan<T> scan(@NotNull final MongoCollection<T> collection) {
+    return new MongoScan<>(collection);
+  }
+
+  /**
+   * Creates a write queue for the collection of the main database. The queue must be started with
+   * {@link MongoWriteQueue#start()} once configured, and is flushed when this datasource closes.
+   *
+   * @param collection The name of the collection
+   * @return The write queue
+   */
+  @NotNull
+  public MongoWriteQueue<Document> writeQueue(@NotNull final String collection) {
+    return this.writeQueue(this.database.getCollection(collection));
+  }
+
+  /**
+   * Creates a write queue for the collection. The queue must be started with
+   * {@link MongoWriteQueue#start()} once configured, and is flushed when this datasource closes.
+   *
+   * @param collection The collection
+   * @param <T>        The type of the documents
+   * @return The write queue
+   */
+  @NotNull
+  public <T> MongoWriteQueue<T> writeQueue(@NotNull final MongoCollection<T> collection) {
+    final MongoWriteQueue<T> queue = new MongoWriteQueue<>(collection);
+    this.writeQueues.add(queue);
+    return queue;
+  }
+
   @Override
   public void close() {
+
+    // Pending writes are sent before the client they use is closed.
+    for (final MongoWriteQueue<?> queue : this.writeQueues) {
+      queue.close();
+    }
+
+    this.writeQueues.clear();
+
     if (this.client != null) {
       this.client.close();
     }
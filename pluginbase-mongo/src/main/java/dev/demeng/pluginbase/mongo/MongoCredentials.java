@@ -24,12 +24,26 @@
 
 package dev.demeng.pluginbase.mongo;
 
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadPreference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import lombok.Data;
 import org.bukkit.configuration.ConfigurationSection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * The POJO containing the credentials to a Mongo database.
+ *
+ * <p>Settings left unset keep the value of the connection URI, or the driver's default if the URI
+ * does not set them either.</p>
  */
 @Data(staticConstructor = "of")
 public final class MongoCredentials {
@@ -44,16 +58,192 @@ public final class MongoCredentials {
    */
   @NotNull private final String database;
 
+  /**
+   * The maximum number of connections in the pool of each server. Null if unset.
+   */
+  @Nullable private Integer maxPoolSize;
+
+  /**
+   * The minimum number of connections kept in the pool of each server. Null if unset.
+   */
+  @Nullable private Integer minPoolSize;
+
+  /**
+   * The maximum time to wait for a connection once the pool is full, in milliseconds. Null if
+   * unset.
+   */
+  @Nullable private Long maxWaitMillis;
+
+  /**
+   * The names of the compressors to negotiate with the server, in order of preference. Empty if
+   * unset.
+   */
+  @NotNull private List<String> compressors = Collections.emptyList();
+
+  /**
+   * The name of the read preference, such as {@code secondaryPreferred}. Null if unset.
+   */
+  @Nullable private String readPreference;
+
+  /**
+   * Additional settings applied last, for anything not covered by these credentials. Null if
+   * unset.
+   */
+  @Nullable private Consumer<MongoClientSettings.Builder> settings;
+
   /**
    * Gets database credentials from a configuration section.
    *
+   * <p>Besides the URI and database, the section may contain a {@code pool} section with
+   * {@code max-size}, {@code min-size} and {@code max-wait-millis}, a {@code compressors} list and
+   * a {@code read-preference} value.</p>
+   *
    * @param section The configuration section
    * @return The database credentials provided
    */
   @NotNull
   public static MongoCredentials of(@NotNull final ConfigurationSection section) {
-    return new MongoCredentials(
+
+    final MongoCredentials credentials = new MongoCredentials(
         section.getString("uri", "mongodb://localhost:27017"),
         section.getString("database", "minecraft"));
+
+    if (section.isInt("pool.max-size")) {
+      credentials.withPool(section.getInt("pool.max-size"), section.getInt("pool.min-size", 0));
+    }
+
+    if (section.contains("pool.max-wait-millis")) {
+      credentials.withMaxWait(section.getLong("pool.max-wait-millis"), TimeUnit.MILLISECONDS);
+    }
+
+    credentials.withCompressors(section.getStringList("compressors").toArray(new String[0]));
+    credentials.setReadPreference(section.getString("read-preference"));
+    return credentials;
+  }
+
+  /**
+   * Sets the size of the connection pool of each server.
+   *
+   * @param maxSize The maximum number of connections, must be positive
+   * @param minSize The minimum number of connections kept
+   * @return this
+   */
+  @NotNull
+  public MongoCredentials withPool(final int maxSize, final int minSize) {
+
+    if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+      throw new IllegalArgumentException("Invalid pool size " + maxSize + "/" + minSize);
+    }
+
+    this.maxPoolSize = maxSize;
+    this.minPoolSize = minSize;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time to wait for a connection once the pool is full.
+   *
+   * @param maxWait The maximum wait, or 0 to fail immediately
+   * @param unit    The unit of the maximum wait
+   * @return this
+   */
+  @NotNull
+  public MongoCredentials withMaxWait(final long maxWait, @NotNull final TimeUnit unit) {
+
+    if (maxWait < 0) {
+      throw new IllegalArgumentException("Maximum wait cannot be negative");
+    }
+
+    this.maxWaitMillis = unit.toMillis(maxWait);
+    return this;
+  }
+
+  /**
+   * Sets the compressors to negotiate with the server, in order of preference. Supported names are
+   * {@code zstd}, {@code snappy} and {@code zlib}. Zstandard and Snappy require zstd-jni and
+   * snappy-java to be present at runtime.
+   *
+   * @param compressors The names of the compressors
+   * @return this
+   */
+  @NotNull
+  public MongoCredentials withCompressors(@NotNull final String... compressors) {
+    this.compressors = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(compressors)));
+    return this;
+  }
+
+  /**
+   * Sets the read preference, such as {@code secondaryPreferred} to move reads away from the
+   * primary.
+   *
+   * @param readPreference The read preference
+   * @return this
+   */
+  @NotNull
+  public MongoCredentials withReadPreference(@NotNull final ReadPreference readPreference) {
+    this.readPreference = readPreference.getName();
+    return this;
+  }
+
+  /**
+   * Sets additional settings applied last, for anything not covered by these credentials.
+   *
+   * @param settings The settings to apply to the builder
+   * @return this
+   */
+  @NotNull
+  public MongoCredentials withSettings(
+      @NotNull final Consumer<MongoClientSettings.Builder> settings) {
+    this.settings = settings;
+    return this;
+  }
+
+  void apply(@NotNull final MongoClientSettings.Builder builder) {
+
+    builder.applyToConnectionPoolSettings(pool -> {
+      if (this.maxPoolSize != null) {
+        pool.maxSize(this.maxPoolSize);
+      }
+
+      if (this.minPoolSize != null) {
+        pool.minSize(this.minPoolSize);
+      }
+
+      if (this.maxWaitMillis != null) {
+        pool.maxWaitTime(this.maxWaitMillis, TimeUnit.MILLISECONDS);
+      }
+    });
+
+    if (!this.compressors.isEmpty()) {
+      final List<MongoCompressor> list = new ArrayList<>();
+
+      for (final String name : this.compressors) {
+        list.add(createCompressor(name));
+      }
+
+      builder.compressorList(list);
+    }
+
+    if (this.readPreference != null) {
+      builder.readPreference(ReadPreference.valueOf(this.readPreference));
+    }
+
+    if (this.settings != null) {
+      this.settings.accept(builder);
+    }
+  }
+
+  @NotNull
+  private static MongoCompressor createCompressor(@NotNull final String name) {
+    switch (name.toLowerCase(Locale.ROOT)) {
+      case "zstd":
+        return MongoCompressor.createZstdCompressor();
+      case "snappy":
+        return MongoCompressor.createSnappyCompressor();
+      case "zlib":
+        return MongoCompressor.createZlibCompressor();
+      default:
+        throw new IllegalArgumentException("Unknown Mongo compressor: " + name);
+    }
   }
 }
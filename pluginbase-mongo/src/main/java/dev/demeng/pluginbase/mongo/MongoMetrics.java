@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.mongo;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records the latency of every command per collection, and how long threads wait for pooled
+ * connections. Registered on the client of every {@link Mongo} datasource.
+ */
+public class MongoMetrics implements CommandListener, ConnectionPoolListener {
+
+  private static final String NO_COLLECTION = "";
+
+  @NotNull private final Map<String, Timer> collections = new ConcurrentHashMap<>();
+  @NotNull private final Map<Integer, Timer> inFlight = new ConcurrentHashMap<>();
+
+  // The sync driver checks connections out on the thread running the command.
+  @NotNull private final ThreadLocal<Long> checkOutStart = new ThreadLocal<>();
+
+  @NotNull private final LongAdder checkedOut = new LongAdder();
+  @NotNull private final LongAdder checkOutFailures = new LongAdder();
+  @NotNull private final LongAdder totalWaitNanos = new LongAdder();
+  @NotNull private final AtomicLong maxWaitNanos = new AtomicLong();
+  @NotNull private final AtomicLong openConnections = new AtomicLong();
+  @NotNull private final AtomicLong usedConnections = new AtomicLong();
+
+  MongoMetrics() {
+  }
+
+  @Override
+  public void commandStarted(final CommandStartedEvent event) {
+    final String collection = getCollection(event.getCommandName(), event.getCommand());
+    this.inFlight.put(event.getRequestId(),
+        this.collections.computeIfAbsent(collection, key -> new Timer()));
+  }
+
+  @Override
+  public void commandSucceeded(final CommandSucceededEvent event) {
+    final Timer timer = this.inFlight.remove(event.getRequestId());
+
+    if (timer != null) {
+      timer.record(event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+  }
+
+  @Override
+  public void commandFailed(final CommandFailedEvent event) {
+    final Timer timer = this.inFlight.remove(event.getRequestId());
+
+    if (timer != null) {
+      timer.record(event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+  }
+
+  @Override
+  public void connectionCheckOutStarted(final ConnectionCheckOutStartedEvent event) {
+    this.checkOutStart.set(System.nanoTime());
+  }
+
+  @Override
+  public void connectionCheckedOut(final ConnectionCheckedOutEvent event) {
+    this.checkedOut.increment();
+    this.usedConnections.incrementAndGet();
+    this.recordWait();
+  }
+
+  @Override
+  public void connectionCheckOutFailed(final ConnectionCheckOutFailedEvent event) {
+    this.checkOutFailures.increment();
+    this.recordWait();
+  }
+
+  @Override
+  public void connectionCheckedIn(final ConnectionCheckedInEvent event) {
+    this.usedConnections.decrementAndGet();
+  }
+
+  @Override
+  public void connectionCreated(final ConnectionCreatedEvent event) {
+    this.openConnections.incrementAndGet();
+  }
+
+  @Override
+  public void connectionClosed(final ConnectionClosedEvent event) {
+    this.openConnections.decrementAndGet();
+  }
+
+  /**
+   * Gets a snapshot of the metrics since the datasource was created.
+   *
+   * @return The statistics
+   */
+  @NotNull
+  public Statistics getStatistics() {
+
+    final Map<String, CommandStatistics> commands = new HashMap<>();
+
+    for (final Map.Entry<String, Timer> entry : this.collections.entrySet()) {
+      commands.put(entry.getKey(), entry.getValue().snapshot());
+    }
+
+    final long checkOuts = this.checkedOut.sum();
+    final long waits = checkOuts + this.checkOutFailures.sum();
+
+    return new Statistics(Collections.unmodifiableMap(commands), this.openConnections.get(),
+        this.usedConnections.get(), checkOuts, this.checkOutFailures.sum(),
+        waits == 0 ? 0 : this.totalWaitNanos.sum() / waits, this.maxWaitNanos.get());
+  }
+
+  private void recordWait() {
+
+    final Long start = this.checkOutStart.get();
+
+    if (start == null) {
+      return;
+    }
+
+    this.checkOutStart.remove();
+
+    final long wait = System.nanoTime() - start;
+    this.totalWaitNanos.add(wait);
+    this.maxWaitNanos.accumulateAndGet(wait, Math::max);
+  }
+
+  @NotNull
+  private static String getCollection(
+      @NotNull final String commandName,
+      @NotNull final BsonDocument command) {
+
+    // Most commands name their collection as their own value, but getMore names a cursor.
+    final BsonValue value = command.get(
+        "getMore".equals(commandName) ? "collection" : commandName);
+
+    if (value == null || !value.isString()) {
+      return NO_COLLECTION;
+    }
+
+    final BsonValue database = command.get("$db");
+    return database != null && database.isString()
+        ? database.asString().getValue() + "." + value.asString().getValue()
+        : value.asString().getValue();
+  }
+
+  private static final class Timer {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private void record(final long nanos, final boolean failed) {
+      this.count.increment();
+      this.totalNanos.add(nanos);
+      this.maxNanos.accumulateAndGet(nanos, Math::max);
+
+      if (failed) {
+        this.failures.increment();
+      }
+    }
+
+    @NotNull
+    private CommandStatistics snapshot() {
+      final long total = this.count.sum();
+      return new CommandStatistics(total, this.failures.sum(),
+          total == 0 ? 0 : this.totalNanos.sum() / total, this.maxNanos.get());
+    }
+  }
+
+  /**
+   * An immutable snapshot of the commands sent for a collection.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class CommandStatistics {
+
+    /**
+     * The number of commands completed.
+     */
+    private final long commands;
+
+    /**
+     * The number of commands that failed.
+     */
+    private final long failures;
+
+    /**
+     * The average time taken by a command, in nanoseconds.
+     */
+    private final long averageNanos;
+
+    /**
+     * The longest time taken by a command, in nanoseconds.
+     */
+    private final long maxNanos;
+  }
+
+  /**
+   * An immutable snapshot of a datasource's metrics.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Statistics {
+
+    /**
+     * The statistics of each collection, keyed by namespace ({@code database.collection}).
+     * Commands without a collection, such as {@code ping}, are under an empty key.
+     */
+    @NotNull private final Map<String, CommandStatistics> collections;
+
+    /**
+     * The number of open connections, across every server.
+     */
+    private final long openConnections;
+
+    /**
+     * The number of connections in use, across every server.
+     */
+    private final long usedConnections;
+
+    /**
+     * The number of connections checked out of the pools.
+     */
+    private final long checkOuts;
+
+    /**
+     * The number of times a connection could not be checked out, such as when the wait timed out.
+     */
+    private final long checkOutFailures;
+
+    /**
+     * The average time waited to check out a connection, in nanoseconds.
+     */
+    private final long averageWaitNanos;
+
+    /**
+     * The longest time waited to check out a connection, in nanoseconds.
+     */
+    private final long maxWaitNanos;
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.mongo;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.promise.ThreadContext;
+import dev.demeng.pluginbase.text.Text;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import lombok.Getter;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads every document matching a query in pages, for jobs over whole collections. Documents are
+ * read in {@code _id} order through a cursor fetching one page per batch, and each page is handed
+ * to a handler on the main thread or an asynchronous thread.
+ *
+ * <p>The next page is fetched while the handler processes the current one, but no further, so at
+ * most two pages are held in memory however fast the database is. If the cursor fails, such as
+ * after a failover, it is reopened after the last fetched {@code _id} without delivering any page
+ * twice. If the handler fails, the scan stops, and can be resumed later using
+ * {@link #getLastId()} and {@link #withResumeAfter(Object)}.</p>
+ *
+ * @param <T> The type of the documents
+ */
+public class MongoScan<T> {
+
+  /**
+   * The default number of documents in each page.
+   */
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+  /**
+   * The default number of consecutive failed reads after which the scan fails.
+   */
+  public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+  private static final long MIN_RETRY_BACKOFF = 500;
+  private static final long MAX_RETRY_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * The collection being scanned.
+   */
+  @NotNull @Getter private final MongoCollection<T> collection;
+
+  @NotNull private Bson filter = new Document();
+  @Nullable private Bson projection;
+  @Nullable private Object resumeAfter;
+
+  /**
+   * The number of documents in each page, which is also the batch size of the cursor.
+   */
+  @Getter private int pageSize = DEFAULT_PAGE_SIZE;
+
+  /**
+   * The number of consecutive failed reads after which the scan fails.
+   */
+  @Getter private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+  /**
+   * The {@code _id} of the last document of the last page handled successfully, or null if no page
+   * has been handled yet.
+   */
+  @Nullable @Getter private volatile BsonValue lastId;
+
+  @NotNull private final AtomicLong delivered = new AtomicLong();
+
+  MongoScan(@NotNull final MongoCollection<T> collection) {
+    this.collection = collection;
+  }
+
+  /**
+   * Sets the filter of the documents to read. Every document is read by default.
+   *
+   * @param filter The filter
+   * @return this
+   */
+  @NotNull
+  public MongoScan<T> withFilter(@NotNull final Bson filter) {
+    this.filter = filter;
+    return this;
+  }
+
+  /**
+   * Sets the fields to read. The projection must not exclude {@code _id}, which is needed to
+   * resume the scan.
+   *
+   * @param projection The projection
+   * @return this
+   */
+  @NotNull
+  public MongoScan<T> withProjection(@Nullable final Bson projection) {
+    this.projection = projection;
+    return this;
+  }
+
+  /**
+   * Sets the number of documents in each page. On the main thread, a single page is handled per
+   * tick, so the page size should keep the handler well within a tick.
+   *
+   * @param pageSize The page size, must be positive
+   * @return this
+   */
+  @NotNull
+  public MongoScan<T> withPageSize(final int pageSize) {
+
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  /**
+   * Sets the number of consecutive failed reads after which the scan fails.
+   *
+   * @param maxAttempts The number of attempts, must be positive
+   * @return this
+   */
+  @NotNull
+  public MongoScan<T> withMaxAttempts(final int maxAttempts) {
+
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("Attempts must be positive");
+    }
+
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  /**
+   * Starts the scan after the document with the provided {@code _id}, such as the
+   * {@link #getLastId()} of a previous scan that failed.
+   *
+   * @param id The {@code _id} to resume after, or null to start from the beginning
+   * @return this
+   */
+  @NotNull
+  public MongoScan<T> withResumeAfter(@Nullable final Object id) {
+    this.resumeAfter = id;
+    return this;
+  }
+
+  /**
+   * Gets the number of documents handled successfully.
+   *
+   * @return The number of documents
+   */
+  public long getDelivered() {
+    return this.delivered.get();
+  }
+
+  /**
+   * Reads every page, handling each on the main thread. At most one page is handled per tick.
+   *
+   * @param handler The page handler
+   * @return A Promise of the number of documents handled
+   */
+  @NotNull
+  public Promise<Long> forEachPageSync(@NotNull final PageHandler<T> handler) {
+    return this.forEachPage(ThreadContext.SYNC, handler);
+  }
+
+  /**
+   * Reads every page, handling each on an asynchronous thread. Pages are handled one at a time,
+   * in order.
+   *
+   * @param handler The page handler
+   * @return A Promise of the number of documents handled
+   */
+  @NotNull
+  public Promise<Long> forEachPageAsync(@NotNull final PageHandler<T> handler) {
+    return this.forEachPage(ThreadContext.ASYNC, handler);
+  }
+
+  /**
+   * Reads every page, handling each in the provided context. Pages are handled one at a time, in
+   * order.
+   *
+   * <p>The Promise fails if the handler throws, or if reading fails more than the maximum number
+   * of attempts in a row.</p>
+   *
+   * @param context The context to handle pages in
+   * @param handler The page handler
+   * @return A Promise of the number of documents handled
+   */
+  @NotNull
+  public Promise<Long> forEachPage(
+      @NotNull final ThreadContext context,
+      @NotNull final PageHandler<T> handler) {
+    return Promise.supplyingExceptionallyAsync(() -> this.run(context, handler));
+  }
+
+  private long run(
+      @NotNull final ThreadContext context,
+      @NotNull final PageHandler<T> handler) throws Exception {
+
+    final Codec<T> codec = this.collection.getCodecRegistry()
+        .get(this.collection.getDocumentClass());
+    final MongoCollection<RawBsonDocument> raw =
+        this.collection.withDocumentClass(RawBsonDocument.class);
+
+    // The position of the cursor, which is ahead of the last handled page while one is pending.
+    Object position = this.resumeAfter;
+    Promise<Void> pending = null;
+    long total = 0;
+    int failures = 0;
+    long backoff = MIN_RETRY_BACKOFF;
+
+    while (true) {
+      MongoCursor<RawBsonDocument> cursor = null;
+
+      try {
+        cursor = this.open(raw, position);
+
+        while (true) {
+          final List<T> page = new ArrayList<>(this.pageSize);
+          BsonValue pageLast = null;
+
+          while (page.size() < this.pageSize && cursor.hasNext()) {
+            final RawBsonDocument document = cursor.next();
+            page.add(document.decode(codec));
+            pageLast = document.get("_id");
+          }
+
+          failures = 0;
+          backoff = MIN_RETRY_BACKOFF;
+
+          // Waiting here holds the fetched page back until the previous one is handled.
+          await(pending);
+          pending = null;
+
+          if (page.isEmpty()) {
+            return total;
+          }
+
+          position = pageLast;
+          pending = this.deliver(context, handler, page, pageLast);
+          total += page.size();
+
+          if (page.size() < this.pageSize) {
+            await(pending);
+            return total;
+          }
+        }
+
+      } catch (final MongoException ex) {
+        if (++failures >= this.maxAttempts) {
+          await(pending);
+          throw ex;
+        }
+
+        Text.log(Level.WARNING, "Failed to read Mongo collection '"
+            + this.collection.getNamespace() + "', resuming in " + backoff + "ms: "
+            + ex.getMessage());
+        Thread.sleep(backoff);
+        backoff = Math.min(MAX_RETRY_BACKOFF, backoff * 2);
+
+      } finally {
+        if (cursor != null) {
+          try {
+            cursor.close();
+          } catch (final Exception ignored) {
+          }
+        }
+      }
+    }
+  }
+
+  @NotNull
+  private MongoCursor<RawBsonDocument> open(
+      @NotNull final MongoCollection<RawBsonDocument> raw,
+      @Nullable final Object position) {
+
+    final Bson query = position == null
+        ? this.filter : Filters.and(this.filter, Filters.gt("_id", position));
+
+    final FindIterable<RawBsonDocument> find = raw.find(query)
+        .sort(Sorts.ascending("_id"))
+        .batchSize(this.pageSize);
+
+    if (this.projection != null) {
+      find.projection(this.projection);
+    }
+
+    return find.cursor();
+  }
+
+  @NotNull
+  private Promise<Void> deliver(
+      @NotNull final ThreadContext context,
+      @NotNull final PageHandler<T> handler,
+      @NotNull final List<T> page,
+      @Nullable final BsonValue last) {
+    return Promise.supplyingExceptionally(context, () -> {
+      handler.handle(page);
+      this.lastId = last;
+      this.delivered.addAndGet(page.size());
+      return null;
+    });
+  }
+
+  private static void await(@Nullable final Promise<Void> pending) throws ExecutionException {
+
+    if (pending == null) {
+      return;
+    }
+
+    try {
+      pending.join();
+    } catch (final Exception ex) {
+      // Wrapped so that failures of the handler are never retried as failed reads.
+      throw new ExecutionException("Page handler failed",
+          ex.getCause() != null ? ex.getCause() : ex);
+    }
+  }
+
+  /**
+   * Handles a page of documents read by a scan.
+   *
+   * @param <T> The type of the documents
+   */
+  @FunctionalInterface
+  public interface PageHandler<T> {
+
+    /**
+     * Handles a page of documents, in {@code _id} order.
+     *
+     * @param page The documents of the page
+     * @throws Exception If the page could not be handled, which stops the scan
+     */
+    void handle(@NotNull List<T> page) throws Exception;
+  }
+}
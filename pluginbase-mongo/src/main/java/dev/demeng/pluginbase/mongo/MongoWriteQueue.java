@@ -0,0 +1,568 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.mongo;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects writes to a collection and sends them from a single dedicated thread as bulk writes,
+ * so that many small writes, such as periodic saves, share a few round trips.
+ *
+ * <p>A batch is sent once it reaches the batch size, or once the flush interval has passed since
+ * its first write was queued, whichever comes first. Each write returns a Promise which completes
+ * once its batch has been acknowledged, or fails with the error of that write only.</p>
+ *
+ * <p>Batches are unordered by default, so the server may apply the writes of a batch in any order
+ * and a failed write does not stop the others. Several writes to the same document within one
+ * flush interval should be avoided, or the queue made ordered using {@link #withOrdered(boolean)}.
+ * </p>
+ *
+ * @param <T> The type of the documents
+ */
+public class MongoWriteQueue<T> implements Terminable {
+
+  /**
+   * The default maximum number of writes sent in a single bulk write.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  /**
+   * The default time to wait for more writes before sending a batch, in milliseconds.
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+  /**
+   * The default maximum number of writes waiting to be sent.
+   */
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+  /**
+   * The collection written to.
+   */
+  @NotNull @Getter private final MongoCollection<T> collection;
+
+  @NotNull private final Queue<Pending<T>> queue = new ConcurrentLinkedQueue<>();
+  @NotNull private final AtomicInteger queued = new AtomicInteger();
+
+  /**
+   * The maximum number of writes sent in a single bulk write.
+   */
+  @Getter private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * The time to wait for more writes before sending a batch, in nanoseconds.
+   */
+  @Getter private volatile long flushIntervalNanos =
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_INTERVAL_MILLIS);
+
+  /**
+   * The maximum number of writes waiting to be sent. Writes queued while the queue is full are
+   * rejected.
+   */
+  @Getter private volatile int capacity = DEFAULT_CAPACITY;
+
+  /**
+   * If the writes of a batch are applied in order, stopping at the first failed write.
+   */
+  @Getter private volatile boolean ordered;
+
+  @NotNull private final AtomicLong written = new AtomicLong();
+  @NotNull private final AtomicLong failed = new AtomicLong();
+  @NotNull private final AtomicLong rejected = new AtomicLong();
+  @NotNull private final AtomicLong batches = new AtomicLong();
+  @NotNull private final AtomicLong totalBatchNanos = new AtomicLong();
+
+  @Nullable private volatile Thread writer;
+  private volatile boolean flushRequested;
+  private volatile boolean closing;
+
+  MongoWriteQueue(@NotNull final MongoCollection<T> collection) {
+    this.collection = collection;
+  }
+
+  /**
+   * Sets the maximum number of writes sent in a single bulk write.
+   *
+   * @param batchSize The batch size, must be positive
+   * @return this
+   */
+  @NotNull
+  public MongoWriteQueue<T> withBatchSize(final int batchSize) {
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * Sets the time to wait for more writes before sending a batch.
+   *
+   * @param interval The flush interval, or 0 to send as soon as the queue is empty
+   * @param unit     The unit of the flush interval
+   * @return this
+   */
+  @NotNull
+  public MongoWriteQueue<T> withFlushInterval(final long interval, @NotNull final TimeUnit unit) {
+
+    if (interval < 0) {
+      throw new IllegalArgumentException("Flush interval cannot be negative");
+    }
+
+    this.flushIntervalNanos = unit.toNanos(interval);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of writes waiting to be sent.
+   *
+   * @param capacity The capacity, must be positive
+   * @return this
+   */
+  @NotNull
+  public MongoWriteQueue<T> withCapacity(final int capacity) {
+
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+
+    this.capacity = capacity;
+    return this;
+  }
+
+  /**
+   * Sets whether the writes of a batch are applied in order. Ordered batches stop at the first
+   * failed write, failing every write after it.
+   *
+   * @param ordered True to apply writes in order
+   * @return this
+   */
+  @NotNull
+  public MongoWriteQueue<T> withOrdered(final boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * Starts the writer thread. Has no effect if the queue has already been started. Writes queued
+   * before the queue is started are sent once it is.
+   *
+   * @return this
+   */
+  @NotNull
+  public synchronized MongoWriteQueue<T> start() {
+
+    if (this.writer != null || this.closing) {
+      return this;
+    }
+
+    final Thread thread = new Thread(this::run,
+        Common.getName() + "-mongo-writer-" + this.collection.getNamespace().getCollectionName());
+    thread.setDaemon(true);
+    this.writer = thread;
+    thread.start();
+    return this;
+  }
+
+  /**
+   * Queues a document to be inserted.
+   *
+   * @param document The document
+   * @return A Promise which completes once the document has been inserted
+   */
+  @NotNull
+  public Promise<Void> insert(@NotNull final T document) {
+    return this.write(new InsertOneModel<>(document));
+  }
+
+  /**
+   * Queues an update of the first document matching the filter.
+   *
+   * @param filter The filter
+   * @param update The update to apply
+   * @return A Promise which completes once the update has been applied
+   */
+  @NotNull
+  public Promise<Void> update(@NotNull final Bson filter, @NotNull final Bson update) {
+    return this.write(new UpdateOneModel<>(filter, update));
+  }
+
+  /**
+   * Queues an update of the first document matching the filter.
+   *
+   * @param filter  The filter
+   * @param update  The update to apply
+   * @param options The update options, such as whether to upsert
+   * @return A Promise which completes once the update has been applied
+   */
+  @NotNull
+  public Promise<Void> update(
+      @NotNull final Bson filter,
+      @NotNull final Bson update,
+      @NotNull final UpdateOptions options) {
+    return this.write(new UpdateOneModel<>(filter, update, options));
+  }
+
+  /**
+   * Queues a replacement of the first document matching the filter, inserting the document if
+   * none matches.
+   *
+   * @param filter   The filter
+   * @param document The replacement document
+   * @return A Promise which completes once the document has been replaced
+   */
+  @NotNull
+  public Promise<Void> replace(@NotNull final Bson filter, @NotNull final T document) {
+    return this.replace(filter, document, new ReplaceOptions().upsert(true));
+  }
+
+  /**
+   * Queues a replacement of the first document matching the filter.
+   *
+   * @param filter   The filter
+   * @param document The replacement document
+   * @param options  The replace options, such as whether to upsert
+   * @return A Promise which completes once the document has been replaced
+   */
+  @NotNull
+  public Promise<Void> replace(
+      @NotNull final Bson filter,
+      @NotNull final T document,
+      @NotNull final ReplaceOptions options) {
+    return this.write(new ReplaceOneModel<>(filter, document, options));
+  }
+
+  /**
+   * Queues any write supported by bulk writes.
+   *
+   * @param model The write
+   * @return A Promise which completes once the write has been applied, or fails with a
+   * {@link RejectedExecutionException} if the queue is full or closed
+   */
+  @NotNull
+  public Promise<Void> write(@NotNull final WriteModel<T> model) {
+
+    if (this.closing) {
+      this.rejected.incrementAndGet();
+      return Promise.exceptionally(new RejectedExecutionException("Write queue is closed"));
+    }
+
+    final int depth = this.queued.incrementAndGet();
+
+    if (depth > this.capacity) {
+      this.queued.decrementAndGet();
+      this.rejected.incrementAndGet();
+      return Promise.exceptionally(new RejectedExecutionException("Write queue is full"));
+    }
+
+    final Promise<Void> promise = Promise.empty();
+    final Pending<T> pending = new Pending<>(model, promise);
+    this.queue.offer(pending);
+
+    // Closed while queueing, possibly after the final drain. If the write is still queued nothing
+    // will send it, otherwise a drain has already taken it.
+    if (this.closing && this.queue.remove(pending)) {
+      this.queued.decrementAndGet();
+      this.rejected.incrementAndGet();
+      return Promise.exceptionally(new RejectedExecutionException("Write queue is closed"));
+    }
+
+    // The first write starts the flush interval, and a full batch ends it early.
+    if (depth == 1 || depth >= this.batchSize) {
+      LockSupport.unpark(this.writer);
+    }
+
+    return promise;
+  }
+
+  /**
+   * Sends every queued write without waiting for the flush interval.
+   */
+  public void flush() {
+    this.flushRequested = true;
+    LockSupport.unpark(this.writer);
+  }
+
+  /**
+   * Gets the number of writes waiting to be sent.
+   *
+   * @return The queue depth
+   */
+  public int getQueueDepth() {
+    return this.queued.get();
+  }
+
+  /**
+   * Gets a snapshot of the queue's statistics since it was created.
+   *
+   * @return The statistics
+   */
+  @NotNull
+  public Statistics getStatistics() {
+    final long sent = this.batches.get();
+    return new Statistics(this.queued.get(), this.written.get(), this.failed.get(),
+        this.rejected.get(), sent, sent == 0 ? 0 : this.totalBatchNanos.get() / sent);
+  }
+
+  /**
+   * Stops accepting writes, sends every queued write and stops the writer thread.
+   */
+  @Override
+  public void close() {
+
+    final Thread thread;
+
+    synchronized (this) {
+      if (this.closing) {
+        return;
+      }
+
+      this.closing = true;
+      thread = this.writer;
+    }
+
+    if (thread == null) {
+      // Never started, so the remaining writes are sent from the closing thread.
+      this.drain();
+      return;
+    }
+
+    LockSupport.unpark(thread);
+
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    // Writes queued while the writer was exiting.
+    if (!thread.isAlive()) {
+      this.drain();
+    }
+  }
+
+  private void run() {
+
+    while (!this.closing || !this.queue.isEmpty()) {
+
+      if (this.queue.isEmpty()) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        continue;
+      }
+
+      final long deadline = System.nanoTime() + this.flushIntervalNanos;
+
+      while (this.queued.get() < this.batchSize && !this.flushRequested && !this.closing) {
+        final long remaining = deadline - System.nanoTime();
+
+        if (remaining <= 0) {
+          break;
+        }
+
+        LockSupport.parkNanos(this, remaining);
+      }
+
+      this.flushRequested = false;
+      this.drain();
+    }
+  }
+
+  private void drain() {
+
+    final List<Pending<T>> batch = new ArrayList<>();
+
+    while (!this.queue.isEmpty()) {
+      Pending<T> next;
+
+      while (batch.size() < this.batchSize && (next = this.queue.poll()) != null) {
+        batch.add(next);
+      }
+
+      this.queued.addAndGet(-batch.size());
+      this.send(batch);
+      batch.clear();
+    }
+  }
+
+  private void send(@NotNull final List<Pending<T>> batch) {
+
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    final List<WriteModel<T>> models = new ArrayList<>(batch.size());
+
+    for (final Pending<T> pending : batch) {
+      models.add(pending.model);
+    }
+
+    final long start = System.nanoTime();
+
+    try {
+      this.collection.bulkWrite(models, new BulkWriteOptions().ordered(this.ordered));
+      this.complete(batch, start, 0);
+
+      for (final Pending<T> pending : batch) {
+        pending.promise.supply(null);
+      }
+
+    } catch (final MongoBulkWriteException ex) {
+      // Only the writes reported as failed are failed, unless the write concern was not met.
+      final Throwable[] errors = new Throwable[batch.size()];
+
+      for (final BulkWriteError error : ex.getWriteErrors()) {
+        errors[error.getIndex()] = new MongoWriteException(error, ex.getServerAddress());
+      }
+
+      // Ordered batches stop at the first error, so later writes were never applied.
+      if (this.ordered && !ex.getWriteErrors().isEmpty()) {
+        final int first = ex.getWriteErrors().get(0).getIndex();
+
+        for (int i = first + 1; i < errors.length; i++) {
+          errors[i] = ex;
+        }
+      }
+
+      int failures = 0;
+
+      for (int i = 0; i < batch.size(); i++) {
+        final Throwable error = errors[i] != null ? errors[i]
+            : ex.getWriteConcernError() != null ? ex : null;
+
+        if (error == null) {
+          batch.get(i).promise.supply(null);
+        } else {
+          batch.get(i).promise.supplyException(error);
+          failures++;
+        }
+      }
+
+      this.complete(batch, start, failures);
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to write " + batch.size() + " Mongo documents.", false);
+      this.complete(batch, start, batch.size());
+
+      for (final Pending<T> pending : batch) {
+        pending.promise.supplyException(ex);
+      }
+    }
+  }
+
+  private void complete(@NotNull final List<Pending<T>> batch, final long start,
+      final int failures) {
+    this.batches.incrementAndGet();
+    this.totalBatchNanos.addAndGet(System.nanoTime() - start);
+    this.written.addAndGet(batch.size() - failures);
+    this.failed.addAndGet(failures);
+  }
+
+  @RequiredArgsConstructor
+  private static final class Pending<T> {
+
+    @NotNull private final WriteModel<T> model;
+    @NotNull private final Promise<Void> promise;
+  }
+
+  /**
+   * An immutable snapshot of a write queue's statistics.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Statistics {
+
+    /**
+     * The number of writes waiting to be sent.
+     */
+    private final int queueDepth;
+
+    /**
+     * The number of writes applied.
+     */
+    private final long written;
+
+    /**
+     * The number of writes that failed.
+     */
+    private final long failed;
+
+    /**
+     * The number of writes rejected because the queue was full or closed.
+     */
+    private final long rejected;
+
+    /**
+     * The number of bulk writes sent.
+     */
+    private final long batches;
+
+    /**
+     * The average time taken by a bulk write, in nanoseconds.
+     */
+    private final long averageBatchNanos;
+
+    /**
+     * Gets the average number of writes sent in each bulk write.
+     *
+     * @return The average batch size
+     */
+    public double getAverageBatchSize() {
+      return this.batches == 0 ? 0 : (double) (this.written + this.failed) / this.batches;
+    }
+  }
+}
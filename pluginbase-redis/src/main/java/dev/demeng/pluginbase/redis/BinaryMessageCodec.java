@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The codec of {@link MessageCodec#BINARY}.
+ *
+ * <p>The envelope is a magic byte, a format version, the sender's ID, the timestamp (8 bytes), the
+ * payload type tag, and the payload bytes up to the end of the message. The ID and type tag are
+ * each an unsigned 16-bit length followed by UTF-8 bytes, with an empty type tag meaning the
+ * payload is untyped.</p>
+ *
+ * <p>Messages in the first version of the envelope, whose type tag was a single byte that was
+ * always 0 for text, are still decoded, as untyped messages.</p>
+ */
+final class BinaryMessageCodec implements MessageCodec {
+
+  // Can never start a UTF-8 string, so binary messages are never mistaken for JSON.
+  private static final byte MAGIC = (byte) 0xB7;
+  private static final byte VERSION = 2;
+  private static final byte LEGACY_VERSION = 1;
+  private static final byte LEGACY_TYPE_TEXT = 0;
+
+  // The smallest envelope of either version.
+  private static final int HEADER_SIZE = 2 + 2 + 8 + 1;
+  private static final byte[] UNTYPED = new byte[0];
+
+  static boolean isBinary(@NotNull final byte[] data) {
+    return data.length >= HEADER_SIZE && data[0] == MAGIC;
+  }
+
+  @Override
+  public @Nullable byte[] encode(@NotNull final MessageTransferObject message) {
+
+    final byte[] serverId = message.getServerId().getBytes(StandardCharsets.UTF_8);
+    final byte[] type = message.getType() == null
+        ? UNTYPED : message.getType().getBytes(StandardCharsets.UTF_8);
+    final byte[] payload = message.getMessage().getBytes(StandardCharsets.UTF_8);
+
+    if (serverId.length > 0xFFFF || type.length > 0xFFFF) {
+      return null;
+    }
+
+    return ByteBuffer.allocate(HEADER_SIZE + serverId.length + type.length + payload.length)
+        .put(MAGIC)
+        .put(VERSION)
+        .putShort((short) serverId.length)
+        .put(serverId)
+        .putLong(message.getTimestamp())
+        .putShort((short) type.length)
+        .put(type)
+        .put(payload)
+        .array();
+  }
+
+  @Override
+  public @NotNull Optional<MessageTransferObject> decode(@NotNull final byte[] data) {
+
+    if (!isBinary(data) || (data[1] != VERSION && data[1] != LEGACY_VERSION)) {
+      return Optional.empty();
+    }
+
+    try {
+      final ByteBuffer buffer = ByteBuffer.wrap(data, 2, data.length - 2);
+
+      final String serverId = readString(data, buffer);
+      final long timestamp = buffer.getLong();
+      final String type;
+
+      if (data[1] == LEGACY_VERSION) {
+        if (buffer.get() != LEGACY_TYPE_TEXT) {
+          return Optional.empty();
+        }
+
+        type = "";
+      } else {
+        type = readString(data, buffer);
+      }
+
+      final String message =
+          new String(data, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+
+      final MessageTransferObject mto = MessageTransferObject.of(serverId, message, timestamp);
+      mto.setType(type.isEmpty() ? null : type);
+      return Optional.of(mto);
+
+    } catch (final BufferUnderflowException | IllegalArgumentException
+        | IndexOutOfBoundsException ex) {
+      return Optional.empty();
+    }
+  }
+
+  @NotNull
+  private static String readString(@NotNull final byte[] data, @NotNull final ByteBuffer buffer) {
+    final int length = buffer.getShort() & 0xFFFF;
+    final String value = new String(data, buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+}
@@ -27,7 +27,10 @@
 package dev.demeng.pluginbase.redis;
 
 import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
 /**
@@ -38,8 +41,23 @@ public interface IRedis extends Terminable {
   /**
    * Gets the JedisPool instance backing the Redis instance.
    *
-   * @return The JedisPool instance
+   * @return The JedisPool instance, or null if the instance is not a single server
+   * @deprecated Only set for a single server, use {@link #getResource(String)} instead
    */
-  @NotNull
+  @Nullable
+  @Deprecated
   JedisPool getJedisPool();
+
+  /**
+   * Gets a connection for commands on the provided key, which must be closed once used. This works
+   * regardless of how the instance is deployed.
+   *
+   * @param key The key the commands operate on, or null for commands without keys
+   * @return The connection
+   */
+  @NotNull
+  default Jedis getResource(@Nullable final String key) {
+    return Objects.requireNonNull(this.getJedisPool(), "Not connected to a single server")
+        .getResource();
+  }
 }
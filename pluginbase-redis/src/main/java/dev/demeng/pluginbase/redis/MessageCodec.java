@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import java.util.Optional;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Converts {@link MessageTransferObject}s to and from the bytes sent over Redis.
+ *
+ * <p>Received messages are always decoded with the codec that encoded them, as detected by
+ * {@link #decodeAny(byte[])}, so servers using different codecs can share channels while a
+ * network is being migrated.</p>
+ */
+public interface MessageCodec {
+
+  /**
+   * Encodes messages as a JSON object, with the payload as an escaped JSON string. This is the
+   * format used by earlier versions.
+   */
+  MessageCodec JSON = new JsonMessageCodec();
+
+  /**
+   * Encodes messages as a compact binary envelope, with the payload as raw UTF-8 bytes.
+   */
+  MessageCodec BINARY = new BinaryMessageCodec();
+
+  /**
+   * Encodes a message.
+   *
+   * @param message The message to encode
+   * @return The encoded message, or null if it cannot be encoded
+   */
+  @Nullable
+  byte[] encode(@NotNull MessageTransferObject message);
+
+  /**
+   * Decodes a message encoded by this codec.
+   *
+   * @param data The encoded message
+   * @return The decoded message, or empty if it cannot be decoded
+   */
+  @NotNull
+  Optional<MessageTransferObject> decode(@NotNull byte[] data);
+
+  /**
+   * Decodes a message encoded by either {@link #JSON} or {@link #BINARY}.
+   *
+   * @param data The encoded message
+   * @return The decoded message, or empty if it cannot be decoded
+   */
+  @NotNull
+  static Optional<MessageTransferObject> decodeAny(@NotNull final byte[] data) {
+    return BinaryMessageCodec.isBinary(data) ? BINARY.decode(data) : JSON.decode(data);
+  }
+}
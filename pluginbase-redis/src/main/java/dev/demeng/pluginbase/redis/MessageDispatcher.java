@@ -0,0 +1,328 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.Schedulers;
+import dev.demeng.pluginbase.scheduler.Task;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Delivers received messages to the handlers registered for their channel and payload type.
+ *
+ * <p>Asynchronous handlers are called on the subscriber thread as soon as a message arrives, so
+ * they should return quickly. Synchronous handlers are queued and called on the main thread, in
+ * one batch per tick, until the tick budget is used up; anything left over is delivered on the
+ * following ticks.</p>
+ */
+public class MessageDispatcher implements Terminable {
+
+  /**
+   * The default time synchronous handlers may use per tick, in microseconds.
+   */
+  public static final long DEFAULT_TICK_BUDGET_MICROS = 2000;
+
+  @NotNull private final Map<String, List<Registration<?>>> handlers = new ConcurrentHashMap<>();
+
+  @NotNull private final Queue<Runnable> syncQueue = new ConcurrentLinkedQueue<>();
+  @NotNull private final AtomicInteger syncQueued = new AtomicInteger();
+
+  /**
+   * The time synchronous handlers may use per tick, in nanoseconds. At least one handler is
+   * called per tick regardless.
+   */
+  @Getter private volatile long tickBudgetNanos =
+      TimeUnit.MICROSECONDS.toNanos(DEFAULT_TICK_BUDGET_MICROS);
+
+  @Nullable private volatile Task task;
+  private volatile boolean closed;
+
+  MessageDispatcher() {
+  }
+
+  /**
+   * Sets the time synchronous handlers may use per tick.
+   *
+   * @param budget The budget, must be positive
+   * @param unit   The unit of the budget
+   * @return this
+   */
+  @NotNull
+  public MessageDispatcher withTickBudget(final long budget, @NotNull final TimeUnit unit) {
+
+    if (budget <= 0) {
+      throw new IllegalArgumentException("Tick budget must be positive");
+    }
+
+    this.tickBudgetNanos = unit.toNanos(budget);
+    return this;
+  }
+
+  /**
+   * Gets the number of synchronous deliveries waiting for the main thread.
+   *
+   * @return The number of queued deliveries
+   */
+  public int getSyncQueueDepth() {
+    return this.syncQueued.get();
+  }
+
+  <T> Terminable register(
+      @NotNull final String channel,
+      @NotNull final Class<T> type,
+      @NotNull final MessageHandler<T> handler,
+      final boolean sync) {
+
+    final Registration<T> registration = new Registration<>(type, handler, sync);
+    this.handlers.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>()).add(registration);
+
+    return () -> {
+      final List<Registration<?>> registrations = this.handlers.get(channel);
+
+      if (registrations != null) {
+        registrations.remove(registration);
+      }
+    };
+  }
+
+  void dispatch(@NotNull final String channel, @NotNull final MessageTransferObject message) {
+
+    final List<Registration<?>> registrations = this.handlers.get(channel);
+
+    if (registrations == null || registrations.isEmpty()) {
+      return;
+    }
+
+    // Each payload type is parsed once, however many handlers share it.
+    final Map<Class<?>, Optional<?>> payloads = new HashMap<>();
+
+    for (final Registration<?> registration : registrations) {
+      if (!registration.accepts(message)) {
+        continue;
+      }
+
+      final Optional<?> payload =
+          payloads.computeIfAbsent(registration.type, type -> parse(message, type));
+
+      if (!payload.isPresent()) {
+        continue;
+      }
+
+      if (registration.sync) {
+        this.runSync(() -> registration.deliver(payload.get(), message));
+      } else {
+        registration.deliver(payload.get(), message);
+      }
+    }
+  }
+
+  /**
+   * Delivers the message like {@link #dispatch(String, MessageTransferObject)}, but reports the
+   * outcome instead of logging failures. Synchronous handlers are included once they have run on
+   * the main thread.
+   *
+   * @param channel The channel the message was received on
+   * @param message The message
+   * @return A future of the number of handlers the message was delivered to, which fails with the
+   * first exception thrown by a handler
+   */
+  @NotNull
+  CompletableFuture<Integer> deliver(
+      @NotNull final String channel,
+      @NotNull final MessageTransferObject message) {
+
+    final List<Registration<?>> registrations = this.handlers.get(channel);
+
+    if (registrations == null || registrations.isEmpty()) {
+      return CompletableFuture.completedFuture(0);
+    }
+
+    final Map<Class<?>, Optional<?>> payloads = new HashMap<>();
+    final List<CompletableFuture<Void>> results = new ArrayList<>();
+
+    for (final Registration<?> registration : registrations) {
+      if (!registration.accepts(message)) {
+        continue;
+      }
+
+      final Optional<?> payload =
+          payloads.computeIfAbsent(registration.type, type -> parse(message, type));
+
+      if (!payload.isPresent()) {
+        continue;
+      }
+
+      final CompletableFuture<Void> result = new CompletableFuture<>();
+      results.add(result);
+
+      final Runnable handle = () -> {
+        try {
+          registration.handle(payload.get(), message);
+          result.complete(null);
+        } catch (final Exception ex) {
+          result.completeExceptionally(ex);
+        }
+      };
+
+      if (registration.sync) {
+        if (!this.runSync(handle)) {
+          result.completeExceptionally(new IllegalStateException("Dispatcher is closed"));
+        }
+      } else {
+        handle.run();
+      }
+    }
+
+    final int count = results.size();
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+        .thenApply(ignored -> count);
+  }
+
+  /**
+   * Queues the runnable to be run on the main thread.
+   *
+   * @param runnable The runnable
+   * @return False if the dispatcher is closed, in which case the runnable will never run
+   */
+  boolean runSync(@NotNull final Runnable runnable) {
+
+    if (this.closed) {
+      return false;
+    }
+
+    this.syncQueued.incrementAndGet();
+    this.syncQueue.offer(runnable);
+
+    // Closed while queueing, after the queue was cleared.
+    if (this.closed) {
+      if (this.syncQueue.remove(runnable)) {
+        this.syncQueued.decrementAndGet();
+      }
+      return false;
+    }
+
+    if (this.task == null) {
+      this.start();
+    }
+
+    return true;
+  }
+
+  private synchronized void start() {
+    if (this.task == null && !this.closed) {
+      this.task = Schedulers.sync().runRepeating(this::drain, 1L, 1L);
+    }
+  }
+
+  private void drain() {
+
+    final long deadline = System.nanoTime() + this.tickBudgetNanos;
+    Runnable next;
+
+    while ((next = this.syncQueue.poll()) != null) {
+      this.syncQueued.decrementAndGet();
+      next.run();
+
+      if (System.nanoTime() >= deadline) {
+        return;
+      }
+    }
+  }
+
+  @NotNull
+  private static Optional<?> parse(
+      @NotNull final MessageTransferObject message,
+      @NotNull final Class<?> type) {
+    // Untyped strings are sent as-is by Redis#publishString rather than as JSON.
+    return type == String.class && message.getType() == null
+        ? Optional.of(message.getMessage()) : message.parseMessageObject(type);
+  }
+
+  @Override
+  public synchronized void close() {
+    this.closed = true;
+
+    final Task current = this.task;
+    this.task = null;
+
+    if (current != null) {
+      current.stop();
+    }
+
+    this.handlers.clear();
+    this.syncQueue.clear();
+    this.syncQueued.set(0);
+  }
+
+  private static final class Registration<T> {
+
+    @NotNull private final Class<T> type;
+    @NotNull private final MessageHandler<T> handler;
+    private final boolean sync;
+
+    private Registration(
+        @NotNull final Class<T> type,
+        @NotNull final MessageHandler<T> handler,
+        final boolean sync) {
+      this.type = type;
+      this.handler = handler;
+      this.sync = sync;
+    }
+
+    private boolean accepts(@NotNull final MessageTransferObject message) {
+      // Untyped messages, such as those from older versions, are offered to every handler.
+      return message.getType() == null || message.getType().equals(this.type.getName());
+    }
+
+    private void handle(
+        @NotNull final Object payload,
+        @NotNull final MessageTransferObject message) throws Exception {
+      this.handler.handle(this.type.cast(payload), message);
+    }
+
+    private void deliver(@NotNull final Object payload, @NotNull final MessageTransferObject message) {
+      try {
+        this.handle(payload, message);
+      } catch (final Exception ex) {
+        Common.error(ex, "Failed to handle Redis message.", false);
+      }
+    }
+  }
+}
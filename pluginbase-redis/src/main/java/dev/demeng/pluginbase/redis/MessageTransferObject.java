@@ -42,6 +42,12 @@ public class MessageTransferObject {
   @NotNull private final String message;
   private final long timestamp;
 
+  /**
+   * The class name of the wrapped object, or null if the message is a plain string or was sent by
+   * an older version.
+   */
+  @Nullable private String type;
+
   /**
    * Wraps the given object to a {@link MessageTransferObject} object.
    *
@@ -54,7 +60,10 @@ public class MessageTransferObject {
       @NotNull final String serverId,
       @NotNull final Object obj,
       final long timestamp) {
-    return new MessageTransferObject(serverId, GsonProvider.standard().toJson(obj), timestamp);
+    final MessageTransferObject mto =
+        new MessageTransferObject(serverId, GsonProvider.standard().toJson(obj), timestamp);
+    mto.setType(obj.getClass().getName());
+    return mto;
   }
 
   /**
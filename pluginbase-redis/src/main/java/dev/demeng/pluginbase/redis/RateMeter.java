@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events in one-second buckets, to report their rate over the last minute without a
+ * background task. Safe for concurrent use, although an event counted while its bucket is being
+ * recycled may be lost.
+ */
+final class RateMeter {
+
+  private static final int WINDOW_SECONDS = 60;
+
+  private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+  private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+  void mark() {
+
+    final long second = System.currentTimeMillis() / 1000;
+    final int index = (int) (second % WINDOW_SECONDS);
+    final long bucketSecond = this.seconds.get(index);
+
+    if (bucketSecond != second && this.seconds.compareAndSet(index, bucketSecond, second)) {
+      this.counts.set(index, 0);
+    }
+
+    this.counts.incrementAndGet(index);
+  }
+
+  /**
+   * Gets the average number of events per second over the last full minute.
+   *
+   * @return The rate
+   */
+  double getRatePerSecond() {
+
+    final long now = System.currentTimeMillis() / 1000;
+    long total = 0;
+
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      final long age = now - this.seconds.get(i);
+
+      // The current second is still being counted, so it is left out.
+      if (age > 0 && age <= WINDOW_SECONDS) {
+        total += this.counts.get(i);
+      }
+    }
+
+    return (double) total / WINDOW_SECONDS;
+  }
+}
@@ -26,34 +26,124 @@
 package dev.demeng.pluginbase.redis;
 
 import dev.demeng.pluginbase.Common;
-import dev.demeng.pluginbase.Schedulers;
+import dev.demeng.pluginbase.promise.Promise;
 import dev.demeng.pluginbase.redis.event.AsyncRedisMessageReceiveEvent;
 import dev.demeng.pluginbase.redis.event.RedisMessageReceiveEvent;
+import dev.demeng.pluginbase.terminable.Terminable;
 import dev.demeng.pluginbase.text.Text;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.logging.Level;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import org.bukkit.Bukkit;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.JedisPubSub;
-import redis.clients.jedis.Protocol;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.Pool;
 
 public class Redis implements IRedis {
 
+  private static final String CONTROL_CHANNEL_PREFIX = "pluginbase:server:";
+  private static final long MIN_RECONNECT_BACKOFF = 250;
+  private static final long MAX_RECONNECT_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+  private static final int CLUSTER_MAX_ATTEMPTS = 5;
+
   @NotNull @Getter private final String serverId;
-  @Getter private final JedisPool jedisPool;
 
-  @NotNull private final List<String> channels = new ArrayList<>();
-  @NotNull private final List<Subscription> subscriptions = new ArrayList<>();
+  /**
+   * How the Redis instance is deployed.
+   */
+  @NotNull @Getter private final RedisCredentials.Topology topology;
+
+  /**
+   * The connection and socket timeout of every connection, in milliseconds.
+   */
+  @Getter private final int timeoutMillis;
+
+  /**
+   * The pool of connections to the server, or to the current master when using Sentinel. Null
+   * when connected to a cluster.
+   */
+  @Nullable @Getter private final Pool<Jedis> pool;
+
+  /**
+   * The cluster client, which routes commands to the node owning their keys and follows
+   * redirections. Null when not connected to a cluster.
+   */
+  @Nullable @Getter private final UnifiedJedis cluster;
+
+  @Nullable private final ClusterConnectionProvider clusterProvider;
 
-  private boolean closing;
+  /**
+   * The publisher sending every message published by this manager.
+   */
+  @NotNull @Getter private final RedisPublisher publisher;
+
+  /**
+   * The codec used to encode published messages. Received messages are decoded with whichever
+   * codec encoded them.
+   */
+  @NotNull @Getter @Setter private volatile MessageCodec codec = MessageCodec.JSON;
+
+  /**
+   * The dispatcher delivering received messages to registered handlers.
+   */
+  @NotNull @Getter private final MessageDispatcher dispatcher = new MessageDispatcher();
+
+  @Nullable private RedisRpc rpc;
+  @Nullable private RedisStreams streams;
+
+  @NotNull private final Set<String> channels = ConcurrentHashMap.newKeySet();
+  @NotNull private final Set<String> patterns = ConcurrentHashMap.newKeySet();
+
+  // Guards commands sent on the pub/sub connection, which is shared by every caller.
+  @NotNull private final Object subscriptionLock = new Object();
+  @NotNull private final Subscription subscription = new Subscription();
+
+  /**
+   * The channel addressed to this server only, which the pub/sub connection is always subscribed
+   * to.
+   */
+  @NotNull @Getter private final String controlChannel;
+
+  @NotNull private final RateMeter receiveRate = new RateMeter();
+  @NotNull private final AtomicLong received = new AtomicLong();
+  @NotNull private final AtomicLong reconnects = new AtomicLong();
+  @NotNull private final AtomicLong exhausted = new AtomicLong();
+
+  private volatile boolean closing;
 
   /**
    * Creates a new Redis manager.
@@ -67,26 +157,220 @@ public class Redis implements IRedis {
       @NotNull final RedisCredentials credentials,
       @NotNull final String... channels) {
     this.serverId = serverId;
+    this.controlChannel = CONTROL_CHANNEL_PREFIX + serverId;
+
+    this.topology = credentials.getTopology();
+    this.timeoutMillis = credentials.getTimeoutMillis();
+
+    switch (this.topology) {
+      case CLUSTER:
+        this.pool = null;
+        // The library and the cluster client share one set of node pools and one slot map.
+        this.clusterProvider = new ClusterConnectionProvider(
+            RedisCredentials.parseNodes(credentials.getClusterNodes()),
+            credentials.toClientConfig(), credentials.applyPool(new ConnectionPoolConfig()));
+        this.cluster = new UnifiedJedis(this.clusterProvider, CLUSTER_MAX_ATTEMPTS,
+            Duration.ofMillis((long) credentials.getTimeoutMillis() * CLUSTER_MAX_ATTEMPTS));
+        break;
+
+      case SENTINEL:
+        this.pool = new JedisSentinelPool(credentials.getSentinelMaster(),
+            RedisCredentials.parseNodes(credentials.getSentinels()),
+            credentials.applyPool(new JedisPoolConfig()), credentials.toClientConfig(),
+            credentials.toSentinelClientConfig());
+        this.clusterProvider = null;
+        this.cluster = null;
+        break;
+
+      default:
+        this.pool = new JedisPool(credentials.applyPool(new JedisPoolConfig()),
+            new HostAndPort(credentials.getHost(), credentials.getPort()),
+            credentials.toClientConfig());
+        this.clusterProvider = null;
+        this.cluster = null;
+        break;
+    }
+
+    this.publisher = new RedisPublisher(this, Common.getName()).start();
+
+    this.channels.addAll(Arrays.asList(channels));
+    this.subscription.start();
+  }
+
+  /**
+   * Gets the pool of connections to a single server.
+   *
+   * @return The pool, or null when using Sentinel or a cluster
+   * @deprecated Only set for a single server, use {@link #getPool()} or
+   * {@link #execute(String, Function)} instead
+   */
+  @Nullable
+  @Override
+  @Deprecated
+  public JedisPool getJedisPool() {
+    return this.pool instanceof JedisPool ? (JedisPool) this.pool : null;
+  }
+
+  /**
+   * Gets a connection for commands on the provided key, which must be closed once used. In a
+   * cluster, the connection is to the master owning the key's slot, so every key used with it must
+   * belong to the same slot.
+   *
+   * <p>Commands sent on the connection are not redirected if the slot has moved to another node.
+   * Prefer {@link #execute(String, Function)}, which follows redirections.</p>
+   *
+   * @param key The key the commands operate on, or null for commands without keys
+   * @return The connection
+   * @throws JedisExhaustedPoolException If no connection became available in time
+   */
+  @NotNull
+  @Override
+  public Jedis getResource(@Nullable final String key) {
+
+    try {
+      if (this.clusterProvider == null) {
+        return Objects.requireNonNull(this.pool).getResource();
+      }
+
+      // Commands without keys, such as publishing, can be sent to any node.
+      return new Jedis(key == null
+          ? this.clusterProvider.getConnection()
+          : this.clusterProvider.getConnectionFromSlot(JedisClusterCRC16.getSlot(key)));
+
+    } catch (final JedisExhaustedPoolException ex) {
+      this.exhausted.incrementAndGet();
+      throw ex;
+    }
+  }
+
+  /**
+   * Runs commands on the provided key using a pooled connection. In a cluster, the commands are
+   * sent to the node owning the key's slot, and are sent again if the slot has moved or the node
+   * could not be reached, after refreshing the slot map. Every key used must belong to the same
+   * slot.
+   *
+   * @param key     The key the commands operate on, or null for commands without keys
+   * @param command The commands to run, which may be run more than once in a cluster
+   * @param <R>     The type of the result
+   * @return The result of the commands
+   * @throws redis.clients.jedis.exceptions.JedisException If the commands failed
+   */
+  public <R> R execute(@Nullable final String key, @NotNull final Function<Jedis, R> command) {
+
+    if (this.clusterProvider == null) {
+      try (final Jedis jedis = this.getResource(key)) {
+        return command.apply(jedis);
+      }
+    }
+
+    JedisAskDataException ask = null;
+    RuntimeException failure = null;
+
+    for (int attempt = 0; attempt < CLUSTER_MAX_ATTEMPTS; attempt++) {
+      try (final Jedis jedis = ask == null
+          ? this.getResource(key)
+          : new Jedis(this.clusterProvider.getConnection(ask.getTargetNode()))) {
+
+        // The slot is being migrated, and the target only accepts it after ASKING.
+        if (ask != null) {
+          jedis.asking();
+        }
+
+        return command.apply(jedis);
 
-    if (credentials.getUser() == null) {
-      this.jedisPool = new JedisPool(new JedisPoolConfig(), credentials.getHost(),
-          credentials.getPort(), Protocol.DEFAULT_TIMEOUT, credentials.getPassword(),
-          credentials.isSsl());
-    } else {
-      this.jedisPool = new JedisPool(new JedisPoolConfig(), credentials.getHost(),
-          credentials.getPort(), Protocol.DEFAULT_TIMEOUT, credentials.getUser(),
-          credentials.getPassword(), credentials.isSsl());
+      } catch (final JedisAskDataException ex) {
+        ask = ex;
+        failure = ex;
+
+      } catch (final JedisMovedDataException | JedisConnectionException ex) {
+        ask = null;
+        failure = ex;
+        this.onCommandFailure(ex);
+      }
+    }
+
+    throw Objects.requireNonNull(failure);
+  }
+
+  /**
+   * Refreshes the slot map of the cluster if the failure suggests that it is stale.
+   *
+   * @param failure The failure of a command
+   */
+  void onCommandFailure(@NotNull final Exception failure) {
+
+    if (this.clusterProvider == null || !(failure instanceof JedisMovedDataException
+        || failure instanceof JedisConnectionException)) {
+      return;
     }
 
-    if (channels.length > 0) {
-      this.channels.addAll(Arrays.asList(channels));
+    try {
+      this.clusterProvider.renewSlotCache();
+    } catch (final Exception ignored) {
+      // No node could be reached, so the slot map is refreshed on a later failure.
+    }
+  }
 
-      final Subscription subscription = new Subscription(this.channels.toArray(new String[0]));
-      Schedulers.async().run(subscription);
-      this.subscriptions.add(subscription);
+  /**
+   * Measures the round trip time of a {@code PING} to Redis.
+   *
+   * @return The round trip time, in nanoseconds
+   * @throws redis.clients.jedis.exceptions.JedisException If Redis could not be reached
+   */
+  public long ping() {
+    try (final Jedis jedis = this.getResource(null)) {
+      final long start = System.nanoTime();
+      jedis.ping();
+      return System.nanoTime() - start;
     }
   }
 
+  /**
+   * Measures the round trip time of a {@code PING} to Redis.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @return A Promise of the round trip time, in nanoseconds, which fails if Redis could not be
+   * reached
+   */
+  @NotNull
+  public Promise<Long> pingAsync() {
+    return Promise.supplyingExceptionallyAsync(this::ping);
+  }
+
+  /**
+   * Gets a snapshot of this manager's statistics since it was created.
+   *
+   * @return The statistics
+   */
+  @NotNull
+  public Statistics getStatistics() {
+
+    int active = 0;
+    int idle = 0;
+    int waiters = 0;
+    long maxBorrowWait = 0;
+
+    final Collection<? extends Pool<?>> pools = this.clusterProvider == null
+        ? Collections.singletonList(this.pool)
+        : this.clusterProvider.getNodes().values();
+
+    for (final Pool<?> pool : pools) {
+      active += pool.getNumActive();
+      idle += pool.getNumIdle();
+      waiters += pool.getNumWaiters();
+      maxBorrowWait = Math.max(maxBorrowWait, pool.getMaxBorrowWaitTimeMillis());
+    }
+
+    return new Statistics(this.topology, this.publisher.getStatistics(), this.received.get(),
+        this.receiveRate.getRatePerSecond(), this.reconnects.get(), active, idle, waiters,
+        this.exhausted.get(), maxBorrowWait);
+  }
+
+  boolean isClosing() {
+    return this.closing;
+  }
+
   /**
    * Subscribes to the provided channels if they have not been subcribed to already.
    *
@@ -94,48 +378,165 @@ public class Redis implements IRedis {
    * @return If at least 1 channel has been subcribed to
    */
   public boolean subscribe(@NotNull final String... channels) {
+    return this.updateSubscription(this.channels, channels, true, false);
+  }
+
+  /**
+   * Unsubscribes from the given channels.
+   *
+   * @param channels Names of the channels to unsubscribe
+   */
+  public void unsubscribe(@NotNull final String... channels) {
+    this.updateSubscription(this.channels, channels, false, false);
+  }
+
+  /**
+   * Subscribes to every channel matching the provided glob-style patterns, such as
+   * {@code "network:*"}, if they have not been subscribed to already.
+   *
+   * @param patterns The patterns to subscribe
+   * @return If at least 1 pattern has been subscribed to
+   */
+  public boolean psubscribe(@NotNull final String... patterns) {
+    return this.updateSubscription(this.patterns, patterns, true, true);
+  }
 
-    if (this.closing || channels.length == 0) {
+  /**
+   * Unsubscribes from the given patterns.
+   *
+   * @param patterns The patterns to unsubscribe
+   */
+  public void punsubscribe(@NotNull final String... patterns) {
+    this.updateSubscription(this.patterns, patterns, false, true);
+  }
+
+  private boolean updateSubscription(
+      @NotNull final Set<String> subscribed,
+      @NotNull final String[] names,
+      final boolean add,
+      final boolean pattern) {
+
+    if (this.closing || names.length == 0) {
       return false;
     }
 
-    final List<String> newChannels = new ArrayList<>();
+    final List<String> changed = new ArrayList<>();
 
-    for (final String channel : channels) {
-      if (!this.channels.contains(channel)) {
-        newChannels.add(channel);
+    synchronized (this.subscriptionLock) {
+      for (final String name : names) {
+        // The control channel is always subscribed, and must stay subscribed.
+        if (!pattern && name.equals(this.controlChannel)) {
+          continue;
+        }
+
+        if (add ? subscribed.add(name) : subscribed.remove(name)) {
+          changed.add(name);
+        }
       }
-    }
 
-    if (newChannels.isEmpty()) {
-      return false;
-    }
+      if (changed.isEmpty()) {
+        return false;
+      }
 
-    this.channels.addAll(newChannels);
+      // If the connection is not subscribed yet, the change is picked up once it is.
+      if (this.subscription.isSubscribed()) {
+        this.subscription.send(changed, add, pattern);
+      }
 
-    final Subscription subscription = new Subscription(newChannels.toArray(new String[0]));
-    Schedulers.async().run(subscription);
-    subscriptions.add(subscription);
+    }
 
     return true;
   }
 
   /**
-   * Unsubscribes from the given channels.
+   * Registers a handler for the payloads of the provided type received on the channel, and
+   * subscribes to the channel if needed. The handler is called on the subscriber thread, so it
+   * should return quickly.
    *
-   * @param channels Names of the channels to unsubscribe
+   * <p>Payloads are matched by the class name of the published object. Strings published with
+   * {@link #publishString(String, String)} are handled by {@code String} handlers.</p>
+   *
+   * @param channel The channel to handle
+   * @param type    The type of the payload
+   * @param handler The handler
+   * @param <T>     The type of the payload
+   * @return A terminable which unregisters the handler when closed
    */
-  public void unsubscribe(@NotNull final String... channels) {
+  @NotNull
+  public <T> Terminable handle(
+      @NotNull final String channel,
+      @NotNull final Class<T> type,
+      @NotNull final MessageHandler<T> handler) {
+    final Terminable registration = this.dispatcher.register(channel, type, handler, false);
+    this.subscribe(channel);
+    return registration;
+  }
 
-    if (this.closing || channels.length == 0) {
-      return;
+  /**
+   * Registers a handler for the payloads of the provided type received on the channel, and
+   * subscribes to the channel if needed. The handler is called on the main thread, batched with
+   * other synchronous deliveries once per tick.
+   *
+   * @param channel The channel to handle
+   * @param type    The type of the payload
+   * @param handler The handler
+   * @param <T>     The type of the payload
+   * @return A terminable which unregisters the handler when closed
+   * @see #handle(String, Class, MessageHandler) for details
+   * @see MessageDispatcher#withTickBudget(long, TimeUnit) to limit the time spent per tick
+   */
+  @NotNull
+  public <T> Terminable handleSync(
+      @NotNull final String channel,
+      @NotNull final Class<T> type,
+      @NotNull final MessageHandler<T> handler) {
+    final Terminable registration = this.dispatcher.register(channel, type, handler, true);
+    this.subscribe(channel);
+    return registration;
+  }
+
+  /**
+   * Gets the request/response layer of this manager, creating it on first use.
+   *
+   * @return The RPC layer
+   */
+  @NotNull
+  public synchronized RedisRpc rpc() {
+
+    if (this.rpc == null) {
+      this.rpc = new RedisRpc(this);
     }
 
-    for (final Subscription sub : this.subscriptions) {
-      sub.unsubscribe(channels);
+    return this.rpc;
+  }
+
+  /**
+   * Gets the Redis Streams transport of this manager, creating it on first use.
+   *
+   * @return The streams transport
+   */
+  @NotNull
+  public synchronized RedisStreams streams() {
+
+    if (this.streams == null) {
+      this.streams = new RedisStreams(this);
     }
 
-    this.channels.removeAll(Arrays.asList(channels));
+    return this.streams;
+  }
+
+  /**
+   * Creates a two-tier cache stored under the provided name. The cache must be started with
+   * {@link RedisCache#start()} once configured.
+   *
+   * @param name The name of the cache, unique across the network
+   * @param type The type of the values
+   * @param <V>  The type of the values
+   * @return The cache
+   */
+  @NotNull
+  public <V> RedisCache<V> cache(@NotNull final String name, @NotNull final Class<V> type) {
+    return new RedisCache<>(this, name, type);
   }
 
   /**
@@ -144,7 +545,8 @@ public class Redis implements IRedis {
    *
    * @param channel Channel to be published into
    * @param obj     Object to be published
-   * @return True if successful, false if in closing state or failed to serialize
+   * @return True if queued, false if in closing state, failed to serialize or the publisher's
+   * queue is full
    */
   public boolean publishObject(@NotNull final String channel, @NotNull final Object obj) {
     return this.executePublish(channel,
@@ -158,7 +560,8 @@ public class Redis implements IRedis {
    *
    * @param channel Channel to be published into
    * @param str     String to be published
-   * @return True if successful, false if in closing state or failed to serialize
+   * @return True if queued, false if in closing state, failed to serialize or the publisher's
+   * queue is full
    */
   public boolean publishString(@NotNull final String channel, @NotNull final String str) {
     return this.executePublish(channel,
@@ -173,21 +576,13 @@ public class Redis implements IRedis {
       return false;
     }
 
-    final String messageJson = mto.toJson();
+    final byte[] encoded = this.codec.encode(mto);
 
-    if (messageJson == null) {
+    if (encoded == null) {
       return false;
     }
 
-    Schedulers.async().run(() -> {
-      try (final Jedis jedis = this.jedisPool.getResource()) {
-        jedis.publish(channel, messageJson);
-      } catch (final Exception ex) {
-        Common.error(ex, "Failed to publish Redis message.", false);
-      }
-    });
-
-    return true;
+    return this.publisher.publish(channel, encoded);
   }
 
   /**
@@ -201,17 +596,31 @@ public class Redis implements IRedis {
 
     this.closing = true;
 
-    for (final Subscription sub : this.subscriptions) {
-      if (sub.isSubscribed()) {
-        sub.unsubscribe();
+    synchronized (this.subscriptionLock) {
+      this.subscription.close();
+    }
+
+    synchronized (this) {
+      if (this.rpc != null) {
+        this.rpc.close();
+      }
+
+      if (this.streams != null) {
+        this.streams.close();
       }
     }
 
-    if (this.jedisPool == null) {
-      return;
+    this.dispatcher.close();
+
+    this.publisher.close();
+
+    if (this.cluster != null) {
+      this.cluster.close();
     }
 
-    this.jedisPool.destroy();
+    if (this.pool != null) {
+      this.pool.destroy();
+    }
   }
 
   /**
@@ -224,71 +633,292 @@ public class Redis implements IRedis {
     return this.channels.contains(channel);
   }
 
-  @RequiredArgsConstructor
-  private class Subscription extends JedisPubSub implements Runnable {
+  /**
+   * Gets the channels currently subscribed to.
+   *
+   * @return The subscribed channels
+   */
+  @NotNull
+  public Set<String> getChannels() {
+    return Collections.unmodifiableSet(this.channels);
+  }
+
+  /**
+   * Gets the patterns currently subscribed to.
+   *
+   * @return The subscribed patterns
+   */
+  @NotNull
+  public Set<String> getPatterns() {
+    return Collections.unmodifiableSet(this.patterns);
+  }
 
-    private final String[] channels;
+  @NotNull
+  private static List<String> difference(
+      @NotNull final Set<String> from,
+      @NotNull final Set<String> excluded) {
+
+    final List<String> difference = new ArrayList<>();
+
+    for (final String name : from) {
+      if (!excluded.contains(name)) {
+        difference.add(name);
+      }
+    }
+
+    return difference;
+  }
+
+  @NotNull
+  private static byte[][] encodeChannels(@NotNull final Collection<String> channels) {
+
+    final byte[][] encoded = new byte[channels.size()][];
+    int i = 0;
+
+    for (final String channel : channels) {
+      encoded[i++] = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    return encoded;
+  }
+
+  /**
+   * The single pub/sub connection of this manager. Channels and patterns are added to and removed
+   * from the connection as they change, and all of them are subscribed again after a reconnect.
+   *
+   * <p>The connection stays subscribed to the control channel of this server for its whole life,
+   * so that unsubscribing the last user channel does not end the subscription and return the
+   * connection to the pool while another thread is subscribing.</p>
+   */
+  private class Subscription extends BinaryJedisPubSub implements Runnable {
+
+    @NotNull private Set<String> sentChannels = Collections.emptySet();
+    @NotNull private Set<String> sentPatterns = Collections.emptySet();
+
+    private boolean resyncPending;
+    private volatile long backoff = MIN_RECONNECT_BACKOFF;
+
+    private void start() {
+      final Thread thread = new Thread(this, Common.getName() + "-redis-subscriber");
+      thread.setDaemon(true);
+      thread.start();
+    }
 
     @Override
     public void run() {
       boolean firstTry = true;
 
-      while (!Redis.this.closing && !Thread.interrupted() && !Redis.this.jedisPool.isClosed()) {
-        try (final Jedis jedis = Redis.this.jedisPool.getResource()) {
+      while (!Redis.this.closing) {
+
+        final List<String> initial = new ArrayList<>();
+
+        synchronized (Redis.this.subscriptionLock) {
+          if (Redis.this.closing) {
+            return;
+          }
+
+          // Patterns can only be sent once the connection is subscribed, so they follow on resync.
+          this.sentChannels = new HashSet<>(Redis.this.channels);
+          this.sentPatterns = Collections.emptySet();
+          this.resyncPending = true;
+
+          initial.add(Redis.this.controlChannel);
+          initial.addAll(this.sentChannels);
+        }
+
+        try (final Jedis jedis = Redis.this.getResource(null)) {
           if (firstTry) {
             Text.log("Redis pub/sub connection established.");
             firstTry = false;
           } else {
+            Redis.this.reconnects.incrementAndGet();
             Text.log("Redis pub/sub connection re-established.");
           }
 
-          try {
-            jedis.subscribe(this, channels);
-            Text.log("Subscribed to Redis channels: " + Arrays.toString(channels));
-          } catch (final Exception ex) {
-            Text.log(Level.WARNING,
-                "Failed to subcribe to Redis channels: " + Arrays.toString(channels));
-          }
+          // Blocks until the manager is closed, as the control channel is never unsubscribed.
+          jedis.subscribe(this, encodeChannels(initial));
 
         } catch (final Exception ex) {
           if (Redis.this.closing) {
             return;
           }
 
-          Text.log(Level.WARNING, "Redis pub/sub connection dropped, attempting to re-open...");
+          final long delay = ThreadLocalRandom.current().nextLong(this.backoff / 2, this.backoff + 1);
+          this.backoff = Math.min(MAX_RECONNECT_BACKOFF, this.backoff * 2);
 
-          try {
-            super.unsubscribe();
-          } catch (final Exception ignored) {
-          }
+          Text.log(Level.WARNING, "Redis pub/sub connection dropped, attempting to re-open in "
+              + delay + "ms...");
 
-          // Sleep for 5 seconds to prevent massive spam in console
           try {
-            Thread.sleep(5000);
+            Thread.sleep(delay);
           } catch (final InterruptedException ie) {
             Thread.currentThread().interrupt();
+            return;
           }
         }
       }
     }
 
     @Override
-    public void onMessage(final String channel, final String message) {
-      if (channel == null || message == null) {
+    public void onSubscribe(final byte[] channel, final int subscribedChannels) {
+      this.resync();
+    }
+
+    @Override
+    public void onPSubscribe(final byte[] pattern, final int subscribedChannels) {
+      this.resync();
+    }
+
+    private void resync() {
+      synchronized (Redis.this.subscriptionLock) {
+        if (!this.resyncPending) {
+          return;
+        }
+
+        this.resyncPending = false;
+        this.backoff = MIN_RECONNECT_BACKOFF;
+
+        // Apply everything that changed while the connection was being opened.
+        this.send(difference(Redis.this.channels, this.sentChannels), true, false);
+        this.send(difference(this.sentChannels, Redis.this.channels), false, false);
+        this.send(difference(Redis.this.patterns, this.sentPatterns), true, true);
+        this.send(difference(this.sentPatterns, Redis.this.patterns), false, true);
+      }
+    }
+
+    private void send(
+        @NotNull final Collection<String> names,
+        final boolean subscribe,
+        final boolean pattern) {
+
+      if (names.isEmpty()) {
+        return;
+      }
+
+      final byte[][] encoded = encodeChannels(names);
+
+      try {
+        if (pattern) {
+          if (subscribe) {
+            super.psubscribe(encoded);
+          } else {
+            super.punsubscribe(encoded);
+          }
+        } else {
+          if (subscribe) {
+            super.subscribe(encoded);
+          } else {
+            super.unsubscribe(encoded);
+          }
+        }
+      } catch (final Exception ignored) {
+        // The connection dropped, and will be resubscribed to everything once it is re-opened.
+      }
+    }
+
+    private void close() {
+      if (this.isSubscribed()) {
+        try {
+          super.unsubscribe();
+          super.punsubscribe();
+        } catch (final Exception ignored) {
+        }
+      }
+    }
+
+    @Override
+    public void onPMessage(final byte[] pattern, final byte[] channel, final byte[] message) {
+      this.onMessage(channel, message);
+    }
+
+    @Override
+    public void onMessage(final byte[] rawChannel, final byte[] message) {
+      if (rawChannel == null || message == null) {
         return;
       }
 
-      final Optional<MessageTransferObject> mto = MessageTransferObject.fromJson(message);
+      Redis.this.received.incrementAndGet();
+      Redis.this.receiveRate.mark();
+
+      final String channel = new String(rawChannel, StandardCharsets.UTF_8);
+      final Optional<MessageTransferObject> mto = MessageCodec.decodeAny(message);
 
       if (!mto.isPresent()) {
-        Text.log(Level.WARNING,
-            "Failed to read Redis message from channel '" + channel + "': " + message);
+        Text.log(Level.WARNING, "Failed to read Redis message from channel '" + channel + "': "
+            + new String(message, StandardCharsets.UTF_8));
         return;
       }
 
-      Bukkit.getPluginManager().callEvent(new AsyncRedisMessageReceiveEvent(channel, mto.get()));
-      Schedulers.sync().run(() -> Bukkit.getPluginManager()
-          .callEvent(new RedisMessageReceiveEvent(channel, mto.get())));
+      Redis.this.dispatcher.dispatch(channel, mto.get());
+
+      // Events are only created when something listens to them.
+      if (AsyncRedisMessageReceiveEvent.getHandlerList().getRegisteredListeners().length > 0) {
+        Bukkit.getPluginManager()
+            .callEvent(new AsyncRedisMessageReceiveEvent(channel, mto.get()));
+      }
+
+      if (RedisMessageReceiveEvent.getHandlerList().getRegisteredListeners().length > 0) {
+        Redis.this.dispatcher.runSync(() -> Bukkit.getPluginManager()
+            .callEvent(new RedisMessageReceiveEvent(channel, mto.get())));
+      }
     }
   }
+
+  /**
+   * An immutable snapshot of a manager's statistics.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Statistics {
+
+    /**
+     * How the Redis instance is deployed.
+     */
+    @NotNull private final RedisCredentials.Topology topology;
+
+    /**
+     * The statistics of the publisher, including publish latency.
+     */
+    @NotNull private final RedisPublisher.Statistics publisher;
+
+    /**
+     * The number of pub/sub messages received.
+     */
+    private final long received;
+
+    /**
+     * The average number of pub/sub messages received per second over the last minute.
+     */
+    private final double receiveRatePerSecond;
+
+    /**
+     * The number of times the pub/sub connection was re-established after dropping.
+     */
+    private final long reconnects;
+
+    /**
+     * The number of pooled connections in use, across every node in a cluster.
+     */
+    private final int activeConnections;
+
+    /**
+     * The number of idle pooled connections, across every node in a cluster.
+     */
+    private final int idleConnections;
+
+    /**
+     * The number of threads waiting for a pooled connection, across every node in a cluster.
+     */
+    private final int waitingThreads;
+
+    /**
+     * The number of times no pooled connection became available in time.
+     */
+    private final long poolExhausted;
+
+    /**
+     * The longest time a thread waited for a pooled connection, in milliseconds.
+     */
+    private final long maxBorrowWaitMillis;
+  }
 }
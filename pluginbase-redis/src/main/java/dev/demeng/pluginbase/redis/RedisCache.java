@@ -0,0 +1,515 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.gson.GsonProvider;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.params.SetParams;
+
+/**
+ * A two-tier cache: a size-bounded local near-cache in front of values stored in Redis, shared by
+ * every server. Values are stored as JSON strings under {@code <name>:<key>}.
+ *
+ * <p>Writes and invalidations are broadcast to the other servers, which drop the key from their
+ * near-cache, so lookups of hot keys stay in-process without serving stale values.</p>
+ *
+ * <pre>{@code
+ * RedisCache<Profile> profiles = redis.cache("profiles", Profile.class)
+ *     .withMaximumSize(5000)
+ *     .withTtl(1, TimeUnit.HOURS)
+ *     .withLoader(database::loadProfile)
+ *     .start();
+ * }</pre>
+ *
+ * @param <V> The type of the values
+ */
+public class RedisCache<V> implements Terminable {
+
+  /**
+   * The default maximum number of values kept in the near-cache.
+   */
+  public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private static final String CHANNEL_PREFIX = "pluginbase:cache:";
+  // Must be a power of two.
+  private static final int GENERATION_STRIPES = 64;
+
+  @NotNull private final Redis redis;
+
+  /**
+   * The name of the cache, used as the prefix of its Redis keys.
+   */
+  @NotNull @Getter private final String name;
+
+  @NotNull private final Class<V> type;
+  @NotNull private final String channel;
+
+  private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+  private long localExpiryMillis;
+  private long ttlMillis;
+  @Nullable private Function<String, V> loader;
+
+  @Nullable private volatile Cache<String, V> local;
+  @Nullable private Terminable invalidationHandler;
+
+  // Incremented on every invalidation of a key hashing to the stripe, so a value read before it is
+  // not cached locally after it, without invalidations of unrelated keys discarding the read.
+  @NotNull private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  @NotNull private final AtomicLong localHits = new AtomicLong();
+  @NotNull private final AtomicLong remoteHits = new AtomicLong();
+  @NotNull private final AtomicLong misses = new AtomicLong();
+  @NotNull private final AtomicLong loads = new AtomicLong();
+  @NotNull private final AtomicLong invalidations = new AtomicLong();
+
+  RedisCache(@NotNull final Redis redis, @NotNull final String name, @NotNull final Class<V> type) {
+    this.redis = redis;
+    this.name = name;
+    this.type = type;
+    this.channel = CHANNEL_PREFIX + name;
+  }
+
+  /**
+   * Sets the maximum number of values kept in the near-cache.
+   *
+   * @param maximumSize The maximum size, must be positive
+   * @return this
+   */
+  @NotNull
+  public RedisCache<V> withMaximumSize(final long maximumSize) {
+
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive");
+    }
+
+    this.maximumSize = maximumSize;
+    return this;
+  }
+
+  /**
+   * Sets how long a value is kept in the near-cache after it was added to it, whether or not it
+   * was read since. By default, values are kept until they are evicted or invalidated.
+   *
+   * @param expiry The expiry, or 0 for none
+   * @param unit   The unit of the expiry
+   * @return this
+   */
+  @NotNull
+  public RedisCache<V> withLocalExpiry(final long expiry, @NotNull final TimeUnit unit) {
+    this.localExpiryMillis = unit.toMillis(expiry);
+    return this;
+  }
+
+  /**
+   * Sets how long a value is kept in Redis after it was written. By default, values do not expire.
+   *
+   * @param ttl  The time to live, or 0 for none
+   * @param unit The unit of the time to live
+   * @return this
+   */
+  @NotNull
+  public RedisCache<V> withTtl(final long ttl, @NotNull final TimeUnit unit) {
+    this.ttlMillis = unit.toMillis(ttl);
+    return this;
+  }
+
+  /**
+   * Sets the loader called when a key is in neither tier, such as a database lookup. Loaded values
+   * are written to both tiers, unless another server wrote the key to Redis in the meantime, in
+   * which case its value is used instead. The loader may return null if the value does not
+   * exist.
+   *
+   * @param loader The loader
+   * @return this
+   */
+  @NotNull
+  public RedisCache<V> withLoader(@Nullable final Function<String, V> loader) {
+    this.loader = loader;
+    return this;
+  }
+
+  /**
+   * Creates the near-cache and starts listening for invalidations from other servers. Has no
+   * effect if the cache has already been started.
+   *
+   * @return this
+   */
+  @NotNull
+  public synchronized RedisCache<V> start() {
+
+    if (this.local != null) {
+      return this;
+    }
+
+    final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .maximumSize(this.maximumSize);
+
+    if (this.localExpiryMillis > 0) {
+      builder.expireAfterWrite(this.localExpiryMillis, TimeUnit.MILLISECONDS);
+    }
+
+    this.local = builder.build();
+    this.invalidationHandler = this.redis.handle(this.channel, Invalidation.class,
+        (invalidation, message) -> {
+          // This server already applied its own invalidations.
+          if (!message.getServerId().equals(this.redis.getServerId())) {
+            this.invalidateLocal(invalidation.key);
+          }
+        });
+
+    return this;
+  }
+
+  /**
+   * Gets a value from the near-cache only.
+   *
+   * @param key The key
+   * @return The value, or empty if it is not cached locally
+   */
+  @NotNull
+  public Optional<V> getIfPresent(@NotNull final String key) {
+    return Optional.ofNullable(this.local().getIfPresent(key));
+  }
+
+  /**
+   * Gets a value from the near-cache, then Redis, then the loader.
+   *
+   * <p>This will be executed on whichever thread it's called from, and may block on Redis and the
+   * loader.</p>
+   *
+   * @param key The key
+   * @return The value, or empty if it does not exist
+   */
+  @NotNull
+  public Optional<V> get(@NotNull final String key) {
+
+    final Cache<String, V> cache = this.local();
+    final V cached = cache.getIfPresent(key);
+
+    if (cached != null) {
+      this.localHits.incrementAndGet();
+      return Optional.of(cached);
+    }
+
+    final int stripe = stripe(key);
+    final long observed = this.generations.get(stripe);
+    V value = this.readRemote(key);
+
+    if (value != null) {
+      this.remoteHits.incrementAndGet();
+    } else {
+      this.misses.incrementAndGet();
+
+      if (this.loader == null) {
+        return Optional.empty();
+      }
+
+      value = this.loader.apply(key);
+      this.loads.incrementAndGet();
+
+      if (value == null) {
+        return Optional.empty();
+      }
+
+      // Only filled if still absent, so a value put by another server meanwhile is not replaced.
+      if (!this.writeRemote(key, value, true)) {
+        final V current = this.readRemote(key);
+
+        if (current != null) {
+          value = current;
+        }
+      }
+    }
+
+    if (this.generations.get(stripe) == observed) {
+      cache.put(key, value);
+    }
+
+    return Optional.of(value);
+  }
+
+  /**
+   * Gets a value from the near-cache, then Redis, then the loader.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param key The key
+   * @return A Promise of the value
+   * @see #get(String) for details
+   */
+  @NotNull
+  public Promise<Optional<V>> getAsync(@NotNull final String key) {
+    return Promise.supplyingAsync(() -> this.get(key));
+  }
+
+  /**
+   * Writes a value to both tiers and invalidates it on every other server.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @param key   The key
+   * @param value The value
+   */
+  public void put(@NotNull final String key, @NotNull final V value) {
+    this.generations.incrementAndGet(stripe(key));
+    this.writeRemote(key, value, false);
+    this.local().put(key, value);
+    this.broadcast(key);
+  }
+
+  /**
+   * Writes a value to both tiers and invalidates it on every other server.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param key   The key
+   * @param value The value
+   * @return A Promise completed once the value has been written
+   */
+  @NotNull
+  public Promise<Void> putAsync(@NotNull final String key, @NotNull final V value) {
+    return Promise.supplyingAsync(() -> {
+      this.put(key, value);
+      return null;
+    });
+  }
+
+  /**
+   * Removes a value from both tiers on every server.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @param key The key
+   */
+  public void invalidate(@NotNull final String key) {
+
+    this.invalidateLocal(key);
+
+    try {
+      this.redis.execute(this.redisKey(key), jedis -> jedis.del(this.redisKey(key)));
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to delete Redis cache value.", false);
+    }
+
+    this.broadcast(key);
+  }
+
+  /**
+   * Clears the near-cache on every server. Values stored in Redis are kept.
+   */
+  public void invalidateAllLocal() {
+    this.invalidateLocal(null);
+    this.broadcast(null);
+  }
+
+  /**
+   * Gets the number of values in the near-cache.
+   *
+   * @return The approximate size of the near-cache
+   */
+  public long getLocalSize() {
+    return this.local().size();
+  }
+
+  /**
+   * Gets a snapshot of the cache's statistics since it was created.
+   *
+   * @return The statistics
+   */
+  @NotNull
+  public Statistics getStatistics() {
+    return new Statistics(this.localHits.get(), this.remoteHits.get(), this.misses.get(),
+        this.loads.get(), this.invalidations.get());
+  }
+
+  @Override
+  public void close() {
+
+    if (this.invalidationHandler != null) {
+      this.invalidationHandler.closeSilently();
+      this.invalidationHandler = null;
+    }
+
+    if (this.local != null) {
+      this.local.invalidateAll();
+    }
+  }
+
+  @NotNull
+  private Cache<String, V> local() {
+
+    final Cache<String, V> cache = this.local;
+
+    if (cache == null) {
+      throw new IllegalStateException("Cache " + this.name + " has not been started");
+    }
+
+    return cache;
+  }
+
+  private void invalidateLocal(@Nullable final String key) {
+    this.invalidations.incrementAndGet();
+
+    if (key == null) {
+      for (int i = 0; i < GENERATION_STRIPES; i++) {
+        this.generations.incrementAndGet(i);
+      }
+
+      this.local().invalidateAll();
+    } else {
+      this.generations.incrementAndGet(stripe(key));
+      this.local().invalidate(key);
+    }
+  }
+
+  private static int stripe(@NotNull final String key) {
+    final int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+  }
+
+  private void broadcast(@Nullable final String key) {
+    this.redis.publishObject(this.channel, new Invalidation(key));
+  }
+
+  @NotNull
+  private String redisKey(@NotNull final String key) {
+    return this.name + ":" + key;
+  }
+
+  @Nullable
+  private V readRemote(@NotNull final String key) {
+
+    try {
+      final String json = this.redis.execute(this.redisKey(key),
+          jedis -> jedis.get(this.redisKey(key)));
+      return json == null ? null : GsonProvider.standard().fromJson(json, this.type);
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to read Redis cache value.", false);
+      return null;
+    }
+  }
+
+  /**
+   * Writes a value to Redis.
+   *
+   * @param key          The key
+   * @param value        The value
+   * @param onlyIfAbsent If the value should only be written if the key does not exist
+   * @return False if the key already existed and was kept, true otherwise
+   */
+  private boolean writeRemote(
+      @NotNull final String key,
+      @NotNull final V value,
+      final boolean onlyIfAbsent) {
+
+    try {
+      final String json = GsonProvider.standard().toJson(value);
+      final SetParams params = SetParams.setParams();
+
+      if (this.ttlMillis > 0) {
+        params.px(this.ttlMillis);
+      }
+
+      if (onlyIfAbsent) {
+        params.nx();
+      }
+
+      return this.redis.execute(this.redisKey(key),
+          jedis -> jedis.set(this.redisKey(key), json, params)) != null;
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to write Redis cache value.", false);
+      return true;
+    }
+  }
+
+  /**
+   * The message broadcast when a key changes, or when the near-cache is cleared if the key is
+   * null.
+   */
+  @RequiredArgsConstructor
+  private static final class Invalidation {
+
+    @Nullable private final String key;
+  }
+
+  /**
+   * An immutable snapshot of a cache's statistics.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Statistics {
+
+    /**
+     * The number of lookups answered by the near-cache.
+     */
+    private final long localHits;
+
+    /**
+     * The number of lookups answered by Redis.
+     */
+    private final long remoteHits;
+
+    /**
+     * The number of lookups found in neither tier.
+     */
+    private final long misses;
+
+    /**
+     * The number of times the loader was called.
+     */
+    private final long loads;
+
+    /**
+     * The number of near-cache invalidations, from this server or others.
+     */
+    private final long invalidations;
+
+    /**
+     * Gets the ratio of lookups answered by the near-cache.
+     *
+     * @return The local hit ratio, or 0 if nothing has been looked up
+     */
+    public double getLocalHitRatio() {
+      final long total = this.localHits + this.remoteHits + this.misses;
+      return total == 0 ? 0 : (double) this.localHits / total;
+    }
+  }
+}
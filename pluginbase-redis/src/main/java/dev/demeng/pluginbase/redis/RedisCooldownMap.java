@@ -0,0 +1,305 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.cooldown.Cooldown;
+import dev.demeng.pluginbase.cooldown.CooldownMap;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.Collections;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link CooldownMap} shared by every server, so that a cooldown started on one server also
+ * applies on the others. Each check is a single atomic Lua script using the Redis server's clock.
+ *
+ * <p>Keys known to be on cooldown are remembered locally until their cooldown ends, so repeated
+ * checks of a key on cooldown do not reach Redis. Clearing a key is broadcast so that every server
+ * forgets it. If Redis cannot be reached, the map falls back to a local cooldown map for this
+ * server.</p>
+ *
+ * <p>Keys are converted to strings using {@link Object#toString()}. Methods other than the
+ * asynchronous variants block on Redis.</p>
+ *
+ * @param <T> The type of the keys
+ */
+public class RedisCooldownMap<T> implements Terminable {
+
+  private static final String KEY_PREFIX = "pluginbase:cooldown:";
+
+  // Starts the cooldown if it is not running. Returns 0 if it was started, otherwise the remaining
+  // milliseconds.
+  private static final RedisScript TEST = new RedisScript(""
+      + "if redis.replicate_commands then redis.replicate_commands() end\n"
+      + "local t = redis.call('TIME')\n"
+      + "local now = t[1] * 1000 + math.floor(t[2] / 1000)\n"
+      + "if redis.call('SET', KEYS[1], now, 'NX', 'PX', ARGV[1]) then return 0 end\n"
+      + "return math.max(1, redis.call('PTTL', KEYS[1]))\n");
+
+  // Starts the cooldown, replacing any running one.
+  private static final RedisScript RESET = new RedisScript(""
+      + "if redis.replicate_commands then redis.replicate_commands() end\n"
+      + "local t = redis.call('TIME')\n"
+      + "local now = t[1] * 1000 + math.floor(t[2] / 1000)\n"
+      + "redis.call('SET', KEYS[1], now, 'PX', ARGV[1])\n"
+      + "return now\n");
+
+  @NotNull private final Redis redis;
+  @NotNull private final String prefix;
+
+  /**
+   * The cooldown applied to every key.
+   */
+  @NotNull @Getter private final Cooldown base;
+
+  // Keyed by the Redis key, which is what clears broadcast by other servers carry.
+  @NotNull private final Cache<String, Long> onCooldown;
+  @NotNull private final CooldownMap<T> fallback;
+  @NotNull private final Terminable clearHandler;
+
+  private RedisCooldownMap(
+      @NotNull final Redis redis,
+      @NotNull final String name,
+      @NotNull final Cooldown base) {
+    this.redis = redis;
+    this.prefix = KEY_PREFIX + name + ":";
+    this.base = base;
+    this.onCooldown = CacheBuilder.newBuilder()
+        .expireAfterWrite(Math.max(1, base.getDuration()), TimeUnit.MILLISECONDS)
+        .build();
+    this.fallback = CooldownMap.create(base);
+    this.clearHandler = redis.handle(this.prefix, String.class, (redisKey, message) -> {
+      // This server already applied its own clears.
+      if (!message.getServerId().equals(redis.getServerId())) {
+        this.onCooldown.invalidate(redisKey);
+      }
+    });
+  }
+
+  /**
+   * Creates a new cooldown map shared by every server using the same name. The map should be
+   * closed once no longer used, to stop listening for clears from other servers.
+   *
+   * @param redis The Redis manager
+   * @param name  The name of the map, unique across the network
+   * @param base  The cooldown applied to every key
+   * @param <T>   The type of the keys
+   * @return The cooldown map
+   */
+  @NotNull
+  public static <T> RedisCooldownMap<T> create(
+      @NotNull final Redis redis,
+      @NotNull final String name,
+      @NotNull final Cooldown base) {
+    return new RedisCooldownMap<>(redis, name, base);
+  }
+
+  /**
+   * Tests if the key is not on cooldown, and starts its cooldown if so.
+   *
+   * @param key The key
+   * @return True if the key was not on cooldown
+   */
+  public boolean test(@NotNull final T key) {
+
+    if (this.isKnownOnCooldown(key)) {
+      return false;
+    }
+
+    try {
+      final Object remaining = this.redis.execute(this.redisKey(key),
+          jedis -> TEST.eval(jedis, Collections.singletonList(this.redisKey(key)),
+              Collections.singletonList(Long.toString(this.base.getDuration()))));
+
+      if (this.remember(key, remaining) > 0) {
+        return false;
+      }
+
+      // The cooldown was started here, so later checks on this server need not reach Redis.
+      this.onCooldown.put(this.redisKey(key),
+          System.currentTimeMillis() + this.base.getDuration());
+      return true;
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to test Redis cooldown, using local cooldown.", false);
+      return this.fallback.test(key);
+    }
+  }
+
+  /**
+   * Tests if the key is not on cooldown, and starts its cooldown if so.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param key The key
+   * @return A Promise of true if the key was not on cooldown
+   */
+  @NotNull
+  public Promise<Boolean> testAsync(@NotNull final T key) {
+    return this.isKnownOnCooldown(key)
+        ? Promise.completed(false) : Promise.supplyingAsync(() -> this.test(key));
+  }
+
+  /**
+   * Tests if the key is not on cooldown, without starting its cooldown.
+   *
+   * @param key The key
+   * @return True if the key is not on cooldown
+   */
+  public boolean testSilently(@NotNull final T key) {
+    return this.remainingMillis(key) == 0;
+  }
+
+  /**
+   * Starts the key's cooldown, replacing any running cooldown.
+   *
+   * @param key The key
+   */
+  public void reset(@NotNull final T key) {
+
+    try {
+      this.redis.execute(this.redisKey(key),
+          jedis -> RESET.eval(jedis, Collections.singletonList(this.redisKey(key)),
+              Collections.singletonList(Long.toString(this.base.getDuration()))));
+      this.onCooldown.put(this.redisKey(key),
+          System.currentTimeMillis() + this.base.getDuration());
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to reset Redis cooldown, using local cooldown.", false);
+      this.fallback.reset(key);
+    }
+  }
+
+  /**
+   * Ends the key's cooldown on every server.
+   *
+   * @param key The key
+   */
+  public void clear(@NotNull final T key) {
+
+    this.onCooldown.invalidate(this.redisKey(key));
+    this.fallback.setLastTested(key, 0);
+
+    try {
+      this.redis.execute(this.redisKey(key), jedis -> jedis.del(this.redisKey(key)));
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to clear Redis cooldown.", false);
+      return;
+    }
+
+    // Sent after the delete, so other servers cannot re-read the cooldown once they drop it.
+    this.redis.publishString(this.prefix, this.redisKey(key));
+  }
+
+  /**
+   * Gets the time remaining on the key's cooldown.
+   *
+   * @param key The key
+   * @return The remaining milliseconds, or 0 if the key is not on cooldown
+   */
+  public long remainingMillis(@NotNull final T key) {
+
+    final Long until = this.onCooldown.getIfPresent(this.redisKey(key));
+
+    if (until != null && until > System.currentTimeMillis()) {
+      return until - System.currentTimeMillis();
+    }
+
+    try {
+      final long ttl = this.redis.execute(this.redisKey(key),
+          jedis -> jedis.pttl(this.redisKey(key)));
+      return this.remember(key, Math.max(0, ttl));
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to read Redis cooldown, using local cooldown.", false);
+      return this.fallback.remainingMillis(key);
+    }
+  }
+
+  /**
+   * Gets the time remaining on the key's cooldown.
+   *
+   * @param key  The key
+   * @param unit The unit of the returned time
+   * @return The remaining time, or 0 if the key is not on cooldown
+   */
+  public long remainingTime(@NotNull final T key, @NotNull final TimeUnit unit) {
+    return Math.max(0L, unit.convert(this.remainingMillis(key), TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Gets when the key's cooldown was last started, according to the Redis server's clock.
+   *
+   * @param key The key
+   * @return The time in milliseconds, or empty if the key is not on cooldown
+   */
+  @NotNull
+  public OptionalLong getLastTested(@NotNull final T key) {
+
+    try {
+      final String value = this.redis.execute(this.redisKey(key),
+          jedis -> jedis.get(this.redisKey(key)));
+      return value == null ? OptionalLong.empty() : OptionalLong.of(Long.parseLong(value));
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to read Redis cooldown, using local cooldown.", false);
+      return this.fallback.getLastTested(key);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.clearHandler.closeSilently();
+    this.onCooldown.invalidateAll();
+  }
+
+  private boolean isKnownOnCooldown(@NotNull final T key) {
+    final Long until = this.onCooldown.getIfPresent(this.redisKey(key));
+    return until != null && until > System.currentTimeMillis();
+  }
+
+  private long remember(@NotNull final T key, @Nullable final Object remaining) {
+
+    final long millis = remaining instanceof Long ? (Long) remaining : 0;
+
+    if (millis > 0) {
+      this.onCooldown.put(this.redisKey(key), System.currentTimeMillis() + millis);
+    }
+
+    return millis;
+  }
+
+  @NotNull
+  private String redisKey(@NotNull final T key) {
+    return this.prefix + key;
+  }
+}
@@ -26,17 +26,49 @@
 
 package dev.demeng.pluginbase.redis;
 
-import lombok.Data;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.bukkit.configuration.ConfigurationSection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.Protocol;
 
 /**
  * The POJO containing the credentials to a Redis instance.
+ *
+ * <p>By default, the credentials point to a single Redis server. Use
+ * {@link #withSentinel(String, String...)} to find the master through Sentinel, or
+ * {@link #withCluster(String...)} to connect to a Redis Cluster instead. The connection pool can
+ * be tuned using the other {@code with} methods, which validate the settings.</p>
  */
-@Data(staticConstructor = "of")
+@Getter
+@EqualsAndHashCode
+@ToString
 public final class RedisCredentials {
 
+  /**
+   * The default maximum number of connections in the pool.
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+  /**
+   * The default maximum time to wait for a connection from an exhausted pool, in milliseconds.
+   */
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 2000;
+
   /**
    * The host (IP) of the instance. Local host is supported.
    */
@@ -62,6 +94,49 @@ public final class RedisCredentials {
    */
   private final boolean ssl;
 
+  /**
+   * The maximum number of connections in the pool, including the pub/sub connection and any stream
+   * consumers. In a cluster, this applies to each node.
+   */
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+  /**
+   * The maximum number of idle connections kept in the pool.
+   */
+  private int maxIdle = DEFAULT_MAX_CONNECTIONS;
+
+  /**
+   * The minimum number of idle connections kept in the pool, opened ahead of demand.
+   */
+  private int minIdle;
+
+  /**
+   * The maximum time to wait for a connection once every connection is in use, in milliseconds,
+   * after which the request fails. Negative to wait indefinitely.
+   */
+  private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+
+  /**
+   * The connection and socket timeout, in milliseconds.
+   */
+  private int timeoutMillis = Protocol.DEFAULT_TIMEOUT;
+
+  /**
+   * The name of the Sentinel master set. Null if Sentinel is not used.
+   */
+  @Nullable private String sentinelMaster;
+
+  /**
+   * The Sentinel nodes, as {@code host:port}.
+   */
+  @NotNull private List<String> sentinels = Collections.emptyList();
+
+  /**
+   * The cluster nodes used to discover the cluster, as {@code host:port}. Empty if the instance is
+   * not a cluster.
+   */
+  @NotNull private List<String> clusterNodes = Collections.emptyList();
+
   private RedisCredentials(
       @NotNull final String host,
       final int port,
@@ -86,19 +161,241 @@ public final class RedisCredentials {
     this.ssl = ssl;
   }
 
+  /**
+   * Creates credentials for a single Redis server.
+   *
+   * @param host     The host (IP) of the instance
+   * @param port     The port to the instance, typically 6379
+   * @param user     The username of the instance, or null or empty if none
+   * @param password The password to the instance, or null or empty if none
+   * @param ssl      If SSL should be enabled
+   * @return The Redis credentials
+   */
+  @NotNull
+  public static RedisCredentials of(
+      @NotNull final String host,
+      final int port,
+      @Nullable final String user,
+      @Nullable final String password,
+      final boolean ssl) {
+    return new RedisCredentials(host, port, user, password, ssl);
+  }
+
   /**
    * Gets Redis credentials from a configuration section.
    *
+   * <p>Besides the connection details, the section may contain a {@code pool} section with
+   * {@code max-connections}, {@code max-idle}, {@code min-idle} and {@code max-wait-millis}, a
+   * {@code timeout-millis} value, a {@code sentinel} section with {@code master} and a
+   * {@code nodes} list, or a {@code cluster} section with a {@code nodes} list.</p>
+   *
    * @param section The configuration section
    * @return The Redis credentials provided
    */
   @NotNull
   public static RedisCredentials of(@NotNull final ConfigurationSection section) {
-    return of(
+
+    final RedisCredentials credentials = of(
         section.getString("host", "localhost"),
         section.getInt("port", 6379),
         section.getString("user"),
         section.getString("password"),
         section.getBoolean("ssl", false));
+
+    credentials.withPool(
+        section.getInt("pool.max-connections", DEFAULT_MAX_CONNECTIONS),
+        section.getInt("pool.max-idle", DEFAULT_MAX_CONNECTIONS),
+        section.getInt("pool.min-idle", 0));
+    credentials.withMaxWait(
+        section.getLong("pool.max-wait-millis", DEFAULT_MAX_WAIT_MILLIS), TimeUnit.MILLISECONDS);
+    credentials.withTimeout(
+        section.getInt("timeout-millis", Protocol.DEFAULT_TIMEOUT), TimeUnit.MILLISECONDS);
+
+    final String master = section.getString("sentinel.master");
+
+    if (master != null && !master.trim().isEmpty()) {
+      credentials.withSentinel(master,
+          section.getStringList("sentinel.nodes").toArray(new String[0]));
+    }
+
+    final List<String> nodes = section.getStringList("cluster.nodes");
+
+    if (!nodes.isEmpty()) {
+      credentials.withCluster(nodes.toArray(new String[0]));
+    }
+
+    return credentials;
+  }
+
+  /**
+   * Sets the size of the connection pool.
+   *
+   * @param maxConnections The maximum number of connections, must be positive
+   * @param maxIdle        The maximum number of idle connections kept
+   * @param minIdle        The minimum number of idle connections kept
+   * @return this
+   */
+  @NotNull
+  public RedisCredentials withPool(final int maxConnections, final int maxIdle, final int minIdle) {
+
+    if (maxConnections <= 0 || maxIdle < 0 || minIdle < 0 || minIdle > maxIdle) {
+      throw new IllegalArgumentException("Invalid pool size " + maxConnections + "/" + maxIdle
+          + "/" + minIdle);
+    }
+
+    this.maxConnections = maxConnections;
+    this.maxIdle = maxIdle;
+    this.minIdle = minIdle;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time to wait for a connection once every connection is in use.
+   *
+   * @param maxWait The maximum wait, or negative to wait indefinitely
+   * @param unit    The unit of the maximum wait
+   * @return this
+   */
+  @NotNull
+  public RedisCredentials withMaxWait(final long maxWait, @NotNull final TimeUnit unit) {
+    this.maxWaitMillis = maxWait < 0 ? -1 : unit.toMillis(maxWait);
+    return this;
+  }
+
+  /**
+   * Sets the connection and socket timeout.
+   *
+   * @param timeout The timeout, must be positive
+   * @param unit    The unit of the timeout
+   * @return this
+   */
+  @NotNull
+  public RedisCredentials withTimeout(final long timeout, @NotNull final TimeUnit unit) {
+
+    if (timeout <= 0) {
+      throw new IllegalArgumentException("Timeout must be positive");
+    }
+
+    this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(timeout));
+    return this;
+  }
+
+  /**
+   * Finds the master through Sentinel, following it when it fails over. The host and port of these
+   * credentials are then ignored.
+   *
+   * @param master    The name of the master set
+   * @param sentinels The Sentinel nodes, as {@code host:port}
+   * @return this
+   */
+  @NotNull
+  public RedisCredentials withSentinel(
+      @NotNull final String master,
+      @NotNull final String... sentinels) {
+
+    if (sentinels.length == 0) {
+      throw new IllegalArgumentException("At least one Sentinel node is required");
+    }
+
+    this.sentinelMaster = master;
+    this.sentinels = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(sentinels)));
+    return this;
+  }
+
+  /**
+   * Connects to a Redis Cluster discovered through the provided nodes. The host and port of these
+   * credentials are then ignored.
+   *
+   * @param nodes The nodes to discover the cluster from, as {@code host:port}
+   * @return this
+   */
+  @NotNull
+  public RedisCredentials withCluster(@NotNull final String... nodes) {
+
+    if (nodes.length == 0) {
+      throw new IllegalArgumentException("At least one cluster node is required");
+    }
+
+    this.clusterNodes = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(nodes)));
+    return this;
+  }
+
+  /**
+   * Gets how the instance is deployed, according to these credentials.
+   *
+   * @return The topology
+   */
+  @NotNull
+  public Topology getTopology() {
+
+    if (!this.clusterNodes.isEmpty()) {
+      return Topology.CLUSTER;
+    }
+
+    return this.sentinelMaster != null ? Topology.SENTINEL : Topology.STANDALONE;
+  }
+
+  @NotNull
+  JedisClientConfig toClientConfig() {
+    return DefaultJedisClientConfig.builder()
+        .user(this.user)
+        .password(this.password)
+        .ssl(this.ssl)
+        .connectionTimeoutMillis(this.timeoutMillis)
+        .socketTimeoutMillis(this.timeoutMillis)
+        .build();
+  }
+
+  @NotNull
+  JedisClientConfig toSentinelClientConfig() {
+    return DefaultJedisClientConfig.builder()
+        .ssl(this.ssl)
+        .connectionTimeoutMillis(this.timeoutMillis)
+        .socketTimeoutMillis(this.timeoutMillis)
+        .build();
+  }
+
+  @NotNull
+  <T, C extends GenericObjectPoolConfig<T>> C applyPool(@NotNull final C config) {
+    config.setMaxTotal(this.maxConnections);
+    config.setMaxIdle(this.maxIdle);
+    config.setMinIdle(this.minIdle);
+    config.setMaxWait(Duration.ofMillis(this.maxWaitMillis));
+    config.setBlockWhenExhausted(true);
+    config.setJmxEnabled(false);
+    return config;
+  }
+
+  @NotNull
+  static Set<HostAndPort> parseNodes(@NotNull final List<String> nodes) {
+
+    final Set<HostAndPort> parsed = new HashSet<>();
+
+    for (final String node : nodes) {
+      parsed.add(HostAndPort.from(node));
+    }
+
+    return parsed;
+  }
+
+  /**
+   * How a Redis instance is deployed.
+   */
+  public enum Topology {
+
+    /**
+     * A single server, possibly with replicas that are not used.
+     */
+    STANDALONE,
+
+    /**
+     * A master found through Sentinel, which is followed when it fails over.
+     */
+    SENTINEL,
+
+    /**
+     * A Redis Cluster, where keys are sharded across several masters.
+     */
+    CLUSTER
   }
 }
@@ -0,0 +1,437 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Publishes messages from a single dedicated thread, which drains a bounded queue and sends the
+ * messages in pipelined batches over one connection.
+ *
+ * <p>A batch is sent once it reaches the batch size, or once the linger time has passed since its
+ * first message was queued, whichever comes first. A longer linger sends larger batches at the
+ * cost of latency.</p>
+ */
+public class RedisPublisher implements Terminable {
+
+  /**
+   * The default maximum number of messages sent in a single pipeline.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /**
+   * The default time to wait for more messages before sending a batch, in microseconds.
+   */
+  public static final long DEFAULT_LINGER_MICROS = 500;
+
+  /**
+   * The default maximum number of messages waiting to be sent.
+   */
+  public static final int DEFAULT_CAPACITY = 16384;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final long RETRY_DELAY_MILLIS = 1000;
+
+  @NotNull private final Redis redis;
+  @NotNull private final String name;
+
+  @NotNull private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+  @NotNull private final AtomicInteger queued = new AtomicInteger();
+
+  /**
+   * The maximum number of messages sent in a single pipeline.
+   */
+  @Getter private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * The time to wait for more messages before sending a batch, in nanoseconds.
+   */
+  @Getter private volatile long lingerNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_LINGER_MICROS);
+
+  /**
+   * The maximum number of messages waiting to be sent. Messages published while the queue is full
+   * are rejected.
+   */
+  @Getter private volatile int capacity = DEFAULT_CAPACITY;
+
+  @NotNull private final AtomicLong published = new AtomicLong();
+  @NotNull private final AtomicLong failed = new AtomicLong();
+  @NotNull private final AtomicLong rejected = new AtomicLong();
+  @NotNull private final AtomicLong batches = new AtomicLong();
+  @NotNull private final AtomicLong totalLatencyNanos = new AtomicLong();
+  @NotNull private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  @Nullable private volatile Thread writer;
+  @Nullable private Jedis connection;
+  private volatile boolean closing;
+
+  RedisPublisher(@NotNull final Redis redis, @NotNull final String name) {
+    this.redis = redis;
+    this.name = name;
+  }
+
+  /**
+   * Sets the maximum number of messages sent in a single pipeline.
+   *
+   * @param batchSize The batch size, must be positive
+   * @return this
+   */
+  @NotNull
+  public RedisPublisher withBatchSize(final int batchSize) {
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * Sets the time to wait for more messages before sending a batch.
+   *
+   * @param linger The linger time, or 0 to send as soon as the queue is empty
+   * @param unit   The unit of the linger time
+   * @return this
+   */
+  @NotNull
+  public RedisPublisher withLinger(final long linger, @NotNull final TimeUnit unit) {
+
+    if (linger < 0) {
+      throw new IllegalArgumentException("Linger cannot be negative");
+    }
+
+    this.lingerNanos = unit.toNanos(linger);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of messages waiting to be sent.
+   *
+   * @param capacity The capacity, must be positive
+   * @return this
+   */
+  @NotNull
+  public RedisPublisher withCapacity(final int capacity) {
+
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+
+    this.capacity = capacity;
+    return this;
+  }
+
+  /**
+   * Starts the writer thread. Has no effect if the publisher has already been started.
+   *
+   * @return this
+   */
+  @NotNull
+  public synchronized RedisPublisher start() {
+
+    if (this.writer != null || this.closing) {
+      return this;
+    }
+
+    final Thread thread = new Thread(this::run, this.name + "-redis-publisher");
+    thread.setDaemon(true);
+    this.writer = thread;
+    thread.start();
+    return this;
+  }
+
+  /**
+   * Queues a message to be published.
+   *
+   * @param channel The channel to publish into
+   * @param message The message, which is sent as UTF-8
+   * @return True if the message was queued, false if the queue is full or the publisher is closed
+   */
+  public boolean publish(@NotNull final String channel, @NotNull final String message) {
+    return this.publish(channel, message.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Queues a message to be published.
+   *
+   * @param channel The channel to publish into
+   * @param message The message
+   * @return True if the message was queued, false if the queue is full or the publisher is closed
+   */
+  public boolean publish(@NotNull final String channel, @NotNull final byte[] message) {
+
+    if (this.closing) {
+      return false;
+    }
+
+    if (this.queued.incrementAndGet() > this.capacity) {
+      this.queued.decrementAndGet();
+      this.rejected.incrementAndGet();
+      return false;
+    }
+
+    final Pending pending =
+        new Pending(channel.getBytes(StandardCharsets.UTF_8), message, System.nanoTime());
+    this.queue.offer(pending);
+
+    // Closed while queueing, possibly after the final drain. If the message is still queued
+    // nothing will send it, otherwise the writer has already taken it.
+    if (this.closing && this.queue.remove(pending)) {
+      this.queued.decrementAndGet();
+      this.rejected.incrementAndGet();
+      return false;
+    }
+
+    LockSupport.unpark(this.writer);
+    return true;
+  }
+
+  /**
+   * Gets the number of messages waiting to be sent.
+   *
+   * @return The queue depth
+   */
+  public int getQueueDepth() {
+    return this.queued.get();
+  }
+
+  /**
+   * Gets a snapshot of the publisher's statistics since it was created.
+   *
+   * @return The statistics
+   */
+  @NotNull
+  public Statistics getStatistics() {
+    final long sent = this.published.get();
+    return new Statistics(this.queued.get(), sent, this.failed.get(), this.rejected.get(),
+        this.batches.get(), sent == 0 ? 0 : this.totalLatencyNanos.get() / sent,
+        this.maxLatencyNanos.get());
+  }
+
+  /**
+   * Stops accepting messages, sends every queued message and stops the writer thread.
+   */
+  @Override
+  public void close() {
+
+    final Thread thread;
+
+    synchronized (this) {
+      if (this.closing) {
+        return;
+      }
+
+      this.closing = true;
+      thread = this.writer;
+    }
+
+    if (thread == null) {
+      return;
+    }
+
+    LockSupport.unpark(thread);
+
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+
+    final List<Pending> batch = new ArrayList<>();
+
+    while (!this.closing || !this.queue.isEmpty()) {
+
+      final Pending first = this.queue.poll();
+
+      if (first == null) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        continue;
+      }
+
+      batch.add(first);
+      final long deadline = System.nanoTime() + this.lingerNanos;
+
+      while (batch.size() < this.batchSize) {
+        final Pending next = this.queue.poll();
+
+        if (next != null) {
+          batch.add(next);
+          continue;
+        }
+
+        final long remaining = deadline - System.nanoTime();
+
+        if (remaining <= 0 || this.closing) {
+          break;
+        }
+
+        LockSupport.parkNanos(this, remaining);
+      }
+
+      this.queued.addAndGet(-batch.size());
+      this.send(batch);
+      batch.clear();
+    }
+
+    if (this.connection != null) {
+      this.connection.close();
+      this.connection = null;
+    }
+  }
+
+  private void send(@NotNull final List<Pending> batch) {
+
+    try {
+      if (this.connection == null) {
+        this.connection = this.redis.getResource(null);
+      }
+
+      final Pipeline pipeline = this.connection.pipelined();
+
+      for (final Pending pending : batch) {
+        pipeline.publish(pending.channel, pending.message);
+      }
+
+      pipeline.sync();
+
+    } catch (final Exception ex) {
+      this.failed.addAndGet(batch.size());
+      Common.error(ex, "Failed to publish " + batch.size() + " Redis messages.", false);
+
+      // The connection may be broken, so it is returned to the pool to be validated.
+      if (this.connection != null) {
+        try {
+          this.connection.close();
+        } catch (final Exception ignored) {
+        }
+        this.connection = null;
+      }
+
+      // Prevents spinning on errors while the server is unreachable.
+      if (!this.closing) {
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MILLIS));
+      }
+
+      return;
+    }
+
+    final long now = System.nanoTime();
+    long total = 0;
+    long max = 0;
+
+    for (final Pending pending : batch) {
+      final long latency = now - pending.queuedAt;
+      total += latency;
+      max = Math.max(max, latency);
+    }
+
+    final long batchMax = max;
+    this.published.addAndGet(batch.size());
+    this.batches.incrementAndGet();
+    this.totalLatencyNanos.addAndGet(total);
+    this.maxLatencyNanos.accumulateAndGet(batchMax, Math::max);
+  }
+
+  @RequiredArgsConstructor
+  private static final class Pending {
+
+    @NotNull private final byte[] channel;
+    @NotNull private final byte[] message;
+    private final long queuedAt;
+  }
+
+  /**
+   * An immutable snapshot of a publisher's statistics.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Statistics {
+
+    /**
+     * The number of messages waiting to be sent.
+     */
+    private final int queueDepth;
+
+    /**
+     * The number of messages sent.
+     */
+    private final long published;
+
+    /**
+     * The number of messages that could not be sent.
+     */
+    private final long failed;
+
+    /**
+     * The number of messages rejected because the queue was full or the publisher was closed.
+     */
+    private final long rejected;
+
+    /**
+     * The number of pipelines sent.
+     */
+    private final long batches;
+
+    /**
+     * The average time between a message being queued and sent, in nanoseconds.
+     */
+    private final long averageLatencyNanos;
+
+    /**
+     * The longest time between a message being queued and sent, in nanoseconds.
+     */
+    private final long maxLatencyNanos;
+
+    /**
+     * Gets the average number of messages sent in each pipeline.
+     *
+     * @return The average batch size, or 0 if nothing has been sent
+     */
+    public double getAverageBatchSize() {
+      return this.batches == 0 ? 0 : (double) this.published / this.batches;
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A token bucket rate limiter shared by every server. Each key has a bucket that holds up to
+ * {@link #getCapacity()} tokens and refills continuously, and each permit takes tokens from it.
+ * This allows short bursts while limiting the long-term rate, unlike a {@link RedisCooldownMap}.
+ *
+ * <p>Each check is a single atomic Lua script using the Redis server's clock. Keys known to have an
+ * empty bucket are remembered locally until enough tokens will have refilled, so those checks do
+ * not reach Redis. Resetting a key is broadcast so that every server forgets it. If Redis cannot
+ * be reached, the limiter falls back to a local bucket for this server, like a
+ * {@link RedisCooldownMap} falls back to a local cooldown.</p>
+ *
+ * <p>Keys are converted to strings using {@link Object#toString()}. Methods other than the
+ * asynchronous variants block on Redis.</p>
+ *
+ * @param <T> The type of the keys
+ */
+public class RedisRateLimiter<T> implements Terminable {
+
+  private static final String KEY_PREFIX = "pluginbase:ratelimit:";
+
+  // Refills the bucket, then takes the requested tokens if there are enough. Returns 0 if they
+  // were taken, otherwise the milliseconds until enough tokens will have refilled.
+  private static final RedisScript ACQUIRE = new RedisScript(""
+      + "if redis.replicate_commands then redis.replicate_commands() end\n"
+      + "local capacity = tonumber(ARGV[1])\n"
+      + "local rate = tonumber(ARGV[2])\n"
+      + "local requested = tonumber(ARGV[3])\n"
+      + "local t = redis.call('TIME')\n"
+      + "local now = t[1] * 1000 + math.floor(t[2] / 1000)\n"
+      + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n"
+      + "local tokens = tonumber(bucket[1]) or capacity\n"
+      + "local last = tonumber(bucket[2]) or now\n"
+      + "tokens = math.min(capacity, tokens + math.max(0, now - last) * rate)\n"
+      + "local wait = 0\n"
+      + "if tokens >= requested then\n"
+      + "  tokens = tokens - requested\n"
+      + "else\n"
+      + "  wait = math.ceil((requested - tokens) / rate)\n"
+      + "end\n"
+      + "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)\n"
+      + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate))\n"
+      + "return wait\n");
+
+  @NotNull private final Redis redis;
+  @NotNull private final String prefix;
+
+  /**
+   * The maximum number of tokens in a bucket, which is the largest burst allowed.
+   */
+  @Getter private final long capacity;
+
+  /**
+   * The number of tokens added to a bucket every millisecond.
+   */
+  @Getter private final double refillPerMilli;
+
+  // Keyed by the Redis key, which is what resets broadcast by other servers carry.
+  @NotNull private final Cache<String, Long> exhausted;
+  @NotNull private final Cache<String, LocalBucket> fallback;
+  @NotNull private final Terminable resetHandler;
+
+  private RedisRateLimiter(
+      @NotNull final Redis redis,
+      @NotNull final String name,
+      final long capacity,
+      final double refillPerMilli) {
+    this.redis = redis;
+    this.prefix = KEY_PREFIX + name + ":";
+    this.capacity = capacity;
+    this.refillPerMilli = refillPerMilli;
+    this.exhausted = CacheBuilder.newBuilder()
+        .expireAfterWrite((long) Math.ceil(capacity / refillPerMilli), TimeUnit.MILLISECONDS)
+        .build();
+    // A bucket left alone this long is full again, the same as a new one.
+    this.fallback = CacheBuilder.newBuilder()
+        .expireAfterAccess((long) Math.ceil(capacity / refillPerMilli), TimeUnit.MILLISECONDS)
+        .build();
+    this.resetHandler = redis.handle(this.prefix, String.class, (redisKey, message) -> {
+      // This server already applied its own resets.
+      if (!message.getServerId().equals(redis.getServerId())) {
+        this.exhausted.invalidate(redisKey);
+      }
+    });
+  }
+
+  /**
+   * Creates a new rate limiter shared by every server using the same name. For example, a capacity
+   * of 5 with 1 token per second allows a burst of 5, then 1 permit per second. The limiter
+   * should be closed once no longer used, to stop listening for resets from other servers.
+   *
+   * @param redis    The Redis manager
+   * @param name     The name of the limiter, unique across the network
+   * @param capacity The maximum number of tokens in a bucket, must be positive
+   * @param tokens   The number of tokens refilled every period, must be positive
+   * @param period   The refill period, must be positive
+   * @param unit     The unit of the refill period
+   * @param <T>      The type of the keys
+   * @return The rate limiter
+   */
+  @NotNull
+  public static <T> RedisRateLimiter<T> create(
+      @NotNull final Redis redis,
+      @NotNull final String name,
+      final long capacity,
+      final long tokens,
+      final long period,
+      @NotNull final TimeUnit unit) {
+
+    if (capacity <= 0 || tokens <= 0 || period <= 0) {
+      throw new IllegalArgumentException("Capacity, tokens and period must be positive");
+    }
+
+    return new RedisRateLimiter<>(redis, name, capacity,
+        (double) tokens / Math.max(1, unit.toMillis(period)));
+  }
+
+  /**
+   * Tests if the key has a token available, and takes it if so.
+   *
+   * @param key The key
+   * @return True if a token was taken
+   */
+  public boolean test(@NotNull final T key) {
+    return this.tryAcquire(key, 1) == 0;
+  }
+
+  /**
+   * Tests if the key has a token available, and takes it if so.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param key The key
+   * @return A Promise of true if a token was taken
+   */
+  @NotNull
+  public Promise<Boolean> testAsync(@NotNull final T key) {
+    return this.isKnownExhausted(key)
+        ? Promise.completed(false) : Promise.supplyingAsync(() -> this.test(key));
+  }
+
+  /**
+   * Takes the given number of tokens from the key's bucket if it has enough. No tokens are taken
+   * otherwise.
+   *
+   * @param key    The key
+   * @param tokens The number of tokens, must be between 1 and the capacity
+   * @return 0 if the tokens were taken, otherwise the milliseconds until enough tokens will have
+   * refilled
+   */
+  public long tryAcquire(@NotNull final T key, final long tokens) {
+
+    if (tokens <= 0 || tokens > this.capacity) {
+      throw new IllegalArgumentException("Tokens must be between 1 and " + this.capacity);
+    }
+
+    final Long until = this.exhausted.getIfPresent(this.redisKey(key));
+
+    if (until != null && until > System.currentTimeMillis()) {
+      return until - System.currentTimeMillis();
+    }
+
+    try {
+      final Object wait = this.redis.execute(this.redisKey(key),
+          jedis -> ACQUIRE.eval(jedis, Collections.singletonList(this.redisKey(key)),
+              Arrays.asList(Long.toString(this.capacity), Double.toString(this.refillPerMilli),
+                  Long.toString(tokens))));
+      return this.remember(key, tokens, wait);
+
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to test Redis rate limit, using local rate limit.", false);
+      return this.fallback.asMap()
+          .computeIfAbsent(this.redisKey(key), k -> new LocalBucket(this.capacity))
+          .acquire(tokens, this.capacity, this.refillPerMilli);
+    }
+  }
+
+  /**
+   * Refills the key's bucket on every server.
+   *
+   * @param key The key
+   */
+  public void reset(@NotNull final T key) {
+
+    this.exhausted.invalidate(this.redisKey(key));
+    this.fallback.invalidate(this.redisKey(key));
+
+    try {
+      this.redis.execute(this.redisKey(key), jedis -> jedis.del(this.redisKey(key)));
+    } catch (final Exception ex) {
+      Common.error(ex, "Failed to reset Redis rate limit.", false);
+      return;
+    }
+
+    // Sent after the delete, so other servers cannot re-read the empty bucket once they drop it.
+    this.redis.publishString(this.prefix, this.redisKey(key));
+  }
+
+  @Override
+  public void close() {
+    this.resetHandler.closeSilently();
+    this.exhausted.invalidateAll();
+    this.fallback.invalidateAll();
+  }
+
+  private boolean isKnownExhausted(@NotNull final T key) {
+    final Long until = this.exhausted.getIfPresent(this.redisKey(key));
+    return until != null && until > System.currentTimeMillis();
+  }
+
+  private long remember(
+      @NotNull final T key,
+      final long tokens,
+      @Nullable final Object wait) {
+
+    final long millis = wait instanceof Long ? (Long) wait : 0;
+
+    // A bucket without a single token cannot satisfy any request until then, but one that only
+    // failed a larger request may still satisfy a smaller one.
+    if (millis > 0 && tokens == 1) {
+      this.exhausted.put(this.redisKey(key), System.currentTimeMillis() + millis);
+    }
+
+    return millis;
+  }
+
+  @NotNull
+  private String redisKey(@NotNull final T key) {
+    return this.prefix + key;
+  }
+
+  /**
+   * A bucket kept on this server while Redis cannot be reached, refilled the same way as the
+   * shared buckets.
+   */
+  private static final class LocalBucket {
+
+    private double tokens;
+    private long last = System.currentTimeMillis();
+
+    private LocalBucket(final long capacity) {
+      this.tokens = capacity;
+    }
+
+    private synchronized long acquire(final long requested, final long capacity,
+        final double refillPerMilli) {
+
+      final long now = System.currentTimeMillis();
+      this.tokens = Math.min(capacity, this.tokens + Math.max(0, now - this.last) * refillPerMilli);
+      this.last = now;
+
+      if (this.tokens >= requested) {
+        this.tokens -= requested;
+        return 0;
+      }
+
+      return (long) Math.ceil((requested - this.tokens) / refillPerMilli);
+    }
+  }
+}
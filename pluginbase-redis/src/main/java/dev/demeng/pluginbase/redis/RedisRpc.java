@@ -0,0 +1,377 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import dev.demeng.pluginbase.gson.GsonProvider;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Request/response calls between servers over Redis pub/sub.
+ *
+ * <p>Servers register handlers for named methods. A request is broadcast to every server handling
+ * the method, and each reply is sent back on the requesting server's control channel, matched to
+ * the request by its correlation ID. Handlers may return null to not reply, which lets a server
+ * that does not know the answer stay silent.</p>
+ *
+ * <pre>{@code
+ * rpc.registerSync("find-player", String.class, name -> {
+ *   Player player = Bukkit.getPlayerExact(name);
+ *   return player == null ? null : redis.getServerId();
+ * });
+ *
+ * rpc.request("find-player", "Notch", String.class, 500, TimeUnit.MILLISECONDS)
+ *     .thenAcceptSync(server -> ...);
+ * }</pre>
+ */
+public class RedisRpc implements Terminable {
+
+  private static final String CHANNEL_PREFIX = "pluginbase:rpc:";
+
+  private static final long WHEEL_TICK_MILLIS = 10;
+  private static final int WHEEL_SLOTS = 512;
+
+  @NotNull private final Redis redis;
+  @NotNull private final TimingWheel wheel;
+  @NotNull private final Terminable responseHandler;
+
+  @NotNull private final Map<String, PendingRequest> pending = new ConcurrentHashMap<>();
+  // Replies of every RPC layer sharing the server ID arrive on the same channel, and may arrive
+  // after a restart, so IDs are unique to this instance rather than just a sequence.
+  @NotNull private final String idPrefix = UUID.randomUUID() + ":";
+  @NotNull private final AtomicLong sequence = new AtomicLong();
+
+  RedisRpc(@NotNull final Redis redis) {
+    this.redis = redis;
+    this.wheel = new TimingWheel(redis.getServerId() + "-redis-rpc-timeouts", WHEEL_TICK_MILLIS,
+        TimeUnit.MILLISECONDS, WHEEL_SLOTS);
+    this.responseHandler = redis.handle(redis.getControlChannel(), Response.class,
+        (response, message) -> {
+          final PendingRequest request = this.pending.get(response.id);
+
+          if (request != null) {
+            request.onReply(message.getServerId(), response);
+          }
+        });
+  }
+
+  /**
+   * Registers a handler for a method. The handler is called on the subscriber thread, so it should
+   * return quickly.
+   *
+   * @param method      The name of the method
+   * @param requestType The type of the request
+   * @param handler     The handler, returning the reply or null to not reply
+   * @param <Q>         The type of the request
+   * @param <R>         The type of the reply
+   * @return A terminable which unregisters the handler when closed
+   */
+  @NotNull
+  public <Q, R> Terminable register(
+      @NotNull final String method,
+      @NotNull final Class<Q> requestType,
+      @NotNull final Function<Q, R> handler) {
+    return this.redis.handle(channel(method), Request.class,
+        (request, message) -> this.serve(request, requestType, handler));
+  }
+
+  /**
+   * Registers a handler for a method, called on the main thread.
+   *
+   * @param method      The name of the method
+   * @param requestType The type of the request
+   * @param handler     The handler, returning the reply or null to not reply
+   * @param <Q>         The type of the request
+   * @param <R>         The type of the reply
+   * @return A terminable which unregisters the handler when closed
+   */
+  @NotNull
+  public <Q, R> Terminable registerSync(
+      @NotNull final String method,
+      @NotNull final Class<Q> requestType,
+      @NotNull final Function<Q, R> handler) {
+    return this.redis.handleSync(channel(method), Request.class,
+        (request, message) -> this.serve(request, requestType, handler));
+  }
+
+  /**
+   * Sends a request to every server handling the method, and completes with the first reply.
+   *
+   * <p>The Promise completes exceptionally with a {@link TimeoutException} if no server replies
+   * in time, or with a {@link RemoteException} if the first reply is a failure.</p>
+   *
+   * @param method       The name of the method
+   * @param request      The request
+   * @param responseType The type of the reply
+   * @param timeout      The time to wait for a reply
+   * @param unit         The unit of the timeout
+   * @param <R>          The type of the reply
+   * @return A Promise of the reply
+   */
+  @NotNull
+  public <R> Promise<R> request(
+      @NotNull final String method,
+      @NotNull final Object request,
+      @NotNull final Class<R> responseType,
+      final long timeout,
+      @NotNull final TimeUnit unit) {
+
+    final Promise<R> promise = Promise.empty();
+
+    this.send(method, request, timeout, unit, new PendingRequest() {
+      @Override
+      void onReply(@NotNull final String serverId, @NotNull final Response response) {
+        if (this.complete()) {
+          if (response.error == null) {
+            promise.supply(parse(response.payload, responseType));
+          } else {
+            promise.supplyException(new RemoteException(serverId, response.error));
+          }
+        }
+      }
+
+      @Override
+      void onTimeout() {
+        if (this.complete()) {
+          promise.supplyException(new TimeoutException("No reply to " + method));
+        }
+      }
+
+      @Override
+      void onFailure(@NotNull final Exception ex) {
+        if (this.complete()) {
+          promise.supplyException(ex);
+        }
+      }
+    });
+
+    return promise;
+  }
+
+  /**
+   * Sends a request to every server handling the method, and collects the successful replies by
+   * server ID. The Promise completes once the expected number of servers has replied, or with the
+   * replies received so far once the timeout has passed.
+   *
+   * @param method       The name of the method
+   * @param request      The request
+   * @param responseType The type of the replies
+   * @param expected     The number of replies to wait for, or 0 to wait for the whole timeout
+   * @param timeout      The time to wait for replies
+   * @param unit         The unit of the timeout
+   * @param <R>          The type of the replies
+   * @return A Promise of the replies by server ID
+   */
+  @NotNull
+  public <R> Promise<Map<String, R>> gather(
+      @NotNull final String method,
+      @NotNull final Object request,
+      @NotNull final Class<R> responseType,
+      final int expected,
+      final long timeout,
+      @NotNull final TimeUnit unit) {
+
+    final Promise<Map<String, R>> promise = Promise.empty();
+    final Map<String, R> replies = new ConcurrentHashMap<>();
+
+    this.send(method, request, timeout, unit, new PendingRequest() {
+      @Override
+      void onReply(@NotNull final String serverId, @NotNull final Response response) {
+        if (response.error != null) {
+          return;
+        }
+
+        replies.put(serverId, parse(response.payload, responseType));
+
+        if (expected > 0 && replies.size() >= expected && this.complete()) {
+          promise.supply(Collections.unmodifiableMap(new HashMap<>(replies)));
+        }
+      }
+
+      @Override
+      void onTimeout() {
+        if (this.complete()) {
+          promise.supply(Collections.unmodifiableMap(new HashMap<>(replies)));
+        }
+      }
+
+      @Override
+      void onFailure(@NotNull final Exception ex) {
+        if (this.complete()) {
+          promise.supplyException(ex);
+        }
+      }
+    });
+
+    return promise;
+  }
+
+  /**
+   * Gets the number of requests waiting for replies.
+   *
+   * @return The number of pending requests
+   */
+  public int getPendingCount() {
+    return this.pending.size();
+  }
+
+  @Override
+  public void close() {
+    this.responseHandler.closeSilently();
+    this.wheel.close();
+
+    for (final PendingRequest request : this.pending.values()) {
+      request.onFailure(new IllegalStateException("Redis RPC closed"));
+    }
+
+    this.pending.clear();
+  }
+
+  private void send(
+      @NotNull final String method,
+      @NotNull final Object request,
+      final long timeout,
+      @NotNull final TimeUnit unit,
+      @NotNull final PendingRequest pending) {
+
+    final String id = this.idPrefix + this.sequence.incrementAndGet();
+
+    pending.id = id;
+    this.pending.put(id, pending);
+    pending.timeout = this.wheel.schedule(pending::onTimeout, timeout, unit);
+
+    final Request message = new Request(id, this.redis.getControlChannel(),
+        GsonProvider.standard().toJson(request));
+
+    if (!this.redis.publishObject(channel(method), message)) {
+      pending.onFailure(new IllegalStateException("Failed to publish request to " + method));
+    }
+  }
+
+  private <Q, R> void serve(
+      @NotNull final Request request,
+      @NotNull final Class<Q> requestType,
+      @NotNull final Function<Q, R> handler) {
+
+    final R reply;
+
+    try {
+      reply = handler.apply(parse(request.payload, requestType));
+    } catch (final Exception ex) {
+      this.redis.publishObject(request.replyTo, new Response(request.id, null,
+          ex.getClass().getName() + ": " + ex.getMessage()));
+      return;
+    }
+
+    if (reply != null) {
+      this.redis.publishObject(request.replyTo,
+          new Response(request.id, GsonProvider.standard().toJson(reply), null));
+    }
+  }
+
+  @NotNull
+  private static String channel(@NotNull final String method) {
+    return CHANNEL_PREFIX + method;
+  }
+
+  @Nullable
+  private static <T> T parse(@Nullable final String json, @NotNull final Class<T> type) {
+    return json == null ? null : GsonProvider.standard().fromJson(json, type);
+  }
+
+  /**
+   * A request waiting for replies. Completion is claimed once, by the first reply, timeout or
+   * failure that finishes the request, which also removes it from the pending table.
+   */
+  private abstract class PendingRequest {
+
+    @NotNull private final AtomicBoolean completed = new AtomicBoolean();
+    private String id;
+    private TimingWheel.Timeout timeout;
+
+    boolean complete() {
+
+      if (!this.completed.compareAndSet(false, true)) {
+        return false;
+      }
+
+      RedisRpc.this.pending.remove(this.id);
+      this.timeout.cancel();
+      return true;
+    }
+
+    abstract void onReply(@NotNull String serverId, @NotNull Response response);
+
+    abstract void onTimeout();
+
+    abstract void onFailure(@NotNull Exception ex);
+  }
+
+  @RequiredArgsConstructor
+  private static final class Request {
+
+    @NotNull private final String id;
+    @NotNull private final String replyTo;
+    @NotNull private final String payload;
+  }
+
+  @RequiredArgsConstructor
+  private static final class Response {
+
+    @NotNull private final String id;
+    @Nullable private final String payload;
+    @Nullable private final String error;
+  }
+
+  /**
+   * Thrown when a server failed to handle a request.
+   */
+  public static class RemoteException extends RuntimeException {
+
+    /**
+     * The ID of the server that failed.
+     */
+    @NotNull @Getter private final String serverId;
+
+    public RemoteException(@NotNull final String serverId, @NotNull final String message) {
+      super(serverId + ": " + message);
+      this.serverId = serverId;
+    }
+  }
+}
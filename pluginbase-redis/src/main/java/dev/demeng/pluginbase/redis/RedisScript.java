@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * A Lua script run with {@code EVALSHA}, so that only its hash is sent on each call. The script is
+ * loaded on first use, and again if the server has lost it, such as after a restart.
+ */
+final class RedisScript {
+
+  @NotNull private final String source;
+  @Nullable private volatile String sha;
+
+  RedisScript(@NotNull final String source) {
+    this.source = source;
+  }
+
+  @Nullable
+  Object eval(
+      @NotNull final Jedis jedis,
+      @NotNull final List<String> keys,
+      @NotNull final List<String> args) {
+
+    String current = this.sha;
+
+    if (current != null) {
+      try {
+        return jedis.evalsha(current, keys, args);
+      } catch (final JedisNoScriptException ignored) {
+        // Flushed from the script cache, so it is loaded again below.
+      }
+    }
+
+    current = jedis.scriptLoad(this.source);
+    this.sha = current;
+    return jedis.evalsha(current, keys, args);
+  }
+}
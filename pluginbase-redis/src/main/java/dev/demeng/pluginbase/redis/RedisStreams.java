@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.resps.StreamPendingSummary;
+
+/**
+ * Durable messaging over Redis Streams, as an alternative to pub/sub for messages that must not be
+ * lost while a server is offline.
+ *
+ * <p>Messages are appended to a stream and read through a consumer group, which remembers what
+ * each group has received and which entries are yet to be acknowledged. Received messages are
+ * delivered to the same {@link MessageHandler}s as pub/sub messages, using the stream name as the
+ * channel, so a plugin can switch a channel between the two transports without changing its
+ * handlers.</p>
+ *
+ * <pre>{@code
+ * redis.handle("economy", BalanceUpdate.class, (update, message) -> ...);
+ * redis.streams().consume("economy");
+ * redis.streams().publishObject("economy", new BalanceUpdate(...));
+ * }</pre>
+ */
+public class RedisStreams implements Terminable {
+
+  /**
+   * The default approximate number of entries kept in each stream.
+   */
+  public static final long DEFAULT_MAX_LENGTH = 100000;
+
+  static final String FIELD_SERVER = "server";
+  static final String FIELD_TIMESTAMP = "ts";
+  static final String FIELD_TYPE = "type";
+  static final String FIELD_PAYLOAD = "payload";
+
+  @NotNull private final Redis redis;
+  @NotNull private final List<StreamConsumer> consumers = new CopyOnWriteArrayList<>();
+
+  private volatile long maxLength = DEFAULT_MAX_LENGTH;
+
+  RedisStreams(@NotNull final Redis redis) {
+    this.redis = redis;
+  }
+
+  /**
+   * Sets the approximate number of entries kept in each stream written to. Older entries are
+   * trimmed as new ones are added, whether or not every group has read them.
+   *
+   * @param maxLength The maximum length, must be positive
+   * @return this
+   */
+  @NotNull
+  public RedisStreams withMaxLength(final long maxLength) {
+
+    if (maxLength <= 0) {
+      throw new IllegalArgumentException("Maximum length must be positive");
+    }
+
+    this.maxLength = maxLength;
+    return this;
+  }
+
+  /**
+   * Appends an object to the stream.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param stream The stream
+   * @param obj    The object
+   * @return A Promise of the ID of the new entry
+   */
+  @NotNull
+  public Promise<String> publishObject(@NotNull final String stream, @NotNull final Object obj) {
+    return this.publish(stream, MessageTransferObject.of(this.redis.getServerId(), obj,
+        System.currentTimeMillis()));
+  }
+
+  /**
+   * Appends a string to the stream.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param stream The stream
+   * @param str    The string
+   * @return A Promise of the ID of the new entry
+   */
+  @NotNull
+  public Promise<String> publishString(@NotNull final String stream, @NotNull final String str) {
+    return this.publish(stream, MessageTransferObject.of(this.redis.getServerId(), str,
+        System.currentTimeMillis()));
+  }
+
+  /**
+   * Starts consuming the stream in a consumer group named after this server, so that this server
+   * receives every message, including those added while it was offline.
+   *
+   * @param stream The stream
+   * @return The consumer
+   */
+  @NotNull
+  public StreamConsumer consume(@NotNull final String stream) {
+    return this.consume(stream, this.redis.getServerId());
+  }
+
+  /**
+   * Starts consuming the stream in the provided consumer group. Servers sharing a group divide the
+   * messages between them, each message being received by only one of them.
+   *
+   * @param stream The stream
+   * @param group  The consumer group
+   * @return The consumer
+   */
+  @NotNull
+  public StreamConsumer consume(@NotNull final String stream, @NotNull final String group) {
+    final StreamConsumer consumer = new StreamConsumer(this.redis, stream, group);
+    this.consumers.add(consumer);
+    consumer.start();
+    return consumer;
+  }
+
+  /**
+   * Gets the number of entries delivered to the group but not yet acknowledged.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @param stream The stream
+   * @param group  The consumer group
+   * @return The number of pending entries
+   */
+  public long getPendingCount(@NotNull final String stream, @NotNull final String group) {
+    final StreamPendingSummary summary =
+        this.redis.execute(stream, jedis -> jedis.xpending(stream, group));
+    return summary.getTotal();
+  }
+
+  @Override
+  public void close() {
+
+    for (final StreamConsumer consumer : this.consumers) {
+      consumer.close();
+    }
+
+    this.consumers.clear();
+  }
+
+  @NotNull
+  private Promise<String> publish(
+      @NotNull final String stream,
+      @NotNull final MessageTransferObject message) {
+
+    final Map<String, String> fields = new HashMap<>();
+    fields.put(FIELD_SERVER, message.getServerId());
+    fields.put(FIELD_TIMESTAMP, Long.toString(message.getTimestamp()));
+    fields.put(FIELD_PAYLOAD, message.getMessage());
+
+    if (message.getType() != null) {
+      fields.put(FIELD_TYPE, message.getType());
+    }
+
+    final long length = this.maxLength;
+
+    return Promise.supplyingExceptionallyAsync(() -> {
+      final StreamEntryID id = this.redis.execute(stream, jedis -> jedis.xadd(stream,
+          XAddParams.xAddParams().maxLen(length).approximateTrimming(), fields));
+      return id.toString();
+    });
+  }
+
+  /**
+   * Converts a stream entry's fields back to a message.
+   *
+   * @param fields The fields of the entry
+   * @return The message, or null if the entry was not written by {@link RedisStreams}
+   */
+  @Nullable
+  static MessageTransferObject toMessage(@NotNull final Map<String, String> fields) {
+
+    final String server = fields.get(FIELD_SERVER);
+    final String timestamp = fields.get(FIELD_TIMESTAMP);
+    final String payload = fields.get(FIELD_PAYLOAD);
+
+    if (server == null || timestamp == null || payload == null) {
+      return null;
+    }
+
+    final MessageTransferObject message;
+
+    try {
+      message = MessageTransferObject.of(server, payload, Long.parseLong(timestamp));
+    } catch (final NumberFormatException ex) {
+      return null;
+    }
+
+    message.setType(fields.get(FIELD_TYPE));
+    return message;
+  }
+}
@@ -0,0 +1,538 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.terminable.Terminable;
+import dev.demeng.pluginbase.text.Text;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XPendingParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+import redis.clients.jedis.resps.StreamPendingEntry;
+
+/**
+ * Reads a stream through a consumer group on a dedicated thread, delivering each entry to the
+ * handlers registered for the stream and acknowledging entries in batches once handled.
+ *
+ * <p>Delivery is at-least-once. An entry is acknowledged only after every handler it matched,
+ * including synchronous handlers on the main thread, has returned without throwing. Entries that
+ * failed, timed out or had no handler registered are left pending, and are delivered again once
+ * they have been idle for longer than the claim idle time, or when this consumer restarts. Entries
+ * left pending by other consumers of the group are claimed and delivered here in the same way.
+ * Once an entry has been delivered the maximum number of times without being handled, it is
+ * copied to the dead-letter stream, if one is set, and acknowledged.</p>
+ *
+ * <p>A pooled connection is borrowed for each read and returned before the entries read are
+ * handled.</p>
+ */
+public class StreamConsumer implements Terminable {
+
+  /**
+   * The default maximum number of entries read at once.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /**
+   * The default time an entry must be pending on another consumer before it is claimed, in
+   * milliseconds.
+   */
+  public static final long DEFAULT_CLAIM_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /**
+   * The default number of times an entry is delivered before it is given up on.
+   */
+  public static final int DEFAULT_MAX_DELIVERIES = 10;
+
+  private static final long MAX_BLOCK_MILLIS = TimeUnit.SECONDS.toMillis(1);
+  private static final long MIN_RETRY_BACKOFF = 250;
+  private static final long MAX_RETRY_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+  private static final long HANDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  @NotNull private final Redis redis;
+
+  /**
+   * The stream being consumed.
+   */
+  @NotNull @Getter private final String stream;
+
+  /**
+   * The consumer group this consumer belongs to.
+   */
+  @NotNull @Getter private final String group;
+
+  @NotNull private final Thread worker;
+
+  // The socket timeout also applies to blocking reads, so they must return well before it.
+  private final long blockMillis;
+
+  @Getter private volatile int batchSize = DEFAULT_BATCH_SIZE;
+  @Getter private volatile long claimIdleMillis = DEFAULT_CLAIM_IDLE_MILLIS;
+  @Getter private volatile int maxDeliveries = DEFAULT_MAX_DELIVERIES;
+  @Nullable @Getter private volatile String deadLetterStream;
+
+  @NotNull private final AtomicLong delivered = new AtomicLong();
+  @NotNull private final AtomicLong acknowledged = new AtomicLong();
+  @NotNull private final AtomicLong claimed = new AtomicLong();
+  @NotNull private final AtomicLong malformed = new AtomicLong();
+  @NotNull private final AtomicLong unhandled = new AtomicLong();
+  @NotNull private final AtomicLong failed = new AtomicLong();
+  @NotNull private final AtomicLong deadLettered = new AtomicLong();
+
+  @NotNull private StreamEntryID claimCursor = new StreamEntryID();
+  private long nextClaim;
+  private boolean claimSupported = true;
+  private volatile boolean closed;
+
+  StreamConsumer(
+      @NotNull final Redis redis,
+      @NotNull final String stream,
+      @NotNull final String group) {
+    this.redis = redis;
+    this.stream = stream;
+    this.group = group;
+    this.blockMillis = Math.max(1, Math.min(MAX_BLOCK_MILLIS, redis.getTimeoutMillis() / 2));
+    this.worker = new Thread(this::run, redis.getServerId() + "-redis-stream-" + stream);
+    this.worker.setDaemon(true);
+  }
+
+  /**
+   * Sets the maximum number of entries read at once.
+   *
+   * @param batchSize The batch size, must be positive
+   * @return this
+   */
+  @NotNull
+  public StreamConsumer withBatchSize(final int batchSize) {
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * Sets the time an entry must be pending on another consumer of the group before this consumer
+   * claims it.
+   *
+   * @param idle The idle time
+   * @param unit The unit of the idle time
+   * @return this
+   */
+  @NotNull
+  public StreamConsumer withClaimIdle(final long idle, @NotNull final TimeUnit unit) {
+    this.claimIdleMillis = unit.toMillis(idle);
+    return this;
+  }
+
+  /**
+   * Sets the number of times an entry may be delivered without being handled before it is given
+   * up on. Includes deliveries to other consumers of the group.
+   *
+   * @param maxDeliveries The maximum number of deliveries, must be positive
+   * @return this
+   */
+  @NotNull
+  public StreamConsumer withMaxDeliveries(final int maxDeliveries) {
+
+    if (maxDeliveries <= 0) {
+      throw new IllegalArgumentException("Max deliveries must be positive");
+    }
+
+    this.maxDeliveries = maxDeliveries;
+    return this;
+  }
+
+  /**
+   * Sets the stream entries are copied to once they have been delivered the maximum number of
+   * times, before being acknowledged. If null, they are acknowledged and dropped.
+   *
+   * @param deadLetterStream The dead-letter stream, or null to drop such entries
+   * @return this
+   */
+  @NotNull
+  public StreamConsumer withDeadLetterStream(@Nullable final String deadLetterStream) {
+    this.deadLetterStream = deadLetterStream;
+    return this;
+  }
+
+  /**
+   * Gets the number of entries delivered to handlers.
+   *
+   * @return The number of delivered entries
+   */
+  public long getDelivered() {
+    return this.delivered.get();
+  }
+
+  /**
+   * Gets the number of entries acknowledged.
+   *
+   * @return The number of acknowledged entries
+   */
+  public long getAcknowledged() {
+    return this.acknowledged.get();
+  }
+
+  /**
+   * Gets the number of entries claimed from other consumers.
+   *
+   * @return The number of claimed entries
+   */
+  public long getClaimed() {
+    return this.claimed.get();
+  }
+
+  /**
+   * Gets the number of entries that were not written by {@link RedisStreams} and were skipped.
+   *
+   * @return The number of malformed entries
+   */
+  public long getMalformed() {
+    return this.malformed.get();
+  }
+
+  /**
+   * Gets the number of times an entry was left pending because no handler was registered for it.
+   *
+   * @return The number of unhandled deliveries
+   */
+  public long getUnhandled() {
+    return this.unhandled.get();
+  }
+
+  /**
+   * Gets the number of times an entry was left pending because a handler threw or did not finish
+   * in time.
+   *
+   * @return The number of failed deliveries
+   */
+  public long getFailed() {
+    return this.failed.get();
+  }
+
+  /**
+   * Gets the number of entries given up on after being delivered the maximum number of times.
+   *
+   * @return The number of dead-lettered entries
+   */
+  public long getDeadLettered() {
+    return this.deadLettered.get();
+  }
+
+  void start() {
+    this.worker.start();
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+  }
+
+  private void run() {
+
+    long backoff = MIN_RETRY_BACKOFF;
+    boolean recovered = false;
+
+    while (!this.closed && !this.redis.isClosing()) {
+      try {
+
+        if (!recovered) {
+          this.redis.execute(this.stream, this::createGroup);
+          this.recover();
+          recovered = true;
+        }
+
+        while (!this.closed) {
+          this.claim();
+          this.read();
+          backoff = MIN_RETRY_BACKOFF;
+        }
+
+      } catch (final Exception ex) {
+        if (this.closed) {
+          return;
+        }
+
+        Text.log(Level.WARNING, "Failed to read Redis stream '" + this.stream + "', retrying: "
+            + ex.getMessage());
+        this.redis.onCommandFailure(ex);
+
+        try {
+          Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+        } catch (final InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+
+        backoff = Math.min(MAX_RETRY_BACKOFF, backoff * 2);
+      }
+    }
+  }
+
+  @Nullable
+  private Void createGroup(@NotNull final Jedis jedis) {
+    try {
+      // Groups start at the end of the stream, as earlier entries predate this server's interest.
+      jedis.xgroupCreate(this.stream, this.group, StreamEntryID.LAST_ENTRY, true);
+    } catch (final JedisDataException ex) {
+      if (ex.getMessage() == null || !ex.getMessage().startsWith("BUSYGROUP")) {
+        throw ex;
+      }
+    }
+    return null;
+  }
+
+  private void recover() {
+
+    // Reading from 0 returns this consumer's own pending entries rather than new ones.
+    StreamEntryID cursor = new StreamEntryID();
+
+    while (!this.closed) {
+      final StreamEntryID from = cursor;
+      final List<StreamEntry> entries = this.redis.execute(this.stream, jedis -> this.readGroup(
+          jedis, XReadGroupParams.xReadGroupParams().count(this.batchSize), from));
+
+      if (entries.isEmpty()) {
+        return;
+      }
+
+      this.deliver(entries);
+      cursor = entries.get(entries.size() - 1).getID();
+    }
+  }
+
+  private void claim() {
+
+    final long now = System.currentTimeMillis();
+
+    if (!this.claimSupported || now < this.nextClaim) {
+      return;
+    }
+
+    this.nextClaim = now + Math.max(this.blockMillis, this.claimIdleMillis / 2);
+
+    final Map.Entry<StreamEntryID, List<StreamEntry>> result;
+
+    try {
+      result = this.redis.execute(this.stream, jedis -> jedis.xautoclaim(this.stream, this.group,
+          this.redis.getServerId(), this.claimIdleMillis, this.claimCursor,
+          XAutoClaimParams.xAutoClaimParams().count(this.batchSize)));
+    } catch (final JedisDataException ex) {
+      // XAUTOCLAIM requires Redis 6.2.
+      this.claimSupported = false;
+      Text.log(Level.WARNING, "Redis does not support claiming stalled stream entries: "
+          + ex.getMessage());
+      return;
+    }
+
+    // The cursor wraps back to 0 once the whole pending list has been scanned.
+    this.claimCursor = result.getKey();
+
+    final List<StreamEntry> entries = result.getValue();
+
+    if (entries != null && !entries.isEmpty()) {
+      this.claimed.addAndGet(entries.size());
+      this.deliver(entries);
+    }
+  }
+
+  private void read() {
+
+    final List<StreamEntry> entries = this.redis.execute(this.stream, jedis -> this.readGroup(
+        jedis, XReadGroupParams.xReadGroupParams().count(this.batchSize)
+            .block((int) this.blockMillis), StreamEntryID.UNRECEIVED_ENTRY));
+
+    if (!entries.isEmpty()) {
+      this.deliver(entries);
+    }
+  }
+
+  @NotNull
+  private List<StreamEntry> readGroup(
+      @NotNull final Jedis jedis,
+      @NotNull final XReadGroupParams params,
+      @NotNull final StreamEntryID from) {
+
+    final List<Map.Entry<String, List<StreamEntry>>> result = jedis.xreadGroup(this.group,
+        this.redis.getServerId(), params, Collections.singletonMap(this.stream, from));
+
+    if (result == null || result.isEmpty() || result.get(0).getValue() == null) {
+      return Collections.emptyList();
+    }
+
+    return result.get(0).getValue();
+  }
+
+  private void deliver(@NotNull final List<StreamEntry> entries) {
+
+    final List<StreamEntryID> ids = new ArrayList<>(entries.size());
+    final List<StreamEntry> dispatched = new ArrayList<>(entries.size());
+    final List<StreamEntry> unsettled = new ArrayList<>();
+    final List<CompletableFuture<Integer>> results = new ArrayList<>(entries.size());
+
+    for (final StreamEntry entry : entries) {
+      // Entries deleted by trimming while pending are returned without fields.
+      @Nullable final Map<String, String> fields = entry.getFields();
+      @Nullable final MessageTransferObject message =
+          fields == null ? null : RedisStreams.toMessage(fields);
+
+      if (message == null) {
+        // Acknowledged regardless, as it would never be handled.
+        this.malformed.incrementAndGet();
+        ids.add(entry.getID());
+        continue;
+      }
+
+      dispatched.add(entry);
+      results.add(this.redis.getDispatcher().deliver(this.stream, message));
+    }
+
+    // Entries are dispatched together so synchronous handlers run within the same ticks.
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HANDLE_TIMEOUT_MILLIS);
+
+    for (int i = 0; i < results.size(); i++) {
+      final int handlers;
+
+      try {
+        handlers = results.get(i)
+            .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (final ExecutionException ex) {
+        this.failed.incrementAndGet();
+        unsettled.add(dispatched.get(i));
+        Common.error(ex.getCause(), "Failed to handle Redis stream entry.", false);
+        continue;
+      } catch (final TimeoutException ex) {
+        this.failed.incrementAndGet();
+        unsettled.add(dispatched.get(i));
+        Text.log(Level.WARNING, "Timed out handling Redis stream entry "
+            + dispatched.get(i).getID() + " on '" + this.stream + "'.");
+        continue;
+      }
+
+      if (handlers == 0) {
+        // Left pending until a handler is registered for it.
+        this.unhandled.incrementAndGet();
+        unsettled.add(dispatched.get(i));
+        continue;
+      }
+
+      this.delivered.incrementAndGet();
+      ids.add(dispatched.get(i).getID());
+    }
+
+    for (final StreamEntry entry : this.exhausted(unsettled)) {
+      this.deadLetter(entry);
+      ids.add(entry.getID());
+    }
+
+    if (!ids.isEmpty()) {
+      this.acknowledged.addAndGet(this.redis.execute(this.stream,
+          jedis -> jedis.xack(this.stream, this.group, ids.toArray(new StreamEntryID[0]))));
+    }
+  }
+
+  /**
+   * Gets the entries which have been delivered the maximum number of times, using the delivery
+   * counts the group keeps for pending entries.
+   *
+   * @param entries The entries left pending
+   * @return The entries to give up on
+   */
+  @NotNull
+  private List<StreamEntry> exhausted(@NotNull final List<StreamEntry> entries) {
+
+    if (entries.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final int limit = this.maxDeliveries;
+
+    return this.redis.execute(this.stream, jedis -> {
+      final Pipeline pipeline = jedis.pipelined();
+      final List<Response<List<StreamPendingEntry>>> responses = new ArrayList<>(entries.size());
+
+      for (final StreamEntry entry : entries) {
+        responses.add(pipeline.xpending(this.stream, this.group,
+            XPendingParams.xPendingParams(entry.getID(), entry.getID(), 1)));
+      }
+
+      pipeline.sync();
+
+      final List<StreamEntry> exhausted = new ArrayList<>();
+
+      for (int i = 0; i < entries.size(); i++) {
+        final List<StreamPendingEntry> pending = responses.get(i).get();
+
+        if (!pending.isEmpty() && pending.get(0).getDeliveredTimes() >= limit) {
+          exhausted.add(entries.get(i));
+        }
+      }
+
+      return exhausted;
+    });
+  }
+
+  private void deadLetter(@NotNull final StreamEntry entry) {
+
+    this.deadLettered.incrementAndGet();
+    final String target = this.deadLetterStream;
+
+    if (target == null) {
+      Text.log(Level.WARNING, "Dropped Redis stream entry " + entry.getID() + " on '"
+          + this.stream + "' after " + this.maxDeliveries + " failed deliveries.");
+      return;
+    }
+
+    // Copied as is, so the dead-letter stream can be consumed like any other.
+    this.redis.execute(target, jedis -> jedis.xadd(target, XAddParams.xAddParams()
+        .maxLen(RedisStreams.DEFAULT_MAX_LENGTH).approximateTrimming(), entry.getFields()));
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.redis;
+
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A hashed timing wheel, which runs scheduled tasks on a single thread with a resolution of one
+ * tick. Scheduling and cancelling are constant-time, which suits large numbers of timeouts that
+ * are usually cancelled before they expire.
+ */
+final class TimingWheel implements Terminable {
+
+  @NotNull private final List<Timeout>[] slots;
+  private final int mask;
+  private final long tickNanos;
+
+  @NotNull private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+  @NotNull private final Thread worker;
+
+  private volatile boolean closed;
+
+  @SuppressWarnings("unchecked")
+  TimingWheel(
+      @NotNull final String name,
+      final long tick,
+      @NotNull final TimeUnit unit,
+      final int slotCount) {
+
+    if (Integer.bitCount(slotCount) != 1) {
+      throw new IllegalArgumentException("Slot count must be a power of two");
+    }
+
+    this.slots = new List[slotCount];
+
+    for (int i = 0; i < slotCount; i++) {
+      this.slots[i] = new ArrayList<>();
+    }
+
+    this.mask = slotCount - 1;
+    this.tickNanos = unit.toNanos(tick);
+
+    this.worker = new Thread(this::run, name);
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  /**
+   * Schedules a task to run once the delay has passed, rounded up to the next tick.
+   *
+   * @param task  The task
+   * @param delay The delay
+   * @param unit  The unit of the delay
+   * @return The timeout, which can be cancelled
+   */
+  @NotNull
+  Timeout schedule(@NotNull final Runnable task, final long delay, @NotNull final TimeUnit unit) {
+    final Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+    this.scheduled.offer(timeout);
+    return timeout;
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+    this.worker.interrupt();
+  }
+
+  private void run() {
+
+    final long start = System.nanoTime();
+    long tick = 0;
+
+    while (!this.closed) {
+      final long sleepNanos = start + (tick + 1) * this.tickNanos - System.nanoTime();
+
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (final InterruptedException ex) {
+          return;
+        }
+      }
+
+      Timeout timeout;
+      while ((timeout = this.scheduled.poll()) != null) {
+        if (!timeout.cancelled) {
+          // Slot n is expired once tick n has elapsed, at start + (n + 1) ticks, so the deadline
+          // is rounded up to a tick boundary. Timeouts already due are placed in the current slot.
+          final long boundary = -Math.floorDiv(start - timeout.deadline, this.tickNanos);
+          final long due = Math.max(tick, boundary - 1);
+          timeout.rounds = (due - tick) / this.slots.length;
+          this.slots[(int) (due & this.mask)].add(timeout);
+        }
+      }
+
+      this.expire(this.slots[(int) (tick & this.mask)]);
+      tick++;
+    }
+  }
+
+  private void expire(@NotNull final List<Timeout> slot) {
+
+    int kept = 0;
+
+    for (int i = 0; i < slot.size(); i++) {
+      final Timeout timeout = slot.get(i);
+
+      if (timeout.cancelled) {
+        continue;
+      }
+
+      if (timeout.rounds > 0) {
+        timeout.rounds--;
+        slot.set(kept++, timeout);
+        continue;
+      }
+
+      try {
+        timeout.task.run();
+      } catch (final Exception ex) {
+        Common.error(ex, "Failed to run scheduled timeout.", false);
+      }
+    }
+
+    slot.subList(kept, slot.size()).clear();
+  }
+
+  /**
+   * A task scheduled on a {@link TimingWheel}.
+   */
+  static final class Timeout {
+
+    @NotNull private final Runnable task;
+    private final long deadline;
+    private long rounds;
+    private volatile boolean cancelled;
+
+    private Timeout(@NotNull final Runnable task, final long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Prevents the task from running, if it has not run yet.
+     */
+    void cancel() {
+      this.cancelled = true;
+    }
+  }
+}
@@ -25,24 +25,43 @@
 package dev.demeng.pluginbase.sql;
 
 import be.bendem.sqlstreams.util.SqlConsumer;
+import dev.demeng.pluginbase.promise.Promise;
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.LinkedList;
+import java.util.ListIterator;
 import lombok.Getter;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents a statement meant to be executed more than a single time. It will be executed all at
  * once, using a single database connection.
+ *
+ * <p>Rows can either be added as plain parameter values using {@link #values(Object...)}, which
+ * are stored in a single flat buffer, or as statement handlers using {@link #batch(SqlConsumer)}.
+ * The two styles cannot be mixed within the same builder.</p>
+ *
+ * <p>Rows are sent to the database in chunks of {@link #getChunkSize()} rows. By default, every
+ * chunk is executed within a single transaction which is rolled back if any chunk fails.</p>
  */
 public class BatchBuilder {
 
   /**
-   * The {@link Sql} that owns this batch builder.
+   * The default maximum number of rows sent to the database in a single batch.
    */
-  @NotNull private final Sql owner;
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private static final int INITIAL_BUFFER_SIZE = 16;
 
+  /**
+   * The {@link ISql} that owns this batch builder.
+   */
+  @NotNull private final ISql owner;
 
   /**
    * The statement to be executed.
@@ -55,14 +74,37 @@ public class BatchBuilder {
   @NotNull @Getter private final
   LinkedList<SqlConsumer<PreparedStatement>> handlers = new LinkedList<>();
 
+  /**
+   * The maximum number of rows sent to the database in a single batch.
+   */
+  @Getter private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  /**
+   * If all chunks should be committed or rolled back together. If false, each chunk is committed
+   * on its own and a failed chunk does not prevent the remaining chunks from executing.
+   */
+  @Getter private boolean atomic = true;
+
+  @NotNull private Object[] values = new Object[INITIAL_BUFFER_SIZE];
+  private int valueCount;
+  private int parameterCount;
+
+  // Rows are bound in order, so the handlers are walked rather than indexed.
+  @Nullable private ListIterator<SqlConsumer<PreparedStatement>> cursor;
 
   public BatchBuilder(
-      @NotNull final Sql owner,
-      @NotNull @Language("SQL")  final String statement) {
+      @NotNull final ISql owner,
+      @NotNull @Language("SQL") final String statement) {
     this.owner = owner;
     this.statement = statement;
   }
 
+  public BatchBuilder(
+      @NotNull final Sql owner,
+      @NotNull @Language("SQL") final String statement) {
+    this((ISql) owner, statement);
+  }
+
   /**
    * Adds a handler which will be used on the statement.
    *
@@ -71,10 +113,93 @@ public class BatchBuilder {
    */
   @NotNull
   public BatchBuilder batch(@NotNull final SqlConsumer<PreparedStatement> handler) {
+
+    if (this.valueCount > 0) {
+      throw new IllegalStateException("Cannot add handlers to a batch with parameter values");
+    }
+
     handlers.add(handler);
+    this.cursor = null;
+    return this;
+  }
+
+  /**
+   * Adds a row of parameter values which will be bound to the statement in order. Every row must
+   * contain the same number of values.
+   *
+   * @param values The parameter values of the row
+   * @return this
+   */
+  @NotNull
+  public BatchBuilder values(@Nullable final Object... values) {
+
+    if (!this.handlers.isEmpty()) {
+      throw new IllegalStateException("Cannot add parameter values to a batch with handlers");
+    }
+
+    if (values == null || values.length == 0) {
+      throw new IllegalArgumentException("A row must contain at least one value");
+    }
+
+    if (this.parameterCount == 0) {
+      this.parameterCount = values.length;
+    } else if (values.length != this.parameterCount) {
+      throw new IllegalArgumentException(
+          "Row has " + values.length + " values, expected " + this.parameterCount);
+    }
+
+    final int required = this.valueCount + values.length;
+
+    if (required > this.values.length) {
+      this.values = Arrays.copyOf(this.values, Math.max(required, this.values.length * 2));
+    }
+
+    System.arraycopy(values, 0, this.values, this.valueCount, values.length);
+    this.valueCount = required;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of rows sent to the database in a single batch. Smaller chunks keep
+   * each packet within the server's size limit.
+   *
+   * @param chunkSize The chunk size, must be positive
+   * @return this
+   */
+  @NotNull
+  public BatchBuilder withChunkSize(final int chunkSize) {
+
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive");
+    }
+
+    this.chunkSize = chunkSize;
     return this;
   }
 
+  /**
+   * Sets whether all chunks should be committed or rolled back together.
+   *
+   * @param atomic True to execute every chunk in one transaction, false to commit each chunk on its
+   *               own
+   * @return this
+   */
+  @NotNull
+  public BatchBuilder withAtomic(final boolean atomic) {
+    this.atomic = atomic;
+    return this;
+  }
+
+  /**
+   * Gets the number of rows currently in this batch.
+   *
+   * @return The number of rows
+   */
+  public int getRowCount() {
+    return this.parameterCount == 0
+        ? this.handlers.size() : this.valueCount / this.parameterCount;
+  }
+
   /**
    * Executes the statement for this batch, with the handlers used to prepare it.
    *
@@ -85,13 +210,97 @@ public class BatchBuilder {
   }
 
   /**
-   * Resets this BatchBuilder's handlers, making it possible to be reused.
+   * Executes the statement for this batch and reports the outcome of each chunk.
+   *
+   * @return The result of the batch
+   */
+  @NotNull
+  public BatchResult executeWithResult() {
+    return owner.executeBatchWithResult(this);
+  }
+
+  /**
+   * Executes the statement for this batch asynchronously and reports the outcome of each chunk.
+   *
+   * @return A Promise of the result of the batch
+   */
+  @NotNull
+  public Promise<BatchResult> executeWithResultAsync() {
+    return owner.executeBatchWithResultAsync(this);
+  }
+
+  /**
+   * Resets this BatchBuilder's handlers and values, making it possible to be reused.
    *
    * @return this
    */
   @NotNull
   public BatchBuilder reset() {
     handlers.clear();
+    this.cursor = null;
+    Arrays.fill(this.values, 0, this.valueCount, null);
+    this.valueCount = 0;
+    this.parameterCount = 0;
     return this;
   }
+
+  /**
+   * Binds the row at the given index to the statement.
+   *
+   * @param statement The statement to bind to
+   * @param row       The index of the row
+   * @throws SQLException If a value cannot be bound
+   */
+  void bind(@NotNull final PreparedStatement statement, final int row) throws SQLException {
+
+    if (this.parameterCount == 0) {
+      this.handler(row).accept(statement);
+      return;
+    }
+
+    final int offset = row * this.parameterCount;
+
+    for (int i = 0; i < this.parameterCount; i++) {
+      bindValue(statement, i + 1, this.values[offset + i]);
+    }
+  }
+
+  @NotNull
+  private SqlConsumer<PreparedStatement> handler(final int row) {
+
+    if (this.cursor == null || this.cursor.nextIndex() != row) {
+      this.cursor = this.handlers.listIterator(row);
+    }
+
+    try {
+      return this.cursor.next();
+    } catch (final ConcurrentModificationException ex) {
+      // The list was changed through getHandlers() since the cursor was created.
+      this.cursor = this.handlers.listIterator(row);
+      return this.cursor.next();
+    }
+  }
+
+  static void bindValue(
+      @NotNull final PreparedStatement statement,
+      final int index,
+      @Nullable final Object value) throws SQLException {
+
+    // Typed setters avoid the driver's type inspection in setObject for the common cases.
+    if (value instanceof String) {
+      statement.setString(index, (String) value);
+    } else if (value instanceof Integer) {
+      statement.setInt(index, (Integer) value);
+    } else if (value instanceof Long) {
+      statement.setLong(index, (Long) value);
+    } else if (value instanceof Double) {
+      statement.setDouble(index, (Double) value);
+    } else if (value instanceof Boolean) {
+      statement.setBoolean(index, (Boolean) value);
+    } else if (value instanceof BigDecimal) {
+      statement.setBigDecimal(index, (BigDecimal) value);
+    } else {
+      statement.setObject(index, value);
+    }
+  }
 }
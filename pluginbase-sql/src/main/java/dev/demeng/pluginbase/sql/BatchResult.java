@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The outcome of executing a {@link BatchBuilder}, reported per chunk.
+ */
+@Getter
+public final class BatchResult {
+
+  /**
+   * The result of each chunk, in execution order.
+   */
+  @NotNull private final List<Chunk> chunks;
+
+  BatchResult(@NotNull final List<Chunk> chunks) {
+    this.chunks = Collections.unmodifiableList(chunks);
+  }
+
+  /**
+   * Checks if every chunk in the batch was committed.
+   *
+   * @return True if the whole batch was committed
+   */
+  public boolean isSuccessful() {
+    for (final Chunk chunk : this.chunks) {
+      if (chunk.getStatus() != Status.COMMITTED) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the number of rows in chunks that were committed.
+   *
+   * @return The number of committed rows
+   */
+  public int getCommittedRows() {
+    int rows = 0;
+    for (final Chunk chunk : this.chunks) {
+      if (chunk.getStatus() == Status.COMMITTED) {
+        rows += chunk.getRowCount();
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Gets the chunks which failed to execute.
+   *
+   * @return The failed chunks
+   */
+  @NotNull
+  public List<Chunk> getFailedChunks() {
+    return this.chunks.stream()
+        .filter(chunk -> chunk.getStatus() == Status.FAILED)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * The result of a single chunk within a batch.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+  public static final class Chunk {
+
+    /**
+     * The index of the chunk within the batch.
+     */
+    private final int index;
+
+    /**
+     * The index of the first row of the chunk within the batch.
+     */
+    private final int firstRow;
+
+    /**
+     * The number of rows in the chunk.
+     */
+    private final int rowCount;
+
+    /**
+     * The final status of the chunk.
+     */
+    @NotNull private final Status status;
+
+    /**
+     * The exception that caused the chunk to fail, or null if it did not fail.
+     */
+    @Nullable private final SQLException error;
+  }
+
+  /**
+   * The final status of a chunk.
+   */
+  public enum Status {
+    /**
+     * The chunk was executed and committed.
+     */
+    COMMITTED,
+    /**
+     * The chunk failed to execute and was rolled back.
+     */
+    FAILED,
+    /**
+     * The chunk was executed but rolled back because another chunk in the same transaction failed.
+     */
+    ROLLED_BACK,
+    /**
+     * The chunk was not executed because an earlier chunk in the same transaction failed.
+     */
+    SKIPPED
+  }
+}
@@ -0,0 +1,514 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import dev.demeng.pluginbase.promise.Promise;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Inserts many rows into a single table using as few statements as possible. Rows are combined
+ * into multi-row {@code INSERT ... VALUES (...), (...)} statements, each kept within the server's
+ * maximum packet size, and all statements are executed within a single transaction.
+ *
+ * <p>Optionally, rows can be sent with {@code LOAD DATA LOCAL INFILE}, streamed from an in-memory
+ * buffer. This requires a MySQL or MariaDB server with {@code local_infile} enabled, and a driver
+ * with local infile enabled on the connection (for example, {@code allowLoadLocalInfile=true} in
+ * the JDBC URL). If either refuses it, the multi-row statements are used instead. It is never
+ * attempted on other databases, since a failed statement aborts the whole transaction on some of
+ * them (such as PostgreSQL), leaving nothing to fall back to.</p>
+ *
+ * <p>The table and column names are inserted into the statement as-is and must not come from
+ * untrusted input.</p>
+ */
+public class BulkInsertBuilder {
+
+  /**
+   * The packet size assumed when it is not set and cannot be read from the server. This is the
+   * default {@code max_allowed_packet} of MySQL 5.7.
+   */
+  public static final long DEFAULT_MAX_PACKET_SIZE = 4L * 1024 * 1024;
+
+  // The number of placeholders a MySQL prepared statement can hold, and the lowest limit of the
+  // SQLite versions still in use.
+  private static final int MAX_PLACEHOLDERS = 65535;
+  private static final int SQLITE_MAX_PLACEHOLDERS = 999;
+  // Room left in each packet for the protocol header and rounding in the estimates.
+  private static final long PACKET_MARGIN = 1024;
+  private static final int INITIAL_BUFFER_SIZE = 16;
+  private static final String INFILE_METHOD = "setLocalInfileInputStream";
+  // ER_NOT_ALLOWED_COMMAND, CR_LOAD_DATA_LOCAL_INFILE_REJECTED, ER_CLIENT_LOCAL_FILES_DISABLED and
+  // MariaDB's ER_LOAD_INFILE_CAPABILITY_DISABLED, all raised when local infile is disabled.
+  private static final int[] INFILE_DISABLED_ERRORS = {1148, 2068, 3948, 4166};
+
+  /**
+   * The {@link ISql} that owns this builder.
+   */
+  @NotNull private final ISql owner;
+
+  /**
+   * The table the rows are inserted into.
+   */
+  @NotNull @Getter private final String table;
+
+  @NotNull private final String[] columns;
+  @NotNull private String[] updateColumns = new String[0];
+
+  /**
+   * The maximum size of a single statement in bytes, or 0 to read it from the server.
+   */
+  @Getter private long maxPacketSize;
+
+  /**
+   * If the rows should be sent using {@code LOAD DATA LOCAL INFILE} when possible.
+   */
+  @Getter private boolean loadData;
+
+  @NotNull private Object[] values = new Object[INITIAL_BUFFER_SIZE];
+  private int valueCount;
+
+  public BulkInsertBuilder(
+      @NotNull final ISql owner,
+      @NotNull final String table,
+      @NotNull final String... columns) {
+
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("At least one column is required");
+    }
+
+    this.owner = owner;
+    this.table = table;
+    this.columns = columns.clone();
+  }
+
+  /**
+   * Adds a row of values, in the same order as the columns of this builder.
+   *
+   * @param values The values of the row
+   * @return this
+   */
+  @NotNull
+  public BulkInsertBuilder values(@Nullable final Object... values) {
+
+    if (values == null || values.length != this.columns.length) {
+      throw new IllegalArgumentException("Row has " + (values == null ? 0 : values.length)
+          + " values, expected " + this.columns.length);
+    }
+
+    final int required = this.valueCount + values.length;
+
+    if (required > this.values.length) {
+      this.values = Arrays.copyOf(this.values, Math.max(required, this.values.length * 2));
+    }
+
+    System.arraycopy(values, 0, this.values, this.valueCount, values.length);
+    this.valueCount = required;
+    return this;
+  }
+
+  /**
+   * Turns the insert into an upsert: rows which collide with an existing key update the given
+   * columns instead, using MySQL's {@code ON DUPLICATE KEY UPDATE}, which is also understood by H2
+   * but not by SQLite. Upserts are never sent with {@code LOAD DATA}.
+   *
+   * @param columns The columns to update on a duplicate key
+   * @return this
+   */
+  @NotNull
+  public BulkInsertBuilder withUpdateOnDuplicate(@NotNull final String... columns) {
+    this.updateColumns = columns.clone();
+    return this;
+  }
+
+  /**
+   * Sets the maximum size of a single statement in bytes. By default, the server's
+   * {@code max_allowed_packet} is used on MySQL and MariaDB, and
+   * {@link #DEFAULT_MAX_PACKET_SIZE} otherwise.
+   *
+   * @param maxPacketSize The maximum packet size, or 0 to detect it
+   * @return this
+   */
+  @NotNull
+  public BulkInsertBuilder withMaxPacketSize(final long maxPacketSize) {
+
+    if (maxPacketSize < 0) {
+      throw new IllegalArgumentException("Packet size cannot be negative");
+    }
+
+    this.maxPacketSize = maxPacketSize;
+    return this;
+  }
+
+  /**
+   * Sets if the rows should be sent using {@code LOAD DATA LOCAL INFILE} when the driver supports
+   * it. Rows containing binary values are always sent as regular statements.
+   *
+   * @param loadData If load data should be used
+   * @return this
+   */
+  @NotNull
+  public BulkInsertBuilder withLoadData(final boolean loadData) {
+    this.loadData = loadData;
+    return this;
+  }
+
+  /**
+   * Gets the number of rows added to this builder.
+   *
+   * @return The number of rows
+   */
+  public int getRowCount() {
+    return this.valueCount / this.columns.length;
+  }
+
+  /**
+   * Inserts the rows of this builder within a single transaction.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @return The number of affected rows as reported by the database, or empty if the insert failed
+   */
+  @NotNull
+  public Optional<Long> execute() {
+    return this.owner.transaction(this::write);
+  }
+
+  /**
+   * Inserts the rows of this builder within a single transaction.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @return A Promise of the number of affected rows as reported by the database
+   */
+  @NotNull
+  public Promise<Optional<Long>> executeAsync() {
+    return this.owner.transactionAsync(this::write);
+  }
+
+  /**
+   * Removes all rows from this builder, making it possible to be reused.
+   *
+   * @return this
+   */
+  @NotNull
+  public BulkInsertBuilder reset() {
+    Arrays.fill(this.values, 0, this.valueCount, null);
+    this.valueCount = 0;
+    return this;
+  }
+
+  private long write(@NotNull final SqlTransaction transaction) throws SQLException {
+
+    if (this.valueCount == 0) {
+      return 0;
+    }
+
+    if (this.loadData && this.updateColumns.length == 0 && isLocalInfileEnabled(transaction)) {
+      try {
+        return this.load(transaction);
+      } catch (final SQLFeatureNotSupportedException ignored) {
+        // Thrown before anything is executed, so the transaction can continue with inserts.
+      } catch (final SQLException ex) {
+        // A failed statement does not abort the transaction on MySQL or MariaDB.
+        if (!isLocalInfileDisabled(ex)) {
+          throw ex;
+        }
+      }
+    }
+
+    return this.insert(transaction, this.resolvePacketSize(transaction));
+  }
+
+  private long insert(
+      @NotNull final SqlTransaction transaction,
+      final long packetSize) throws SQLException {
+
+    final String prefix = "INSERT INTO " + this.table
+        + " (" + String.join(", ", this.columns) + ") VALUES ";
+    final String suffix = this.buildUpdateClause();
+    final String placeholders = buildPlaceholders(this.columns.length);
+
+    final int rows = this.getRowCount();
+    final int maxRows = Math.max(1, (isSqlite(transaction)
+        ? SQLITE_MAX_PLACEHOLDERS : MAX_PLACEHOLDERS) / this.columns.length);
+    long affected = 0;
+
+    for (int firstRow = 0; firstRow < rows; ) {
+      long size = prefix.length() + suffix.length();
+      int lastRow = firstRow;
+
+      while (lastRow < rows && lastRow - firstRow < maxRows) {
+        final long rowSize = this.estimateRowSize(lastRow);
+
+        // A single row larger than the packet is still sent, so the server can report it.
+        if (lastRow > firstRow && size + rowSize > packetSize) {
+          break;
+        }
+
+        size += rowSize;
+        lastRow++;
+      }
+
+      final StringBuilder statement = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE));
+      statement.append(prefix);
+
+      for (int row = firstRow; row < lastRow; row++) {
+        statement.append(row == firstRow ? "" : ", ").append(placeholders);
+      }
+
+      statement.append(suffix);
+
+      final int offset = firstRow * this.columns.length;
+      final int count = (lastRow - firstRow) * this.columns.length;
+
+      affected += Math.max(0, transaction.execute(statement.toString(), s -> {
+        for (int i = 0; i < count; i++) {
+          BatchBuilder.bindValue(s, i + 1, this.values[offset + i]);
+        }
+      }));
+
+      firstRow = lastRow;
+    }
+
+    return affected;
+  }
+
+  private long load(@NotNull final SqlTransaction transaction) throws SQLException {
+
+    final InputStream data = new ByteArrayInputStream(this.encodeRows());
+    final String statement = "LOAD DATA LOCAL INFILE 'pluginbase' INTO TABLE " + this.table
+        + " CHARACTER SET utf8mb4 (" + String.join(", ", this.columns) + ")";
+
+    return Math.max(0, transaction.execute(statement, s -> setInfileStream(s, data)));
+  }
+
+  private long resolvePacketSize(@NotNull final SqlTransaction transaction) throws SQLException {
+
+    if (this.maxPacketSize > 0) {
+      return this.maxPacketSize - PACKET_MARGIN;
+    }
+
+    // Only queried on servers known to support it, as a failed query aborts some transactions.
+    if (!isMysql(transaction)) {
+      return DEFAULT_MAX_PACKET_SIZE - PACKET_MARGIN;
+    }
+
+    return transaction.query("SELECT @@max_allowed_packet", s -> {
+        }, r -> r.next() ? r.getLong(1) : null)
+        .orElse(DEFAULT_MAX_PACKET_SIZE) - PACKET_MARGIN;
+  }
+
+  private static boolean isLocalInfileEnabled(@NotNull final SqlTransaction transaction)
+      throws SQLException {
+
+    if (!isMysql(transaction)) {
+      return false;
+    }
+
+    // Only reports the server side, the driver may still refuse the file request.
+    return transaction.query("SELECT @@local_infile", s -> {
+        }, r -> r.next() ? r.getBoolean(1) : null)
+        .orElse(false);
+  }
+
+  private static boolean isLocalInfileDisabled(@NotNull final SQLException ex) {
+
+    for (final int code : INFILE_DISABLED_ERRORS) {
+      if (ex.getErrorCode() == code) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isMysql(@NotNull final SqlTransaction transaction) throws SQLException {
+    final String product = transaction.getConnection().getMetaData()
+        .getDatabaseProductName().toLowerCase(Locale.ROOT);
+    return product.contains("mysql") || product.contains("mariadb");
+  }
+
+  private static boolean isSqlite(@NotNull final SqlTransaction transaction) throws SQLException {
+    return transaction.getConnection().getMetaData().getDatabaseProductName()
+        .toLowerCase(Locale.ROOT).contains("sqlite");
+  }
+
+  @NotNull
+  private String buildUpdateClause() {
+
+    if (this.updateColumns.length == 0) {
+      return "";
+    }
+
+    final StringBuilder clause = new StringBuilder(" ON DUPLICATE KEY UPDATE ");
+
+    for (int i = 0; i < this.updateColumns.length; i++) {
+      final String column = this.updateColumns[i];
+      clause.append(i == 0 ? "" : ", ").append(column).append(" = VALUES(").append(column)
+          .append(')');
+    }
+
+    return clause.toString();
+  }
+
+  private long estimateRowSize(final int row) {
+
+    // Parentheses and the separator from the previous row.
+    long size = 4;
+    final int offset = row * this.columns.length;
+
+    for (int i = 0; i < this.columns.length; i++) {
+      size += estimateValueSize(this.values[offset + i]) + 2;
+    }
+
+    return size;
+  }
+
+  private static long estimateValueSize(@Nullable final Object value) {
+
+    if (value == null) {
+      return 4;
+    }
+
+    // Worst case of UTF-8 encoding or escaping, plus quotes.
+    if (value instanceof String) {
+      return ((String) value).length() * 3L + 2;
+    }
+
+    // Hexadecimal literal.
+    if (value instanceof byte[]) {
+      return ((byte[]) value).length * 2L + 3;
+    }
+
+    return 32;
+  }
+
+  @NotNull
+  private static String buildPlaceholders(final int columns) {
+
+    final StringBuilder placeholders = new StringBuilder(columns * 3 + 1).append('(');
+
+    for (int i = 0; i < columns; i++) {
+      placeholders.append(i == 0 ? "?" : ", ?");
+    }
+
+    return placeholders.append(')').toString();
+  }
+
+  @NotNull
+  private byte[] encodeRows() throws SQLFeatureNotSupportedException {
+
+    // Uses the default LOAD DATA format: tab separated fields, newline separated rows, \N for null.
+    final StringBuilder data = new StringBuilder(this.valueCount * 8);
+
+    for (int i = 0; i < this.valueCount; i++) {
+      final Object value = this.values[i];
+
+      if (i % this.columns.length != 0) {
+        data.append('\t');
+      }
+
+      if (value == null) {
+        data.append("\\N");
+      } else if (value instanceof Boolean) {
+        data.append((Boolean) value ? '1' : '0');
+      } else if (value instanceof byte[]) {
+        throw new SQLFeatureNotSupportedException("Binary values cannot be loaded as text");
+      } else {
+        appendEscaped(data, value.toString());
+      }
+
+      if (i % this.columns.length == this.columns.length - 1) {
+        data.append('\n');
+      }
+    }
+
+    return data.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void appendEscaped(@NotNull final StringBuilder data, @NotNull final String value) {
+
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+
+      switch (c) {
+        case '\\':
+          data.append("\\\\");
+          break;
+        case '\t':
+          data.append("\\t");
+          break;
+        case '\n':
+          data.append("\\n");
+          break;
+        case '\r':
+          data.append("\\r");
+          break;
+        case '\0':
+          data.append("\\0");
+          break;
+        default:
+          data.append(c);
+      }
+    }
+  }
+
+  private static void setInfileStream(
+      @NotNull final PreparedStatement statement,
+      @NotNull final InputStream data) throws SQLException {
+
+    // The MySQL and MariaDB drivers both expose this method, but neither is a dependency here.
+    final Statement target = statement.isWrapperFor(Statement.class)
+        ? statement.unwrap(Statement.class) : statement;
+
+    final Method method;
+
+    try {
+      method = target.getClass().getMethod(INFILE_METHOD, InputStream.class);
+    } catch (final NoSuchMethodException ex) {
+      throw new SQLFeatureNotSupportedException("Driver does not support local infile streams");
+    }
+
+    try {
+      method.invoke(target, data);
+    } catch (final IllegalAccessException | InvocationTargetException ex) {
+      throw new SQLFeatureNotSupportedException("Failed to set local infile stream", ex);
+    }
+  }
+}
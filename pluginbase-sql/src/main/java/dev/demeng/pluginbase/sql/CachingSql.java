@@ -0,0 +1,453 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import be.bendem.sqlstreams.SqlStream;
+import be.bendem.sqlstreams.util.SqlConsumer;
+import be.bendem.sqlstreams.util.SqlFunction;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.zaxxer.hikari.HikariDataSource;
+import dev.demeng.pluginbase.promise.Promise;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import lombok.Data;
+import lombok.Getter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An {@link ISql} that caches the results of {@link #query(String, SqlConsumer, SqlFunction)} in
+ * memory, keyed by the query, the parameters bound by its preparer and the handler instance.
+ * Entries expire after a fixed time, and the least recently used entries are evicted once the
+ * maximum size is reached.
+ *
+ * <p>Handlers which capture variables, and method references such as {@code this::map}, are a new
+ * instance on every call, so their results are never reused. Use
+ * {@link #query(Object, String, SqlConsumer, SqlFunction)} with a key identifying what the handler
+ * returns to cache those.</p>
+ *
+ * <p>Statements executed through this instance invalidate every cached result that reads from a
+ * table they write to. Writes made through any other route, such as the delegate itself,
+ * {@link #getConnection()} or a {@link WriteBehindQueue}, are not seen and must be followed by a
+ * call to {@link #invalidate(String)} or {@link #invalidateAll()}.</p>
+ *
+ * <p>The preparer runs once, against the real statement, so a cache hit still borrows a connection
+ * and prepares the statement but does not execute it.</p>
+ *
+ * <p>Cached results are shared between callers, so handlers should return immutable values.
+ * Empty results and queries whose tables cannot be determined are never cached.</p>
+ */
+public class CachingSql implements ISql {
+
+  @NotNull @Getter private final ISql delegate;
+  @NotNull private final Cache<Key, Entry> cache;
+  @NotNull private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+  @NotNull private final AtomicLong globalGeneration = new AtomicLong();
+
+  /**
+   * Creates a new caching layer over the provided database.
+   *
+   * @param delegate    The database to read from and write to
+   * @param maximumSize The maximum number of cached results
+   * @param expiry      The time after which a cached result expires
+   * @param unit        The unit of the expiry
+   */
+  public CachingSql(
+      @NotNull final ISql delegate,
+      final long maximumSize,
+      final long expiry,
+      @NotNull final TimeUnit unit) {
+    this.delegate = delegate;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(expiry, unit)
+        .recordStats()
+        .build();
+  }
+
+  @NotNull
+  @Override
+  public HikariDataSource getHikari() {
+    return this.delegate.getHikari();
+  }
+
+  @NotNull
+  @Override
+  public Connection getConnection() throws SQLException {
+    return this.delegate.getConnection();
+  }
+
+  @NotNull
+  @Override
+  public SqlStream stream() {
+    return this.delegate.stream();
+  }
+
+  @NotNull
+  @Override
+  public <T> Promise<T> supplyAsync(@NotNull final Supplier<T> supplier) {
+    return this.delegate.supplyAsync(supplier);
+  }
+
+  @Override
+  public void execute(@Language("SQL") @NotNull final String statement,
+      @NotNull final SqlConsumer<PreparedStatement> preparer) {
+    try {
+      this.delegate.execute(statement, preparer);
+    } finally {
+      invalidateWritten(statement);
+    }
+  }
+
+  @Override
+  public <R> @NotNull Optional<R> query(@Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> handler) {
+    return this.query(handler, query, preparer, handler);
+  }
+
+  /**
+   * Executes a query with preparation, caching its result under the provided key instead of the
+   * handler instance. Queries with the same SQL, parameters and cache key share a cached result,
+   * so the key must identify what the handler returns.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @param cacheKey The key distinguishing the handler's result, compared with equals
+   * @param query    The query to be executed
+   * @param preparer The preparation used for this statement
+   * @param handler  The handler for the data returned by the query
+   * @param <R>      The returned type
+   * @return The result of the handler, or empty if it evaluated to null or the query failed
+   */
+  @NotNull
+  public <R> Optional<R> query(
+      @NotNull final Object cacheKey,
+      @Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> handler) {
+
+    final Set<String> tables = SqlTables.readTables(query);
+
+    if (tables == null) {
+      return this.delegate.query(query, preparer, handler);
+    }
+
+    final String[] names = tables.toArray(new String[0]);
+    final long[] snapshot = new long[names.length];
+    final long[] global = new long[1];
+    final Key[] key = new Key[1];
+
+    // The key is only known once the preparer has bound the real statement, so the lookup happens
+    // there and a hit abandons the statement before it is executed.
+    final SqlConsumer<PreparedStatement> lookup = statement -> {
+      final List<Object> parameters = prepareAndRecord(statement, preparer);
+
+      if (parameters == null) {
+        return;
+      }
+
+      key[0] = new Key(query, parameters, cacheKey);
+      final Entry cached = this.cache.getIfPresent(key[0]);
+
+      if (cached != null && isCurrent(cached)) {
+        throw new CacheHit(cached.getValue());
+      }
+
+      // Capture generations before querying, so a concurrent write marks this result stale.
+      global[0] = this.globalGeneration.get();
+
+      for (int i = 0; i < names.length; i++) {
+        snapshot[i] = generation(names[i]).get();
+      }
+    };
+
+    final Optional<R> result;
+
+    try {
+      result = this.delegate.query(query, lookup, handler);
+    } catch (final CacheHit hit) {
+      //noinspection unchecked
+      return Optional.of((R) hit.value);
+    }
+
+    if (key[0] != null && result.isPresent()) {
+      this.cache.put(key[0], new Entry(result.get(), names, snapshot, global[0]));
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes a query with preparation, caching its result under the provided key.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param cacheKey The key distinguishing the handler's result, compared with equals
+   * @param query    The query to be executed
+   * @param preparer The preparation used for this statement
+   * @param handler  The handler for the data returned by the query
+   * @param <R>      The returned type
+   * @return A Promise of the result of the handler
+   * @see #query(Object, String, SqlConsumer, SqlFunction) for details
+   */
+  @NotNull
+  public <R> Promise<Optional<R>> queryAsync(
+      @NotNull final Object cacheKey,
+      @Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> handler) {
+    return this.supplyAsync(() -> this.query(cacheKey, query, preparer, handler));
+  }
+
+  @Override
+  public <R> @NotNull Stream<R> queryStream(@Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> mapper,
+      final int fetchSize) {
+    return this.delegate.queryStream(query, preparer, mapper, fetchSize);
+  }
+
+  @Override
+  public void executeBatch(@NotNull final BatchBuilder builder) {
+    try {
+      this.delegate.executeBatch(builder);
+    } finally {
+      invalidateWritten(builder.getStatement());
+    }
+  }
+
+  @Override
+  public @NotNull BatchResult executeBatchWithResult(@NotNull final BatchBuilder builder) {
+    try {
+      return this.delegate.executeBatchWithResult(builder);
+    } finally {
+      invalidateWritten(builder.getStatement());
+    }
+  }
+
+  /**
+   * Runs the work within a single transaction on the delegate, then invalidates the tables written
+   * by every statement executed through the {@link SqlTransaction} handle.
+   */
+  @Override
+  public <R> @NotNull Optional<R> transaction(
+      @NotNull final SqlTransaction.Isolation isolation,
+      @NotNull final SqlFunction<SqlTransaction, R> work) {
+
+    final List<String> statements = new ArrayList<>();
+
+    try {
+      return this.delegate.transaction(isolation, transaction -> {
+        try {
+          return work.apply(transaction);
+        } finally {
+          // Retried attempts re-execute the same statements, so only the latest is kept.
+          statements.clear();
+          statements.addAll(transaction.getStatements());
+        }
+      });
+    } finally {
+      for (final String statement : statements) {
+        invalidateWritten(statement);
+      }
+    }
+  }
+
+  @Override
+  public @NotNull BatchBuilder batch(@Language("SQL") @NotNull final String statement) {
+    return new BatchBuilder(this, statement);
+  }
+
+  /**
+   * Invalidates every cached result that reads from the given table.
+   *
+   * @param table The name of the table
+   */
+  public void invalidate(@NotNull final String table) {
+    generation(table.toLowerCase(Locale.ROOT)).incrementAndGet();
+  }
+
+  /**
+   * Invalidates every cached result.
+   */
+  public void invalidateAll() {
+    this.globalGeneration.incrementAndGet();
+    this.cache.invalidateAll();
+  }
+
+  /**
+   * Gets the hit, miss and eviction statistics of the cache.
+   *
+   * @return The cache statistics
+   */
+  @NotNull
+  public CacheStats getStats() {
+    return this.cache.stats();
+  }
+
+  /**
+   * Gets the approximate number of cached results, including stale results not yet evicted.
+   *
+   * @return The number of cached results
+   */
+  public long getSize() {
+    return this.cache.size();
+  }
+
+  /**
+   * Invalidates the cache. The delegate is not closed, as it may be shared with other views of the
+   * same database, and must be closed separately.
+   */
+  @Override
+  public void close() {
+    this.cache.invalidateAll();
+  }
+
+  private void invalidateWritten(@NotNull final String statement) {
+
+    final Set<String> tables = SqlTables.writtenTables(statement);
+
+    if (tables == null) {
+      invalidateAll();
+      return;
+    }
+
+    for (final String table : tables) {
+      generation(table).incrementAndGet();
+    }
+  }
+
+  @NotNull
+  private AtomicLong generation(@NotNull final String table) {
+    return this.generations.computeIfAbsent(table, t -> new AtomicLong());
+  }
+
+  private boolean isCurrent(@NotNull final Entry entry) {
+
+    if (entry.getGlobalGeneration() != this.globalGeneration.get()) {
+      return false;
+    }
+
+    for (int i = 0; i < entry.getTables().length; i++) {
+      if (generation(entry.getTables()[i]).get() != entry.getGenerations()[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Runs the preparer against the statement, recording the parameters it binds.
+   *
+   * @param statement The statement to prepare
+   * @param preparer  The preparer
+   * @return The bound parameters, or null if the preparer did anything other than bind parameters
+   * @throws SQLException If the preparer fails
+   */
+  @Nullable
+  private static List<Object> prepareAndRecord(
+      @NotNull final PreparedStatement statement,
+      @NotNull final SqlConsumer<PreparedStatement> preparer) throws SQLException {
+
+    final List<Object> parameters = new ArrayList<>();
+    final boolean[] supported = {true};
+
+    final PreparedStatement recorder = (PreparedStatement) Proxy.newProxyInstance(
+        PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+        (proxy, method, args) -> {
+          if (method.getName().startsWith("set") && args != null && args.length >= 2
+              && args[0] instanceof Integer) {
+            parameters.add(method.getName());
+            for (final Object arg : args) {
+              parameters.add(arg instanceof byte[] ? ByteBuffer.wrap(((byte[]) arg).clone()) : arg);
+            }
+          } else {
+            supported[0] = false;
+          }
+
+          try {
+            return method.invoke(statement, args);
+          } catch (final InvocationTargetException ex) {
+            throw ex.getCause();
+          }
+        });
+
+    preparer.accept(recorder);
+    return supported[0] ? Collections.unmodifiableList(parameters) : null;
+  }
+
+  /**
+   * Thrown from within the delegate's preparation to return a cached result without executing
+   * the query.
+   */
+  private static final class CacheHit extends RuntimeException {
+
+    private final Object value;
+
+    private CacheHit(final Object value) {
+      super(null, null, false, false);
+      this.value = value;
+    }
+  }
+
+  @Data
+  private static final class Key {
+
+    @NotNull private final String query;
+    @NotNull private final List<Object> parameters;
+    @NotNull private final Object cacheKey;
+  }
+
+  @Data
+  private static final class Entry {
+
+    @NotNull private final Object value;
+    @NotNull private final String[] tables;
+    @NotNull private final long[] generations;
+    private final long globalGeneration;
+  }
+}
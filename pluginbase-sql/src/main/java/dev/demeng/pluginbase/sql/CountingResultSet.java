@@ -0,0 +1,1108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A result set that counts the rows read through it, delegating everything else. Used instead of
+ * a dynamic proxy so that recording row counts adds no reflection to reading each row.
+ */
+final class CountingResultSet implements ResultSet {
+
+  @NotNull private final ResultSet delegate;
+  @NotNull private final AtomicLong counter;
+
+  CountingResultSet(@NotNull final ResultSet delegate, @NotNull final AtomicLong counter) {
+    this.delegate = delegate;
+    this.counter = counter;
+  }
+
+  @Override
+  public boolean next() throws SQLException {
+    final boolean next = this.delegate.next();
+
+    if (next) {
+      this.counter.incrementAndGet();
+    }
+
+    return next;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    this.delegate.close();
+  }
+
+  @Override
+  public boolean wasNull() throws SQLException {
+    return this.delegate.wasNull();
+  }
+
+  @Override
+  public String getString(final int columnIndex) throws SQLException {
+    return this.delegate.getString(columnIndex);
+  }
+
+  @Override
+  public boolean getBoolean(final int columnIndex) throws SQLException {
+    return this.delegate.getBoolean(columnIndex);
+  }
+
+  @Override
+  public byte getByte(final int columnIndex) throws SQLException {
+    return this.delegate.getByte(columnIndex);
+  }
+
+  @Override
+  public short getShort(final int columnIndex) throws SQLException {
+    return this.delegate.getShort(columnIndex);
+  }
+
+  @Override
+  public int getInt(final int columnIndex) throws SQLException {
+    return this.delegate.getInt(columnIndex);
+  }
+
+  @Override
+  public long getLong(final int columnIndex) throws SQLException {
+    return this.delegate.getLong(columnIndex);
+  }
+
+  @Override
+  public float getFloat(final int columnIndex) throws SQLException {
+    return this.delegate.getFloat(columnIndex);
+  }
+
+  @Override
+  public double getDouble(final int columnIndex) throws SQLException {
+    return this.delegate.getDouble(columnIndex);
+  }
+
+  @Override
+  @Deprecated
+  public BigDecimal getBigDecimal(final int columnIndex, final int scale) throws SQLException {
+    return this.delegate.getBigDecimal(columnIndex, scale);
+  }
+
+  @Override
+  public byte[] getBytes(final int columnIndex) throws SQLException {
+    return this.delegate.getBytes(columnIndex);
+  }
+
+  @Override
+  public Date getDate(final int columnIndex) throws SQLException {
+    return this.delegate.getDate(columnIndex);
+  }
+
+  @Override
+  public Time getTime(final int columnIndex) throws SQLException {
+    return this.delegate.getTime(columnIndex);
+  }
+
+  @Override
+  public Timestamp getTimestamp(final int columnIndex) throws SQLException {
+    return this.delegate.getTimestamp(columnIndex);
+  }
+
+  @Override
+  public InputStream getAsciiStream(final int columnIndex) throws SQLException {
+    return this.delegate.getAsciiStream(columnIndex);
+  }
+
+  @Override
+  @Deprecated
+  public InputStream getUnicodeStream(final int columnIndex) throws SQLException {
+    return this.delegate.getUnicodeStream(columnIndex);
+  }
+
+  @Override
+  public InputStream getBinaryStream(final int columnIndex) throws SQLException {
+    return this.delegate.getBinaryStream(columnIndex);
+  }
+
+  @Override
+  public String getString(final String columnLabel) throws SQLException {
+    return this.delegate.getString(columnLabel);
+  }
+
+  @Override
+  public boolean getBoolean(final String columnLabel) throws SQLException {
+    return this.delegate.getBoolean(columnLabel);
+  }
+
+  @Override
+  public byte getByte(final String columnLabel) throws SQLException {
+    return this.delegate.getByte(columnLabel);
+  }
+
+  @Override
+  public short getShort(final String columnLabel) throws SQLException {
+    return this.delegate.getShort(columnLabel);
+  }
+
+  @Override
+  public int getInt(final String columnLabel) throws SQLException {
+    return this.delegate.getInt(columnLabel);
+  }
+
+  @Override
+  public long getLong(final String columnLabel) throws SQLException {
+    return this.delegate.getLong(columnLabel);
+  }
+
+  @Override
+  public float getFloat(final String columnLabel) throws SQLException {
+    return this.delegate.getFloat(columnLabel);
+  }
+
+  @Override
+  public double getDouble(final String columnLabel) throws SQLException {
+    return this.delegate.getDouble(columnLabel);
+  }
+
+  @Override
+  @Deprecated
+  public BigDecimal getBigDecimal(final String columnLabel, final int scale) throws SQLException {
+    return this.delegate.getBigDecimal(columnLabel, scale);
+  }
+
+  @Override
+  public byte[] getBytes(final String columnLabel) throws SQLException {
+    return this.delegate.getBytes(columnLabel);
+  }
+
+  @Override
+  public Date getDate(final String columnLabel) throws SQLException {
+    return this.delegate.getDate(columnLabel);
+  }
+
+  @Override
+  public Time getTime(final String columnLabel) throws SQLException {
+    return this.delegate.getTime(columnLabel);
+  }
+
+  @Override
+  public Timestamp getTimestamp(final String columnLabel) throws SQLException {
+    return this.delegate.getTimestamp(columnLabel);
+  }
+
+  @Override
+  public InputStream getAsciiStream(final String columnLabel) throws SQLException {
+    return this.delegate.getAsciiStream(columnLabel);
+  }
+
+  @Override
+  @Deprecated
+  public InputStream getUnicodeStream(final String columnLabel) throws SQLException {
+    return this.delegate.getUnicodeStream(columnLabel);
+  }
+
+  @Override
+  public InputStream getBinaryStream(final String columnLabel) throws SQLException {
+    return this.delegate.getBinaryStream(columnLabel);
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    return this.delegate.getWarnings();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    this.delegate.clearWarnings();
+  }
+
+  @Override
+  public String getCursorName() throws SQLException {
+    return this.delegate.getCursorName();
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() throws SQLException {
+    return this.delegate.getMetaData();
+  }
+
+  @Override
+  public Object getObject(final int columnIndex) throws SQLException {
+    return this.delegate.getObject(columnIndex);
+  }
+
+  @Override
+  public Object getObject(final String columnLabel) throws SQLException {
+    return this.delegate.getObject(columnLabel);
+  }
+
+  @Override
+  public int findColumn(final String columnLabel) throws SQLException {
+    return this.delegate.findColumn(columnLabel);
+  }
+
+  @Override
+  public Reader getCharacterStream(final int columnIndex) throws SQLException {
+    return this.delegate.getCharacterStream(columnIndex);
+  }
+
+  @Override
+  public Reader getCharacterStream(final String columnLabel) throws SQLException {
+    return this.delegate.getCharacterStream(columnLabel);
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(final int columnIndex) throws SQLException {
+    return this.delegate.getBigDecimal(columnIndex);
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(final String columnLabel) throws SQLException {
+    return this.delegate.getBigDecimal(columnLabel);
+  }
+
+  @Override
+  public boolean isBeforeFirst() throws SQLException {
+    return this.delegate.isBeforeFirst();
+  }
+
+  @Override
+  public boolean isAfterLast() throws SQLException {
+    return this.delegate.isAfterLast();
+  }
+
+  @Override
+  public boolean isFirst() throws SQLException {
+    return this.delegate.isFirst();
+  }
+
+  @Override
+  public boolean isLast() throws SQLException {
+    return this.delegate.isLast();
+  }
+
+  @Override
+  public void beforeFirst() throws SQLException {
+    this.delegate.beforeFirst();
+  }
+
+  @Override
+  public void afterLast() throws SQLException {
+    this.delegate.afterLast();
+  }
+
+  @Override
+  public boolean first() throws SQLException {
+    return this.delegate.first();
+  }
+
+  @Override
+  public boolean last() throws SQLException {
+    return this.delegate.last();
+  }
+
+  @Override
+  public int getRow() throws SQLException {
+    return this.delegate.getRow();
+  }
+
+  @Override
+  public boolean absolute(final int row) throws SQLException {
+    return this.delegate.absolute(row);
+  }
+
+  @Override
+  public boolean relative(final int rows) throws SQLException {
+    return this.delegate.relative(rows);
+  }
+
+  @Override
+  public boolean previous() throws SQLException {
+    return this.delegate.previous();
+  }
+
+  @Override
+  public void setFetchDirection(final int direction) throws SQLException {
+    this.delegate.setFetchDirection(direction);
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException {
+    return this.delegate.getFetchDirection();
+  }
+
+  @Override
+  public void setFetchSize(final int rows) throws SQLException {
+    this.delegate.setFetchSize(rows);
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException {
+    return this.delegate.getFetchSize();
+  }
+
+  @Override
+  public int getType() throws SQLException {
+    return this.delegate.getType();
+  }
+
+  @Override
+  public int getConcurrency() throws SQLException {
+    return this.delegate.getConcurrency();
+  }
+
+  @Override
+  public boolean rowUpdated() throws SQLException {
+    return this.delegate.rowUpdated();
+  }
+
+  @Override
+  public boolean rowInserted() throws SQLException {
+    return this.delegate.rowInserted();
+  }
+
+  @Override
+  public boolean rowDeleted() throws SQLException {
+    return this.delegate.rowDeleted();
+  }
+
+  @Override
+  public void updateNull(final int columnIndex) throws SQLException {
+    this.delegate.updateNull(columnIndex);
+  }
+
+  @Override
+  public void updateBoolean(final int columnIndex, final boolean x) throws SQLException {
+    this.delegate.updateBoolean(columnIndex, x);
+  }
+
+  @Override
+  public void updateByte(final int columnIndex, final byte x) throws SQLException {
+    this.delegate.updateByte(columnIndex, x);
+  }
+
+  @Override
+  public void updateShort(final int columnIndex, final short x) throws SQLException {
+    this.delegate.updateShort(columnIndex, x);
+  }
+
+  @Override
+  public void updateInt(final int columnIndex, final int x) throws SQLException {
+    this.delegate.updateInt(columnIndex, x);
+  }
+
+  @Override
+  public void updateLong(final int columnIndex, final long x) throws SQLException {
+    this.delegate.updateLong(columnIndex, x);
+  }
+
+  @Override
+  public void updateFloat(final int columnIndex, final float x) throws SQLException {
+    this.delegate.updateFloat(columnIndex, x);
+  }
+
+  @Override
+  public void updateDouble(final int columnIndex, final double x) throws SQLException {
+    this.delegate.updateDouble(columnIndex, x);
+  }
+
+  @Override
+  public void updateBigDecimal(final int columnIndex, final BigDecimal x) throws SQLException {
+    this.delegate.updateBigDecimal(columnIndex, x);
+  }
+
+  @Override
+  public void updateString(final int columnIndex, final String x) throws SQLException {
+    this.delegate.updateString(columnIndex, x);
+  }
+
+  @Override
+  public void updateBytes(final int columnIndex, final byte[] x) throws SQLException {
+    this.delegate.updateBytes(columnIndex, x);
+  }
+
+  @Override
+  public void updateDate(final int columnIndex, final Date x) throws SQLException {
+    this.delegate.updateDate(columnIndex, x);
+  }
+
+  @Override
+  public void updateTime(final int columnIndex, final Time x) throws SQLException {
+    this.delegate.updateTime(columnIndex, x);
+  }
+
+  @Override
+  public void updateTimestamp(final int columnIndex, final Timestamp x) throws SQLException {
+    this.delegate.updateTimestamp(columnIndex, x);
+  }
+
+  @Override
+  public void updateAsciiStream(
+      final int columnIndex,
+      final InputStream x,
+      final int length) throws SQLException {
+    this.delegate.updateAsciiStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateBinaryStream(
+      final int columnIndex,
+      final InputStream x,
+      final int length) throws SQLException {
+    this.delegate.updateBinaryStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateCharacterStream(
+      final int columnIndex,
+      final Reader x,
+      final int length) throws SQLException {
+    this.delegate.updateCharacterStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateObject(
+      final int columnIndex,
+      final Object x,
+      final int scaleOrLength) throws SQLException {
+    this.delegate.updateObject(columnIndex, x, scaleOrLength);
+  }
+
+  @Override
+  public void updateObject(final int columnIndex, final Object x) throws SQLException {
+    this.delegate.updateObject(columnIndex, x);
+  }
+
+  @Override
+  public void updateNull(final String columnLabel) throws SQLException {
+    this.delegate.updateNull(columnLabel);
+  }
+
+  @Override
+  public void updateBoolean(final String columnLabel, final boolean x) throws SQLException {
+    this.delegate.updateBoolean(columnLabel, x);
+  }
+
+  @Override
+  public void updateByte(final String columnLabel, final byte x) throws SQLException {
+    this.delegate.updateByte(columnLabel, x);
+  }
+
+  @Override
+  public void updateShort(final String columnLabel, final short x) throws SQLException {
+    this.delegate.updateShort(columnLabel, x);
+  }
+
+  @Override
+  public void updateInt(final String columnLabel, final int x) throws SQLException {
+    this.delegate.updateInt(columnLabel, x);
+  }
+
+  @Override
+  public void updateLong(final String columnLabel, final long x) throws SQLException {
+    this.delegate.updateLong(columnLabel, x);
+  }
+
+  @Override
+  public void updateFloat(final String columnLabel, final float x) throws SQLException {
+    this.delegate.updateFloat(columnLabel, x);
+  }
+
+  @Override
+  public void updateDouble(final String columnLabel, final double x) throws SQLException {
+    this.delegate.updateDouble(columnLabel, x);
+  }
+
+  @Override
+  public void updateBigDecimal(final String columnLabel, final BigDecimal x) throws SQLException {
+    this.delegate.updateBigDecimal(columnLabel, x);
+  }
+
+  @Override
+  public void updateString(final String columnLabel, final String x) throws SQLException {
+    this.delegate.updateString(columnLabel, x);
+  }
+
+  @Override
+  public void updateBytes(final String columnLabel, final byte[] x) throws SQLException {
+    this.delegate.updateBytes(columnLabel, x);
+  }
+
+  @Override
+  public void updateDate(final String columnLabel, final Date x) throws SQLException {
+    this.delegate.updateDate(columnLabel, x);
+  }
+
+  @Override
+  public void updateTime(final String columnLabel, final Time x) throws SQLException {
+    this.delegate.updateTime(columnLabel, x);
+  }
+
+  @Override
+  public void updateTimestamp(final String columnLabel, final Timestamp x) throws SQLException {
+    this.delegate.updateTimestamp(columnLabel, x);
+  }
+
+  @Override
+  public void updateAsciiStream(
+      final String columnLabel,
+      final InputStream x,
+      final int length) throws SQLException {
+    this.delegate.updateAsciiStream(columnLabel, x, length);
+  }
+
+  @Override
+  public void updateBinaryStream(
+      final String columnLabel,
+      final InputStream x,
+      final int length) throws SQLException {
+    this.delegate.updateBinaryStream(columnLabel, x, length);
+  }
+
+  @Override
+  public void updateCharacterStream(
+      final String columnLabel,
+      final Reader reader,
+      final int length) throws SQLException {
+    this.delegate.updateCharacterStream(columnLabel, reader, length);
+  }
+
+  @Override
+  public void updateObject(
+      final String columnLabel,
+      final Object x,
+      final int scaleOrLength) throws SQLException {
+    this.delegate.updateObject(columnLabel, x, scaleOrLength);
+  }
+
+  @Override
+  public void updateObject(final String columnLabel, final Object x) throws SQLException {
+    this.delegate.updateObject(columnLabel, x);
+  }
+
+  @Override
+  public void insertRow() throws SQLException {
+    this.delegate.insertRow();
+  }
+
+  @Override
+  public void updateRow() throws SQLException {
+    this.delegate.updateRow();
+  }
+
+  @Override
+  public void deleteRow() throws SQLException {
+    this.delegate.deleteRow();
+  }
+
+  @Override
+  public void refreshRow() throws SQLException {
+    this.delegate.refreshRow();
+  }
+
+  @Override
+  public void cancelRowUpdates() throws SQLException {
+    this.delegate.cancelRowUpdates();
+  }
+
+  @Override
+  public void moveToInsertRow() throws SQLException {
+    this.delegate.moveToInsertRow();
+  }
+
+  @Override
+  public void moveToCurrentRow() throws SQLException {
+    this.delegate.moveToCurrentRow();
+  }
+
+  @Override
+  public Statement getStatement() throws SQLException {
+    return this.delegate.getStatement();
+  }
+
+  @Override
+  public Object getObject(
+      final int columnIndex,
+      final Map<String, Class<?>> map) throws SQLException {
+    return this.delegate.getObject(columnIndex, map);
+  }
+
+  @Override
+  public Ref getRef(final int columnIndex) throws SQLException {
+    return this.delegate.getRef(columnIndex);
+  }
+
+  @Override
+  public Blob getBlob(final int columnIndex) throws SQLException {
+    return this.delegate.getBlob(columnIndex);
+  }
+
+  @Override
+  public Clob getClob(final int columnIndex) throws SQLException {
+    return this.delegate.getClob(columnIndex);
+  }
+
+  @Override
+  public Array getArray(final int columnIndex) throws SQLException {
+    return this.delegate.getArray(columnIndex);
+  }
+
+  @Override
+  public Object getObject(
+      final String columnLabel,
+      final Map<String, Class<?>> map) throws SQLException {
+    return this.delegate.getObject(columnLabel, map);
+  }
+
+  @Override
+  public Ref getRef(final String columnLabel) throws SQLException {
+    return this.delegate.getRef(columnLabel);
+  }
+
+  @Override
+  public Blob getBlob(final String columnLabel) throws SQLException {
+    return this.delegate.getBlob(columnLabel);
+  }
+
+  @Override
+  public Clob getClob(final String columnLabel) throws SQLException {
+    return this.delegate.getClob(columnLabel);
+  }
+
+  @Override
+  public Array getArray(final String columnLabel) throws SQLException {
+    return this.delegate.getArray(columnLabel);
+  }
+
+  @Override
+  public Date getDate(final int columnIndex, final Calendar cal) throws SQLException {
+    return this.delegate.getDate(columnIndex, cal);
+  }
+
+  @Override
+  public Date getDate(final String columnLabel, final Calendar cal) throws SQLException {
+    return this.delegate.getDate(columnLabel, cal);
+  }
+
+  @Override
+  public Time getTime(final int columnIndex, final Calendar cal) throws SQLException {
+    return this.delegate.getTime(columnIndex, cal);
+  }
+
+  @Override
+  public Time getTime(final String columnLabel, final Calendar cal) throws SQLException {
+    return this.delegate.getTime(columnLabel, cal);
+  }
+
+  @Override
+  public Timestamp getTimestamp(final int columnIndex, final Calendar cal) throws SQLException {
+    return this.delegate.getTimestamp(columnIndex, cal);
+  }
+
+  @Override
+  public Timestamp getTimestamp(final String columnLabel, final Calendar cal) throws SQLException {
+    return this.delegate.getTimestamp(columnLabel, cal);
+  }
+
+  @Override
+  public URL getURL(final int columnIndex) throws SQLException {
+    return this.delegate.getURL(columnIndex);
+  }
+
+  @Override
+  public URL getURL(final String columnLabel) throws SQLException {
+    return this.delegate.getURL(columnLabel);
+  }
+
+  @Override
+  public void updateRef(final int columnIndex, final Ref x) throws SQLException {
+    this.delegate.updateRef(columnIndex, x);
+  }
+
+  @Override
+  public void updateRef(final String columnLabel, final Ref x) throws SQLException {
+    this.delegate.updateRef(columnLabel, x);
+  }
+
+  @Override
+  public void updateBlob(final int columnIndex, final Blob x) throws SQLException {
+    this.delegate.updateBlob(columnIndex, x);
+  }
+
+  @Override
+  public void updateBlob(final String columnLabel, final Blob x) throws SQLException {
+    this.delegate.updateBlob(columnLabel, x);
+  }
+
+  @Override
+  public void updateClob(final int columnIndex, final Clob x) throws SQLException {
+    this.delegate.updateClob(columnIndex, x);
+  }
+
+  @Override
+  public void updateClob(final String columnLabel, final Clob x) throws SQLException {
+    this.delegate.updateClob(columnLabel, x);
+  }
+
+  @Override
+  public void updateArray(final int columnIndex, final Array x) throws SQLException {
+    this.delegate.updateArray(columnIndex, x);
+  }
+
+  @Override
+  public void updateArray(final String columnLabel, final Array x) throws SQLException {
+    this.delegate.updateArray(columnLabel, x);
+  }
+
+  @Override
+  public RowId getRowId(final int columnIndex) throws SQLException {
+    return this.delegate.getRowId(columnIndex);
+  }
+
+  @Override
+  public RowId getRowId(final String columnLabel) throws SQLException {
+    return this.delegate.getRowId(columnLabel);
+  }
+
+  @Override
+  public void updateRowId(final int columnIndex, final RowId x) throws SQLException {
+    this.delegate.updateRowId(columnIndex, x);
+  }
+
+  @Override
+  public void updateRowId(final String columnLabel, final RowId x) throws SQLException {
+    this.delegate.updateRowId(columnLabel, x);
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    return this.delegate.getHoldability();
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    return this.delegate.isClosed();
+  }
+
+  @Override
+  public void updateNString(final int columnIndex, final String nString) throws SQLException {
+    this.delegate.updateNString(columnIndex, nString);
+  }
+
+  @Override
+  public void updateNString(final String columnLabel, final String nString) throws SQLException {
+    this.delegate.updateNString(columnLabel, nString);
+  }
+
+  @Override
+  public void updateNClob(final int columnIndex, final NClob nClob) throws SQLException {
+    this.delegate.updateNClob(columnIndex, nClob);
+  }
+
+  @Override
+  public void updateNClob(final String columnLabel, final NClob nClob) throws SQLException {
+    this.delegate.updateNClob(columnLabel, nClob);
+  }
+
+  @Override
+  public NClob getNClob(final int columnIndex) throws SQLException {
+    return this.delegate.getNClob(columnIndex);
+  }
+
+  @Override
+  public NClob getNClob(final String columnLabel) throws SQLException {
+    return this.delegate.getNClob(columnLabel);
+  }
+
+  @Override
+  public SQLXML getSQLXML(final int columnIndex) throws SQLException {
+    return this.delegate.getSQLXML(columnIndex);
+  }
+
+  @Override
+  public SQLXML getSQLXML(final String columnLabel) throws SQLException {
+    return this.delegate.getSQLXML(columnLabel);
+  }
+
+  @Override
+  public void updateSQLXML(final int columnIndex, final SQLXML xmlObject) throws SQLException {
+    this.delegate.updateSQLXML(columnIndex, xmlObject);
+  }
+
+  @Override
+  public void updateSQLXML(final String columnLabel, final SQLXML xmlObject) throws SQLException {
+    this.delegate.updateSQLXML(columnLabel, xmlObject);
+  }
+
+  @Override
+  public String getNString(final int columnIndex) throws SQLException {
+    return this.delegate.getNString(columnIndex);
+  }
+
+  @Override
+  public String getNString(final String columnLabel) throws SQLException {
+    return this.delegate.getNString(columnLabel);
+  }
+
+  @Override
+  public Reader getNCharacterStream(final int columnIndex) throws SQLException {
+    return this.delegate.getNCharacterStream(columnIndex);
+  }
+
+  @Override
+  public Reader getNCharacterStream(final String columnLabel) throws SQLException {
+    return this.delegate.getNCharacterStream(columnLabel);
+  }
+
+  @Override
+  public void updateNCharacterStream(
+      final int columnIndex,
+      final Reader x,
+      final long length) throws SQLException {
+    this.delegate.updateNCharacterStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateNCharacterStream(
+      final String columnLabel,
+      final Reader reader,
+      final long length) throws SQLException {
+    this.delegate.updateNCharacterStream(columnLabel, reader, length);
+  }
+
+  @Override
+  public void updateAsciiStream(
+      final int columnIndex,
+      final InputStream x,
+      final long length) throws SQLException {
+    this.delegate.updateAsciiStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateBinaryStream(
+      final int columnIndex,
+      final InputStream x,
+      final long length) throws SQLException {
+    this.delegate.updateBinaryStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateCharacterStream(
+      final int columnIndex,
+      final Reader x,
+      final long length) throws SQLException {
+    this.delegate.updateCharacterStream(columnIndex, x, length);
+  }
+
+  @Override
+  public void updateAsciiStream(
+      final String columnLabel,
+      final InputStream x,
+      final long length) throws SQLException {
+    this.delegate.updateAsciiStream(columnLabel, x, length);
+  }
+
+  @Override
+  public void updateBinaryStream(
+      final String columnLabel,
+      final InputStream x,
+      final long length) throws SQLException {
+    this.delegate.updateBinaryStream(columnLabel, x, length);
+  }
+
+  @Override
+  public void updateCharacterStream(
+      final String columnLabel,
+      final Reader reader,
+      final long length) throws SQLException {
+    this.delegate.updateCharacterStream(columnLabel, reader, length);
+  }
+
+  @Override
+  public void updateBlob(
+      final int columnIndex,
+      final InputStream inputStream,
+      final long length) throws SQLException {
+    this.delegate.updateBlob(columnIndex, inputStream, length);
+  }
+
+  @Override
+  public void updateBlob(
+      final String columnLabel,
+      final InputStream inputStream,
+      final long length) throws SQLException {
+    this.delegate.updateBlob(columnLabel, inputStream, length);
+  }
+
+  @Override
+  public void updateClob(
+      final int columnIndex,
+      final Reader reader,
+      final long length) throws SQLException {
+    this.delegate.updateClob(columnIndex, reader, length);
+  }
+
+  @Override
+  public void updateClob(
+      final String columnLabel,
+      final Reader reader,
+      final long length) throws SQLException {
+    this.delegate.updateClob(columnLabel, reader, length);
+  }
+
+  @Override
+  public void updateNClob(
+      final int columnIndex,
+      final Reader reader,
+      final long length) throws SQLException {
+    this.delegate.updateNClob(columnIndex, reader, length);
+  }
+
+  @Override
+  public void updateNClob(
+      final String columnLabel,
+      final Reader reader,
+      final long length) throws SQLException {
+    this.delegate.updateNClob(columnLabel, reader, length);
+  }
+
+  @Override
+  public void updateNCharacterStream(final int columnIndex, final Reader x) throws SQLException {
+    this.delegate.updateNCharacterStream(columnIndex, x);
+  }
+
+  @Override
+  public void updateNCharacterStream(
+      final String columnLabel,
+      final Reader reader) throws SQLException {
+    this.delegate.updateNCharacterStream(columnLabel, reader);
+  }
+
+  @Override
+  public void updateAsciiStream(final int columnIndex, final InputStream x) throws SQLException {
+    this.delegate.updateAsciiStream(columnIndex, x);
+  }
+
+  @Override
+  public void updateBinaryStream(final int columnIndex, final InputStream x) throws SQLException {
+    this.delegate.updateBinaryStream(columnIndex, x);
+  }
+
+  @Override
+  public void updateCharacterStream(final int columnIndex, final Reader x) throws SQLException {
+    this.delegate.updateCharacterStream(columnIndex, x);
+  }
+
+  @Override
+  public void updateAsciiStream(final String columnLabel, final InputStream x) throws SQLException {
+    this.delegate.updateAsciiStream(columnLabel, x);
+  }
+
+  @Override
+  public void updateBinaryStream(
+      final String columnLabel,
+      final InputStream x) throws SQLException {
+    this.delegate.updateBinaryStream(columnLabel, x);
+  }
+
+  @Override
+  public void updateCharacterStream(
+      final String columnLabel,
+      final Reader reader) throws SQLException {
+    this.delegate.updateCharacterStream(columnLabel, reader);
+  }
+
+  @Override
+  public void updateBlob(final int columnIndex, final InputStream inputStream) throws SQLException {
+    this.delegate.updateBlob(columnIndex, inputStream);
+  }
+
+  @Override
+  public void updateBlob(
+      final String columnLabel,
+      final InputStream inputStream) throws SQLException {
+    this.delegate.updateBlob(columnLabel, inputStream);
+  }
+
+  @Override
+  public void updateClob(final int columnIndex, final Reader reader) throws SQLException {
+    this.delegate.updateClob(columnIndex, reader);
+  }
+
+  @Override
+  public void updateClob(final String columnLabel, final Reader reader) throws SQLException {
+    this.delegate.updateClob(columnLabel, reader);
+  }
+
+  @Override
+  public void updateNClob(final int columnIndex, final Reader reader) throws SQLException {
+    this.delegate.updateNClob(columnIndex, reader);
+  }
+
+  @Override
+  public void updateNClob(final String columnLabel, final Reader reader) throws SQLException {
+    this.delegate.updateNClob(columnLabel, reader);
+  }
+
+  @Override
+  public <T> T getObject(final int columnIndex, final Class<T> type) throws SQLException {
+    return this.delegate.getObject(columnIndex, type);
+  }
+
+  @Override
+  public <T> T getObject(final String columnLabel, final Class<T> type) throws SQLException {
+    return this.delegate.getObject(columnLabel, type);
+  }
+
+  @Override
+  public <T> T unwrap(final Class<T> iface) throws SQLException {
+    return iface.isInstance(this.delegate) ? iface.cast(this.delegate)
+        : this.delegate.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+    return iface.isInstance(this.delegate) || this.delegate.isWrapperFor(iface);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A lock-free histogram of non-negative values with logarithmic buckets. Each power of two is split
+ * into four buckets, so recorded percentiles are accurate to within 25%.
+ */
+public final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+  @NotNull private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  @NotNull private final AtomicLong count = new AtomicLong();
+  @NotNull private final AtomicLong sum = new AtomicLong();
+  @NotNull private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a value. Negative values are recorded as 0.
+   *
+   * @param value The value to record
+   */
+  public void record(final long value) {
+    final long v = Math.max(0, value);
+
+    this.counts.incrementAndGet(bucketOf(v));
+    this.count.incrementAndGet();
+    this.sum.addAndGet(v);
+
+    long current;
+    while (v > (current = this.max.get())) {
+      if (this.max.compareAndSet(current, v)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Clears every recorded value.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts.set(i, 0);
+    }
+    this.count.set(0);
+    this.sum.set(0);
+    this.max.set(0);
+  }
+
+  /**
+   * Takes a point-in-time snapshot of the histogram. Values recorded while the snapshot is taken
+   * may or may not be included.
+   *
+   * @return The snapshot
+   */
+  @NotNull
+  public Snapshot snapshot() {
+    final long[] buckets = new long[BUCKETS];
+    long total = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = this.counts.get(i);
+      total += buckets[i];
+    }
+
+    final long maximum = this.max.get();
+    return new Snapshot(total, this.sum.get(), maximum,
+        percentile(buckets, total, maximum, 0.50),
+        percentile(buckets, total, maximum, 0.95),
+        percentile(buckets, total, maximum, 0.99));
+  }
+
+  private static int bucketOf(final long value) {
+
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return exponent * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBoundOf(final int bucket) {
+
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    final int exponent = bucket / SUB_BUCKETS;
+    final long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  private static long percentile(final long[] buckets, final long total, final long max,
+      final double percentile) {
+
+    if (total == 0) {
+      return 0;
+    }
+
+    final long rank = (long) Math.ceil(total * percentile);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  /**
+   * An immutable snapshot of a {@link Histogram}.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Snapshot {
+
+    /**
+     * The number of recorded values.
+     */
+    private final long count;
+
+    /**
+     * The sum of every recorded value.
+     */
+    private final long sum;
+
+    /**
+     * The largest recorded value.
+     */
+    private final long max;
+
+    /**
+     * The approximate median.
+     */
+    private final long p50;
+
+    /**
+     * The approximate 95th percentile.
+     */
+    private final long p95;
+
+    /**
+     * The approximate 99th percentile.
+     */
+    private final long p99;
+
+    /**
+     * Gets the mean of every recorded value.
+     *
+     * @return The mean, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+      return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+  }
+}
@@ -37,7 +37,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +73,23 @@ public interface ISql extends Terminable {
    */
   @NotNull SqlStream stream();
 
+  /**
+   * Supplies a promise using the result of the supplier, executed on the thread pool used by this
+   * database for its asynchronous operations.
+   *
+   * <p>By default, the shared asynchronous scheduler is used. Implementations may use a bounded,
+   * dedicated executor instead, in which case the promise may complete exceptionally if the task is
+   * rejected.</p>
+   *
+   * @param supplier The supplier
+   * @param <T>      The result type
+   * @return A promise of the supplier's result
+   */
+  @NotNull
+  default <T> Promise<T> supplyAsync(@NotNull final Supplier<T> supplier) {
+    return Promise.supplyingAsync(supplier);
+  }
+
   /**
    * Executes a database statement with no preparation.
    *
@@ -77,7 +101,7 @@ public interface ISql extends Terminable {
    */
   @NotNull
   default Promise<Void> executeAsync(@Language("SQL") @NotNull final String statement) {
-    return Promise.supplyingAsync(
+    return this.supplyAsync(
         Delegates.runnableToSupplier(() -> this.execute(statement)));
   }
 
@@ -108,7 +132,7 @@ public interface ISql extends Terminable {
   default Promise<Void> executeAsync(
       @Language("SQL") @NotNull final String statement,
       @NotNull final SqlConsumer<PreparedStatement> preparer) {
-    return Promise.supplyingAsync(
+    return this.supplyAsync(
         Delegates.runnableToSupplier(() -> this.execute(statement, preparer)));
   }
 
@@ -144,7 +168,7 @@ public interface ISql extends Terminable {
   default <R> Promise<Optional<R>> queryAsync(
       @Language("SQL") @NotNull final String query,
       @NotNull final SqlFunction<ResultSet, R> handler) {
-    return Promise.supplyingAsync(() -> this.query(query, handler));
+    return this.supplyAsync(() -> this.query(query, handler));
   }
 
   /**
@@ -191,7 +215,7 @@ public interface ISql extends Terminable {
       @Language("SQL") @NotNull final String query,
       @NotNull final SqlConsumer<PreparedStatement> preparer,
       @NotNull final SqlFunction<ResultSet, R> handler) {
-    return Promise.supplyingAsync(() -> this.query(query, preparer, handler));
+    return this.supplyAsync(() -> this.query(query, preparer, handler));
   }
 
   /**
@@ -213,6 +237,126 @@ public interface ISql extends Terminable {
   @NotNull <R> Optional<R> query(@Language("SQL") @NotNull String query,
       @NotNull SqlConsumer<PreparedStatement> preparer, @NotNull SqlFunction<ResultSet, R> handler);
 
+  /**
+   * Executes a database query and lazily maps each row of the result as it is pulled from the
+   * returned stream, so that the full result never has to be held in memory.
+   *
+   * <p>The returned stream holds a connection until it is closed, so it should always be used
+   * within a try-with-resources block. Rows are fetched from the database in groups of the
+   * provided fetch size, or one at a time if the fetch size is
+   * {@link Sql#STREAMING_FETCH_SIZE}.</p>
+   *
+   * <p>This will be executed on whichever thread it's called from. In the case of a
+   * {@link SQLException}, the error is reported and the stream ends early.</p>
+   *
+   * @param query     The query to be executed
+   * @param preparer  The preparation used for this statement
+   * @param mapper    The mapper applied to each row, the result set should not be advanced
+   * @param fetchSize The number of rows to fetch from the database at a time
+   * @param <R>       The returned type
+   * @return A lazily populated stream of mapped rows
+   * @see #queryPagedAsync(String, SqlConsumer, SqlFunction, int, Consumer) to page rows
+   * asynchronously
+   */
+  @NotNull <R> Stream<R> queryStream(@Language("SQL") @NotNull String query,
+      @NotNull SqlConsumer<PreparedStatement> preparer, @NotNull SqlFunction<ResultSet, R> mapper,
+      int fetchSize);
+
+  /**
+   * Executes a database query and lazily maps each row of the result as it is pulled from the
+   * returned stream, using the {@link Sql#DEFAULT_FETCH_SIZE default fetch size}.
+   *
+   * @param query    The query to be executed
+   * @param preparer The preparation used for this statement
+   * @param mapper   The mapper applied to each row, the result set should not be advanced
+   * @param <R>      The returned type
+   * @return A lazily populated stream of mapped rows
+   * @see #queryStream(String, SqlConsumer, SqlFunction, int)
+   */
+  @NotNull
+  default <R> Stream<R> queryStream(
+      @Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> mapper) {
+    return this.queryStream(query, preparer, mapper, Sql.DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * Executes a database query and lazily maps each row of the result as it is pulled from the
+   * returned stream, using the {@link Sql#DEFAULT_FETCH_SIZE default fetch size}.
+   *
+   * @param query  The query to be executed
+   * @param mapper The mapper applied to each row, the result set should not be advanced
+   * @param <R>    The returned type
+   * @return A lazily populated stream of mapped rows
+   * @see #queryStream(String, SqlConsumer, SqlFunction, int)
+   */
+  @NotNull
+  default <R> Stream<R> queryStream(
+      @Language("SQL") @NotNull final String query,
+      @NotNull final SqlFunction<ResultSet, R> mapper) {
+    return this.queryStream(query, stmt -> {
+    }, mapper);
+  }
+
+  /**
+   * Executes a database query and passes the mapped rows to the page handler in pages of the
+   * provided size, holding at most one page in memory at a time.
+   *
+   * <p>This will be executed on an asynchronous thread, and the page handler is called on that
+   * same thread. The next page is not fetched until the handler returns, and each page is a new
+   * list which the handler may keep.</p>
+   *
+   * <p>If reading the results fails part way, the Promise fails with an
+   * {@link UncheckedSqlException} rather than completing with a partial count.</p>
+   *
+   * @param query       The query to be executed
+   * @param preparer    The preparation used for this statement
+   * @param mapper      The mapper applied to each row, the result set should not be advanced
+   * @param pageSize    The maximum number of rows in each page, also used as the fetch size
+   * @param pageHandler The handler for each page of rows
+   * @param <R>         The returned type
+   * @return A Promise of the total number of rows handled
+   * @see #queryStream(String, SqlConsumer, SqlFunction, int) to stream rows synchronously
+   */
+  @NotNull
+  default <R> Promise<Long> queryPagedAsync(
+      @Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> mapper,
+      final int pageSize,
+      @NotNull final Consumer<List<R>> pageHandler) {
+
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+
+    return this.supplyAsync(() -> {
+      long total = 0;
+
+      try (final Stream<R> stream = this.queryStream(query, preparer, mapper, pageSize)) {
+        List<R> page = new ArrayList<>(pageSize);
+
+        for (final Iterator<R> it = stream.iterator(); it.hasNext(); ) {
+          page.add(it.next());
+
+          if (page.size() == pageSize) {
+            pageHandler.accept(page);
+            total += page.size();
+            page = new ArrayList<>(pageSize);
+          }
+        }
+
+        if (!page.isEmpty()) {
+          pageHandler.accept(page);
+          total += page.size();
+        }
+      }
+
+      return total;
+    });
+  }
+
   /**
    * Executes a batched database execution.
    *
@@ -229,7 +373,7 @@ public interface ISql extends Terminable {
    */
   @NotNull
   default Promise<Void> executeBatchAsync(@NotNull final BatchBuilder builder) {
-    return Promise.supplyingAsync(
+    return this.supplyAsync(
         Delegates.runnableToSupplier(() -> this.executeBatch(builder)));
   }
 
@@ -248,6 +392,139 @@ public interface ISql extends Terminable {
    */
   void executeBatch(@NotNull BatchBuilder builder);
 
+  /**
+   * Executes a batched database execution and reports the outcome of each chunk.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param builder The builder to be used.
+   * @return A Promise of the result of the batch
+   * @see #executeBatchWithResult(BatchBuilder) to perform this action synchronously
+   */
+  @NotNull
+  default Promise<BatchResult> executeBatchWithResultAsync(@NotNull final BatchBuilder builder) {
+    return this.supplyAsync(() -> this.executeBatchWithResult(builder));
+  }
+
+  /**
+   * Executes a batched database execution and reports the outcome of each chunk.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * <p>The rows of the batch are sent in chunks of {@link BatchBuilder#getChunkSize()} rows. If
+   * the builder is {@link BatchBuilder#isAtomic() atomic}, every chunk is committed or rolled back
+   * together; otherwise, each chunk is committed on its own.</p>
+   *
+   * @param builder The builder to be used.
+   * @return The result of the batch
+   * @see #executeBatchWithResultAsync(BatchBuilder) to perform this action asynchronously
+   */
+  @NotNull
+  BatchResult executeBatchWithResult(@NotNull BatchBuilder builder);
+
+  /**
+   * Runs the work within a single transaction using the connection's default isolation level.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param work The work to run, which may be run more than once if the transaction is retried
+   * @param <R>  The returned type
+   * @return A Promise of the result of the work
+   * @see #transaction(SqlTransaction.Isolation, SqlFunction) for details
+   */
+  @NotNull
+  default <R> Promise<Optional<R>> transactionAsync(
+      @NotNull final SqlFunction<SqlTransaction, R> work) {
+    return this.transactionAsync(SqlTransaction.Isolation.DEFAULT, work);
+  }
+
+  /**
+   * Runs the work within a single transaction.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @param isolation The isolation level of the transaction
+   * @param work      The work to run, which may be run more than once if the transaction is
+   *                  retried
+   * @param <R>       The returned type
+   * @return A Promise of the result of the work
+   * @see #transaction(SqlTransaction.Isolation, SqlFunction) for details
+   */
+  @NotNull
+  default <R> Promise<Optional<R>> transactionAsync(
+      @NotNull final SqlTransaction.Isolation isolation,
+      @NotNull final SqlFunction<SqlTransaction, R> work) {
+    return this.supplyAsync(() -> this.transaction(isolation, work));
+  }
+
+  /**
+   * Runs the work within a single transaction using the connection's default isolation level.
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @param work The work to run, which may be run more than once if the transaction is retried
+   * @param <R>  The returned type
+   * @return The result of the work
+   * @see #transaction(SqlTransaction.Isolation, SqlFunction) for details
+   */
+  @NotNull
+  default <R> Optional<R> transaction(@NotNull final SqlFunction<SqlTransaction, R> work) {
+    return this.transaction(SqlTransaction.Isolation.DEFAULT, work);
+  }
+
+  /**
+   * Runs the work within a single transaction. Every statement executed through the provided
+   * {@link SqlTransaction} is committed once the work returns, or rolled back if it throws.
+   *
+   * <p>If the transaction fails because of a deadlock or serialization failure, it is rolled back
+   * and the work is run again after a short, randomized delay, up to a limited number of attempts.
+   * The work should therefore not have side effects outside of the database.</p>
+   *
+   * <p>This will be executed on whichever thread it's called from, including any delay between
+   * attempts.</p>
+   *
+   * <p>In the case of a {@link SQLException} that cannot be retried, or in the case of the work
+   * evaluating to null, this method will return an {@link Optional#empty()} object.</p>
+   *
+   * @param isolation The isolation level of the transaction
+   * @param work      The work to run
+   * @param <R>       The returned type
+   * @return The result of the work
+   * @see #transactionAsync(SqlTransaction.Isolation, SqlFunction) to perform this action
+   * asynchronously
+   */
+  @NotNull <R> Optional<R> transaction(@NotNull SqlTransaction.Isolation isolation,
+      @NotNull SqlFunction<SqlTransaction, R> work);
+
+  /**
+   * Creates a {@link CachingSql} layered over this database, which caches query results and
+   * invalidates them when a table they read from is written to.
+   *
+   * @param maximumSize The maximum number of cached results
+   * @param expiry      The time after which a cached result expires
+   * @param unit        The unit of the expiry
+   * @return A caching view of this database
+   */
+  @NotNull
+  default CachingSql cached(final long maximumSize, final long expiry,
+      @NotNull final TimeUnit unit) {
+    return new CachingSql(this, maximumSize, expiry, unit);
+  }
+
+  /**
+   * Gets a {@link BulkInsertBuilder} which inserts rows into the provided table using multi-row
+   * statements.
+   *
+   * @param table   The table to insert into
+   * @param columns The columns each row provides values for
+   * @return A BulkInsertBuilder
+   */
+  @NotNull
+  default BulkInsertBuilder bulkInsert(@NotNull final String table,
+      @NotNull final String... columns) {
+    return new BulkInsertBuilder(this, table, columns);
+  }
+
   /**
    * Gets a {@link BatchBuilder} for the provided statement.
    *
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import be.bendem.sqlstreams.util.SqlFunction;
+import dev.demeng.pluginbase.Common;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A spliterator that lazily advances an open {@link ResultSet}, mapping one row per advance. Owns
+ * the result set, statement and connection, which are released by {@link #close()}.
+ *
+ * <p>A {@link SQLException} while advancing closes the spliterator and is rethrown as an
+ * {@link UncheckedSqlException}, so a failed stream is never mistaken for a complete one.</p>
+ *
+ * @param <R> The mapped row type
+ */
+final class ResultSetSpliterator<R> extends Spliterators.AbstractSpliterator<R>
+    implements AutoCloseable {
+
+  @NotNull private final Connection connection;
+  @NotNull private final PreparedStatement statement;
+  @NotNull private final ResultSet resultSet;
+  @NotNull private final SqlFunction<ResultSet, R> mapper;
+  @NotNull private final SqlMetrics.Recorder recorder;
+  private final long executeNanos;
+
+  private long rows;
+  private boolean closed;
+
+  ResultSetSpliterator(
+      @NotNull final Connection connection,
+      @NotNull final PreparedStatement statement,
+      @NotNull final ResultSet resultSet,
+      @NotNull final SqlFunction<ResultSet, R> mapper,
+      @NotNull final SqlMetrics.Recorder recorder,
+      final long executeNanos) {
+    super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+    this.connection = connection;
+    this.statement = statement;
+    this.resultSet = resultSet;
+    this.mapper = mapper;
+    this.recorder = recorder;
+    this.executeNanos = executeNanos;
+  }
+
+  @Override
+  public boolean tryAdvance(final Consumer<? super R> action) {
+
+    if (this.closed) {
+      return false;
+    }
+
+    try {
+      while (this.resultSet.next()) {
+        this.rows++;
+        final R row = this.mapper.apply(this.resultSet);
+
+        // Skip rows the mapper rejects, consistent with the non-null characteristic.
+        if (row != null) {
+          action.accept(row);
+          return true;
+        }
+      }
+    } catch (final SQLException ex) {
+      this.recorder.failed();
+      close();
+      throw new UncheckedSqlException("Failed to stream SQL query results", ex);
+    }
+
+    close();
+    return false;
+  }
+
+  @Override
+  public void close() {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    // Only the time until the first rows arrived is recorded, as the consumer controls the rest.
+    this.recorder.record(this.executeNanos, this.rows);
+
+    try (final Connection c = this.connection;
+        final PreparedStatement s = this.statement;
+        final ResultSet r = this.resultSet) {
+      // Resources are closed in reverse order.
+    } catch (final SQLException ex) {
+      Common.error(ex, "Failed to close streamed SQL query.", false);
+    }
+  }
+}
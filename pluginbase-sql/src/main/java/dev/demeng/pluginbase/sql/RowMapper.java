@@ -0,0 +1,396 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import be.bendem.sqlstreams.util.SqlFunction;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Maps rows of a {@link ResultSet} to instances of a class, for use as a handler in
+ * {@link ISql#query(String, be.bendem.sqlstreams.util.SqlConsumer, SqlFunction)} or as a mapper in
+ * {@link ISql#queryStream(String, be.bendem.sqlstreams.util.SqlConsumer, SqlFunction)}.
+ *
+ * <p>Each column is matched to the field of the same name, ignoring case and underscores, so a
+ * {@code player_id} column is written to a {@code playerId} field. Columns without a matching field
+ * are ignored, and fields without a matching column are left untouched. Primitive fields are also
+ * left untouched when the column is null.</p>
+ *
+ * <p>The constructor and field accessors of a class are resolved once, and the columns of a result
+ * set are matched once per query, so mapping a row does not use reflection.</p>
+ *
+ * <pre>{@code
+ * List<PlayerData> players = sql.query("SELECT * FROM players", RowMapper.of(PlayerData.class).list())
+ *     .orElse(Collections.emptyList());
+ * }</pre>
+ *
+ * @param <T> The mapped type
+ */
+public final class RowMapper<T> {
+
+  private static final Map<Class<?>, RowMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+
+  /**
+   * The mapped type.
+   */
+  @NotNull @Getter private final Class<T> type;
+
+  @NotNull private final MethodHandle constructor;
+  @NotNull private final Map<String, Property> properties;
+
+  // Bindings keyed by the column labels of a query, as the same queries are run repeatedly.
+  @NotNull private final Map<String, Binding> bindings = new ConcurrentHashMap<>();
+
+  private RowMapper(@NotNull final Class<T> type) {
+    this.type = type;
+    this.constructor = resolveConstructor(type);
+    this.properties = resolveProperties(type);
+  }
+
+  /**
+   * Gets the mapper of the provided type. The type must have a constructor without parameters,
+   * which may be private.
+   *
+   * @param type The mapped type
+   * @param <T>  The mapped type
+   * @return The mapper of the type
+   */
+  @NotNull
+  @SuppressWarnings("unchecked")
+  public static <T> RowMapper<T> of(@NotNull final Class<T> type) {
+    return (RowMapper<T>) MAPPERS.computeIfAbsent(type, RowMapper::new);
+  }
+
+  /**
+   * Gets a handler which maps every row of the result set.
+   *
+   * @return A handler returning the list of mapped rows
+   */
+  @NotNull
+  public SqlFunction<ResultSet, List<T>> list() {
+    return r -> {
+      final Binding binding = this.bind(r);
+      final List<T> rows = new ArrayList<>();
+
+      while (r.next()) {
+        rows.add(this.map(r, binding));
+      }
+
+      return rows;
+    };
+  }
+
+  /**
+   * Gets a handler which maps the first row of the result set.
+   *
+   * @return A handler returning the mapped row, or null if there are no rows
+   */
+  @NotNull
+  public SqlFunction<ResultSet, T> first() {
+    return r -> r.next() ? this.map(r, this.bind(r)) : null;
+  }
+
+  /**
+   * Gets a mapper for the current row of a result set, for use with
+   * {@link ISql#queryStream(String, be.bendem.sqlstreams.util.SqlConsumer, SqlFunction)}.
+   *
+   * <p>The columns are matched on the first row, so the returned function should only be used for
+   * a single query.</p>
+   *
+   * @return A mapper for the current row
+   */
+  @NotNull
+  public SqlFunction<ResultSet, T> row() {
+    final Binding[] binding = new Binding[1];
+
+    return r -> {
+      if (binding[0] == null) {
+        binding[0] = this.bind(r);
+      }
+
+      return this.map(r, binding[0]);
+    };
+  }
+
+  /**
+   * Maps the current row of the result set.
+   *
+   * @param result The result set, positioned on a row
+   * @return The mapped row
+   * @throws SQLException If a column cannot be read or the row cannot be mapped
+   */
+  @NotNull
+  public T map(@NotNull final ResultSet result) throws SQLException {
+    return this.map(result, this.bind(result));
+  }
+
+  @NotNull
+  private T map(@NotNull final ResultSet result, @NotNull final Binding binding)
+      throws SQLException {
+
+    final Object instance;
+
+    try {
+      instance = this.constructor.invokeExact();
+    } catch (final Throwable ex) {
+      throw new SQLException("Failed to create " + this.type.getName(), ex);
+    }
+
+    for (int i = 0; i < binding.columns.length; i++) {
+      final Property property = binding.properties[i];
+      final Object value = property.reader.read(result, binding.columns[i]);
+
+      if (value == null && property.primitive) {
+        continue;
+      }
+
+      try {
+        property.setter.invokeExact(instance, value);
+      } catch (final Throwable ex) {
+        throw new SQLException("Failed to set " + this.type.getName() + "#" + property.name, ex);
+      }
+    }
+
+    return this.type.cast(instance);
+  }
+
+  @NotNull
+  private Binding bind(@NotNull final ResultSet result) throws SQLException {
+
+    final ResultSetMetaData meta = result.getMetaData();
+    final String[] labels = new String[meta.getColumnCount()];
+
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = normalize(meta.getColumnLabel(i + 1));
+    }
+
+    return this.bindings.computeIfAbsent(String.join(",", labels), key -> {
+      final List<Integer> columns = new ArrayList<>();
+      final List<Property> matched = new ArrayList<>();
+
+      for (int i = 0; i < labels.length; i++) {
+        final Property property = this.properties.get(labels[i]);
+
+        if (property != null) {
+          columns.add(i + 1);
+          matched.add(property);
+        }
+      }
+
+      return new Binding(columns.stream().mapToInt(Integer::intValue).toArray(),
+          matched.toArray(new Property[0]));
+    });
+  }
+
+  @NotNull
+  private static MethodHandle resolveConstructor(@NotNull final Class<?> type) {
+
+    try {
+      final Constructor<?> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+
+    } catch (final NoSuchMethodException ex) {
+      throw new IllegalArgumentException(
+          type.getName() + " must have a constructor without parameters", ex);
+    } catch (final IllegalAccessException ex) {
+      throw new IllegalArgumentException("Cannot access constructor of " + type.getName(), ex);
+    }
+  }
+
+  @NotNull
+  private static Map<String, Property> resolveProperties(@NotNull final Class<?> type) {
+
+    final Map<String, Property> properties = new HashMap<>();
+
+    for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+      for (final Field field : current.getDeclaredFields()) {
+
+        final int modifiers = field.getModifiers();
+
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+            || field.isSynthetic()) {
+          continue;
+        }
+
+        final MethodHandle setter;
+
+        try {
+          field.setAccessible(true);
+          setter = MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (final IllegalAccessException | RuntimeException ex) {
+          continue;
+        }
+
+        // Fields declared by subclasses take precedence over hidden fields of superclasses.
+        properties.putIfAbsent(normalize(field.getName()), new Property(field.getName(), setter,
+            field.getType().isPrimitive(), reader(field.getType())));
+      }
+    }
+
+    return properties;
+  }
+
+  @NotNull
+  private static String normalize(@NotNull final String name) {
+    return name.replace("_", "").toLowerCase(Locale.ROOT);
+  }
+
+  @NotNull
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static ColumnReader reader(@NotNull final Class<?> type) {
+
+    if (type == String.class) {
+      return ResultSet::getString;
+    } else if (type == int.class || type == Integer.class) {
+      return nullable(ResultSet::getInt);
+    } else if (type == long.class || type == Long.class) {
+      return nullable(ResultSet::getLong);
+    } else if (type == double.class || type == Double.class) {
+      return nullable(ResultSet::getDouble);
+    } else if (type == float.class || type == Float.class) {
+      return nullable(ResultSet::getFloat);
+    } else if (type == short.class || type == Short.class) {
+      return nullable(ResultSet::getShort);
+    } else if (type == byte.class || type == Byte.class) {
+      return nullable(ResultSet::getByte);
+    } else if (type == boolean.class || type == Boolean.class) {
+      return nullable(ResultSet::getBoolean);
+    } else if (type == BigDecimal.class) {
+      return ResultSet::getBigDecimal;
+    } else if (type == byte[].class) {
+      return ResultSet::getBytes;
+    } else if (type == Timestamp.class) {
+      return ResultSet::getTimestamp;
+    } else if (type == java.util.Date.class) {
+      return (r, i) -> {
+        final Timestamp timestamp = r.getTimestamp(i);
+        return timestamp == null ? null : new java.util.Date(timestamp.getTime());
+      };
+    } else if (type == Instant.class) {
+      return (r, i) -> {
+        final Timestamp timestamp = r.getTimestamp(i);
+        return timestamp == null ? null : timestamp.toInstant();
+      };
+    } else if (type == UUID.class) {
+      return RowMapper::readUuid;
+    } else if (type.isEnum()) {
+      return (r, i) -> {
+        final String name = r.getString(i);
+        return name == null ? null : Enum.valueOf((Class<? extends Enum>) type, name);
+      };
+    }
+
+    return (r, i) -> r.getObject(i, type);
+  }
+
+  @NotNull
+  private static ColumnReader nullable(@NotNull final ColumnReader reader) {
+    return (r, i) -> {
+      final Object value = reader.read(r, i);
+      return r.wasNull() ? null : value;
+    };
+  }
+
+  @Nullable
+  private static UUID readUuid(@NotNull final ResultSet result, final int index)
+      throws SQLException {
+
+    final Object value = result.getObject(index);
+
+    if (value == null || value instanceof UUID) {
+      return (UUID) value;
+    }
+
+    // UUIDs stored as BINARY(16), as well as the usual CHAR(36).
+    if (value instanceof byte[] && ((byte[]) value).length == 16) {
+      final ByteBuffer buffer = ByteBuffer.wrap((byte[]) value);
+      return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    return UUID.fromString(value.toString());
+  }
+
+  @FunctionalInterface
+  private interface ColumnReader {
+
+    @Nullable
+    Object read(@NotNull ResultSet result, int index) throws SQLException;
+  }
+
+  private static final class Property {
+
+    @NotNull private final String name;
+    @NotNull private final MethodHandle setter;
+    private final boolean primitive;
+    @NotNull private final ColumnReader reader;
+
+    private Property(
+        @NotNull final String name,
+        @NotNull final MethodHandle setter,
+        final boolean primitive,
+        @NotNull final ColumnReader reader) {
+      this.name = name;
+      this.setter = setter;
+      this.primitive = primitive;
+      this.reader = reader;
+    }
+  }
+
+  private static final class Binding {
+
+    private final int[] columns;
+    @NotNull private final Property[] properties;
+
+    private Binding(final int[] columns, @NotNull final Property[] properties) {
+      this.columns = columns;
+      this.properties = properties;
+    }
+  }
+}
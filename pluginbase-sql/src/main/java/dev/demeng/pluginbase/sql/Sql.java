@@ -31,17 +31,32 @@ import be.bendem.sqlstreams.util.SqlConsumer;
 import be.bendem.sqlstreams.util.SqlFunction;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.promise.Promise;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import lombok.Getter;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
@@ -60,36 +75,199 @@ public class Sql implements ISql {
   public static final String DEFAULT_JDBC_URL_TAIL = "?autoReconnect=true&useSSL=false";
   public static final String DEFAULT_JDBC_URL = DEFAULT_JDBC_URL_HEAD + DEFAULT_JDBC_URL_TAIL;
 
+  /**
+   * The driver of an embedded SQLite database, stored in the file given as the database name.
+   */
+  public static final String SQLITE_DRIVER = "org.sqlite.JDBC";
+  public static final String SQLITE_JDBC_URL = "jdbc:sqlite:{database}";
+
+  /**
+   * The driver of an embedded H2 database, stored in the file given as the database name (without
+   * the {@code .mv.db} extension).
+   */
+  public static final String H2_DRIVER = "org.h2.Driver";
+  public static final String H2_JDBC_URL =
+      "jdbc:h2:file:{database};MODE=MySQL;DATABASE_TO_LOWER=TRUE;CACHE_SIZE=65536";
+
+  /**
+   * The default number of rows fetched at a time by {@link #queryStream(String, SqlConsumer,
+   * SqlFunction, int)}, using a server-side cursor.
+   */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  /**
+   * A fetch size instructing the MySQL driver to stream rows one at a time rather than using a
+   * cursor. The connection cannot be used for other statements while the stream is open. Embedded
+   * databases ignore it.
+   */
+  public static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
   private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
 
   private static final int MAXIMUM_POOL_SIZE = (Runtime.getRuntime().availableProcessors() * 2) + 1;
   private static final int MINIMUM_IDLE = Math.min(MAXIMUM_POOL_SIZE, 10);
+  private static final int EMBEDDED_READERS = Math.min(MAXIMUM_POOL_SIZE, 4);
+
+  private static final int EXECUTOR_QUEUE_PER_THREAD = 64;
+
+  private static final int TRANSACTION_ATTEMPTS = 5;
+  private static final long TRANSACTION_BACKOFF = 20;
+  private static final long TRANSACTION_MAX_BACKOFF = TimeUnit.SECONDS.toMillis(1);
 
   private static final long MAX_LIFETIME = TimeUnit.MINUTES.toMillis(30);
   private static final long CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+  // Replicas have the primary to fall back to, so a dead one should not hold up every read.
+  private static final long REPLICA_CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(2);
+  private static final long REPLICA_COOLDOWN = TimeUnit.SECONDS.toNanos(30);
 
   @NotNull @Getter private final HikariDataSource source;
   @NotNull @Getter private final SqlStream stream;
 
+  @NotNull @Getter private final List<HikariDataSource> replicas;
+  @NotNull @Getter private final ReplicaBalancing balancing;
+  @NotNull @Getter private final SqlMetrics metrics;
+  @NotNull @Getter private final SqlExecutor executor;
+  @NotNull @Getter private final StatementRegistry statements = new StatementRegistry(this);
+
+  @NotNull private final AtomicInteger replicaCounter = new AtomicInteger();
+  // The System.nanoTime() until which each replica is skipped after failing to connect, or 0.
+  @NotNull private final AtomicLongArray replicaCooldowns;
+  @NotNull private final ISql primaryView = new PrimaryView();
+
+  @NotNull private final List<WriteBehindQueue> writeBehindQueues = new CopyOnWriteArrayList<>();
+
+  private final boolean embedded;
+  // The transaction running on each thread, which calls made from within its work join.
+  @NotNull private final ThreadLocal<ActiveTransaction> transactions = new ThreadLocal<>();
+
   /**
    * Creates a new SQL database manager instance with the optimized settings. Initializes a new
    * Hikari data source and SQL stream.
    *
+   * <p>If the driver is {@link #SQLITE_DRIVER} or {@link #H2_DRIVER}, the database is embedded
+   * and stored in the file named by the credentials' database, which can be created using
+   * {@link SqlCredentials#ofFile(java.io.File)}. Embedded databases use a single writer connection
+   * for executions, batches and transactions, and a separate pool of reader connections for
+   * queries. Calls made from within a transaction's work use the transaction's connection, so
+   * they do not wait for the writer connection the transaction holds.</p>
+   *
    * @param driverClass The driver class name (ex. com.mysql.cj.jdbc.Driver)
-   * @param jdbcUrl     The JDBC URL, or null for the default URL
+   * @param jdbcUrl     The JDBC URL, or null for the default URL of the driver
    * @param credentials The database credentials
    */
   public Sql(
       @Nullable final String driverClass,
       @Nullable final String jdbcUrl,
       @NotNull final SqlCredentials credentials) {
+    this(driverClass, jdbcUrl, credentials, Collections.emptyList(),
+        ReplicaBalancing.ROUND_ROBIN);
+  }
+
+  /**
+   * Creates a new SQL database manager instance with the optimized settings and a separate
+   * connection pool for each read replica.
+   *
+   * <p>Queries are routed to the replicas using the provided balancing strategy, falling back to
+   * the primary if a replica cannot provide a connection. A replica which fails to provide a
+   * connection is skipped for the next 30 seconds. Executions and batches always use the
+   * primary. Use {@link #primary()} for queries that must see the caller's own writes.</p>
+   *
+   * @param driverClass The driver class name (ex. com.mysql.cj.jdbc.Driver)
+   * @param jdbcUrl     The JDBC URL, or null for the default URL
+   * @param credentials The primary database credentials
+   * @param replicas    The credentials of each read replica, may be empty
+   * @param balancing   The strategy used to pick a replica for each query
+   */
+  public Sql(
+      @Nullable final String driverClass,
+      @Nullable final String jdbcUrl,
+      @NotNull final SqlCredentials credentials,
+      @NotNull final List<SqlCredentials> replicas,
+      @NotNull final ReplicaBalancing balancing) {
+
+    final String driver = Common.getOrDefault(driverClass, MYSQL_DRIVER);
+    final boolean embedded = isEmbedded(driver);
+    this.embedded = embedded;
+
+    if (embedded && !replicas.isEmpty()) {
+      throw new IllegalArgumentException("Embedded databases cannot have replicas");
+    }
+
+    final String poolName = Common.getName() + "-" + POOL_COUNTER.getAndIncrement();
+    this.source = createSource(driver, jdbcUrl, credentials, poolName,
+        embedded ? 1 : MAXIMUM_POOL_SIZE, CONNECTION_TIMEOUT);
+
+    final List<HikariDataSource> replicaSources = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < replicas.size(); i++) {
+        replicaSources.add(createSource(driver, jdbcUrl, replicas.get(i),
+            poolName + "-replica-" + i, MAXIMUM_POOL_SIZE, REPLICA_CONNECTION_TIMEOUT));
+      }
+
+      // Embedded engines allow a single writer at a time, but readers do not block it, so queries
+      // are routed to a reader pool the same way they would be to a replica.
+      if (embedded) {
+        replicaSources.add(createSource(driver, jdbcUrl, credentials, poolName + "-reader",
+            EMBEDDED_READERS, CONNECTION_TIMEOUT));
+      }
+
+      this.stream = SqlStream.connect(this.source);
+
+    } catch (final RuntimeException ex) {
+      // Pools already started would otherwise keep their connections and threads open.
+      for (final HikariDataSource replica : replicaSources) {
+        replica.close();
+      }
+
+      this.source.close();
+      throw ex;
+    }
+
+    this.replicas = Collections.unmodifiableList(replicaSources);
+    this.replicaCooldowns = new AtomicLongArray(replicaSources.size());
+    this.balancing = balancing;
+    this.metrics = new SqlMetrics(this.source, this.replicas);
+
+    int threads = this.source.getMaximumPoolSize();
+    for (final HikariDataSource replica : this.replicas) {
+      threads += replica.getMaximumPoolSize();
+    }
+
+    this.executor = new SqlExecutor(poolName, threads, threads * EXECUTOR_QUEUE_PER_THREAD);
+  }
+
+  private static boolean isEmbedded(@NotNull final String driverClass) {
+    return driverClass.equals(SQLITE_DRIVER) || driverClass.equals(H2_DRIVER);
+  }
+
+  @NotNull
+  private static HikariDataSource createSource(
+      @NotNull final String driverClass,
+      @Nullable final String jdbcUrl,
+      @NotNull final SqlCredentials credentials,
+      @NotNull final String poolName,
+      final int poolSize,
+      final long connectionTimeout) {
 
     final HikariConfig hikari = new HikariConfig();
 
-    hikari.setPoolName(Common.getName() + "-" + POOL_COUNTER.getAndIncrement());
+    hikari.setPoolName(poolName);
+
+    final String defaultUrl;
+    switch (driverClass) {
+      case SQLITE_DRIVER:
+        defaultUrl = SQLITE_JDBC_URL;
+        break;
+      case H2_DRIVER:
+        defaultUrl = H2_JDBC_URL;
+        break;
+      default:
+        defaultUrl = DEFAULT_JDBC_URL;
+    }
 
-    hikari.setDriverClassName(Common.getOrDefault(driverClass, MYSQL_DRIVER));
-    hikari.setJdbcUrl(Common.getOrDefault(jdbcUrl, DEFAULT_JDBC_URL)
+    hikari.setDriverClassName(driverClass);
+    hikari.setJdbcUrl(Common.getOrDefault(jdbcUrl, defaultUrl)
         .replace("{host}", credentials.getHost())
         .replace("{port}", "" + credentials.getPort())
         .replace("{database}", credentials.getDatabase()));
@@ -97,35 +275,54 @@ public class Sql implements ISql {
     hikari.setUsername(credentials.getUser());
     hikari.setPassword(credentials.getPassword());
 
-    hikari.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
-    hikari.setMinimumIdle(MINIMUM_IDLE);
+    hikari.setMaximumPoolSize(poolSize);
+    hikari.setMinimumIdle(Math.min(poolSize, MINIMUM_IDLE));
 
     hikari.setMaxLifetime(MAX_LIFETIME);
-    hikari.setConnectionTimeout(CONNECTION_TIMEOUT);
+    hikari.setConnectionTimeout(connectionTimeout);
+
+    if (isEmbedded(driverClass)) {
+      // Embedded connections are cheap to keep open and costly to reopen (caches are per
+      // connection), so they are never retired.
+      hikari.setMaxLifetime(0);
+      hikari.setIdleTimeout(0);
+    }
 
     final Map<String, String> properties = new HashMap<>();
-    properties.put("useUnicode", "true");
-    properties.put("characterEncoding", "utf8");
-    properties.put("cachePrepStmts", "true");
-    properties.put("prepStmtCacheSize", "250");
-    properties.put("prepStmtCacheSqlLimit", "2048");
-    properties.put("useServerPrepStmts", "true");
-    properties.put("useLocalSessionState", "true");
-    properties.put("rewriteBatchedStatements", "true");
-    properties.put("cacheResultSetMetadata", "true");
-    properties.put("cacheServerConfiguration", "true");
-    properties.put("elideSetAutoCommits", "true");
-    properties.put("maintainTimeStats", "false");
-    properties.put("alwaysSendSetIsolation", "false");
-    properties.put("cacheCallableStmts", "true");
-    properties.put("socketTimeout", String.valueOf(TimeUnit.SECONDS.toMillis(30)));
+
+    if (driverClass.equals(SQLITE_DRIVER)) {
+      // Pragmas applied by the SQLite driver to every connection it opens.
+      properties.put("journal_mode", "WAL");
+      properties.put("synchronous", "NORMAL");
+      properties.put("busy_timeout", String.valueOf(CONNECTION_TIMEOUT));
+      properties.put("foreign_keys", "true");
+      properties.put("temp_store", "MEMORY");
+      properties.put("cache_size", "-16384");
+
+    } else if (!driverClass.equals(H2_DRIVER)) {
+      properties.put("useUnicode", "true");
+      properties.put("characterEncoding", "utf8");
+      properties.put("cachePrepStmts", "true");
+      properties.put("prepStmtCacheSize", "250");
+      properties.put("prepStmtCacheSqlLimit", "2048");
+      properties.put("useServerPrepStmts", "true");
+      properties.put("useLocalSessionState", "true");
+      properties.put("rewriteBatchedStatements", "true");
+      properties.put("cacheResultSetMetadata", "true");
+      properties.put("cacheServerConfiguration", "true");
+      properties.put("elideSetAutoCommits", "true");
+      properties.put("maintainTimeStats", "false");
+      properties.put("alwaysSendSetIsolation", "false");
+      properties.put("cacheCallableStmts", "true");
+      properties.put("useCursorFetch", "true");
+      properties.put("socketTimeout", String.valueOf(TimeUnit.SECONDS.toMillis(30)));
+    }
 
     for (final Map.Entry<String, String> property : properties.entrySet()) {
       hikari.addDataSourceProperty(property.getKey(), property.getValue());
     }
 
-    this.source = new HikariDataSource(hikari);
-    this.stream = SqlStream.connect(this.source);
+    return new HikariDataSource(hikari);
   }
 
   @NotNull
@@ -137,7 +334,107 @@ public class Sql implements ISql {
   @NotNull
   @Override
   public Connection getConnection() throws SQLException {
-    return Objects.requireNonNull(this.source.getConnection(), "Connection is null");
+
+    final ActiveTransaction active = this.transactions.get();
+
+    if (active != null) {
+      return active.view;
+    }
+
+    final long start = System.nanoTime();
+    final Connection connection =
+        Objects.requireNonNull(this.source.getConnection(), "Connection is null");
+    this.metrics.poolAcquired(-1, System.nanoTime() - start);
+    return connection;
+  }
+
+  /**
+   * Gets a connection for a read-only query, from a replica if any are configured.
+   *
+   * <p>If the selected replica cannot provide a connection, a connection from the primary is
+   * returned instead, and the replica is skipped until its cooldown has passed. Within a
+   * transaction's work, the transaction's connection is returned so its own writes are visible.
+   * The connection should be returned once it has been used.</p>
+   *
+   * @return A connection
+   * @throws SQLException If the primary cannot provide a connection either
+   */
+  @NotNull
+  public Connection getReadConnection() throws SQLException {
+
+    if (this.replicas.isEmpty() || this.transactions.get() != null) {
+      return this.getConnection();
+    }
+
+    final int index = this.selectReplica();
+
+    if (index < 0) {
+      return this.getConnection();
+    }
+
+    try {
+      final long start = System.nanoTime();
+      final Connection connection = Objects.requireNonNull(
+          this.replicas.get(index).getConnection(), "Connection is null");
+      this.metrics.poolAcquired(index, System.nanoTime() - start);
+      return connection;
+    } catch (final SQLException ex) {
+      // Avoid zero, which marks a healthy replica.
+      this.replicaCooldowns.set(index, (System.nanoTime() + REPLICA_COOLDOWN) | 1);
+      return this.getConnection();
+    }
+  }
+
+  private int selectReplica() {
+
+    final long now = System.nanoTime();
+    final int offset = Math.floorMod(this.replicaCounter.getAndIncrement(), this.replicas.size());
+
+    // Start from a rotating offset so ties are spread across replicas.
+    int best = -1;
+    int bestLoad = Integer.MAX_VALUE;
+
+    for (int i = 0; i < this.replicas.size(); i++) {
+      final int index = (offset + i) % this.replicas.size();
+      final long cooldown = this.replicaCooldowns.get(index);
+
+      if (cooldown != 0) {
+        if (cooldown - now > 0) {
+          continue;
+        }
+
+        // Only one caller retries the replica once its cooldown has passed.
+        if (!this.replicaCooldowns.compareAndSet(index, cooldown, 0)) {
+          continue;
+        }
+      }
+
+      if (this.balancing == ReplicaBalancing.ROUND_ROBIN) {
+        return index;
+      }
+
+      final HikariPoolMXBean bean = this.replicas.get(index).getHikariPoolMXBean();
+      final int load = bean == null ? 0
+          : bean.getActiveConnections() + bean.getThreadsAwaitingConnection();
+
+      if (load < bestLoad) {
+        best = index;
+        bestLoad = load;
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Gets a view of this database that routes every query to the primary. Use this for queries
+   * that must observe writes made immediately before them.
+   *
+   * @return A view of this database pinned to the primary
+   */
+  @NotNull
+  public ISql primary() {
+    return this.replicas.isEmpty() ? this : this.primaryView;
   }
 
   @NotNull
@@ -146,15 +443,42 @@ public class Sql implements ISql {
     return this.stream;
   }
 
+  /**
+   * Supplies a promise using the result of the supplier, executed on this database's bounded
+   * {@link SqlExecutor}. If the executor's queue is full, the promise completes exceptionally with
+   * a {@link java.util.concurrent.RejectedExecutionException} rather than blocking the caller.
+   *
+   * @param supplier The supplier
+   * @param <T>      The result type
+   * @return A promise of the supplier's result
+   */
+  @NotNull
+  @Override
+  public <T> Promise<T> supplyAsync(@NotNull final Supplier<T> supplier) {
+    return this.executor.supply(supplier);
+  }
+
   @Override
   public void execute(@Language("SQL") @NotNull final String statement,
       @NotNull final SqlConsumer<PreparedStatement> preparer) {
+    final SqlMetrics.Recorder recorder = this.metrics.recorder(statement);
+    final long start = System.nanoTime();
+
     try (final Connection c = this.getConnection();
         final PreparedStatement s = c.prepareStatement(statement)) {
+      final long acquired = recorder.acquired(start);
       preparer.accept(s);
       s.execute();
+      recorder.executed(acquired, Math.max(0, s.getUpdateCount()));
     } catch (final SQLException ex) {
+      recorder.failed();
       Common.error(ex, "Failed to execute SQL statement.", false);
+
+      // A transaction the statement joined must not commit without it.
+      final ActiveTransaction active = this.transactions.get();
+      if (active != null) {
+        active.rollbackOnly = true;
+      }
     }
   }
 
@@ -162,39 +486,342 @@ public class Sql implements ISql {
   public <R> @NotNull Optional<R> query(@Language("SQL") @NotNull final String query,
       @NotNull final SqlConsumer<PreparedStatement> preparer,
       @NotNull final SqlFunction<ResultSet, R> handler) {
-    try (final Connection c = this.getConnection();
+    return this.query(false, query, preparer, handler);
+  }
+
+  @NotNull
+  private <R> Optional<R> query(final boolean primary, @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> handler) {
+    final SqlMetrics.Recorder recorder = this.metrics.recorder(query);
+    final long start = System.nanoTime();
+
+    try (final Connection c = primary ? this.getConnection() : this.getReadConnection();
         final PreparedStatement s = c.prepareStatement(query)) {
+      final long acquired = recorder.acquired(start);
       preparer.accept(s);
       try (final ResultSet r = s.executeQuery()) {
-        return Optional.ofNullable(handler.apply(r));
+        final AtomicLong rows = new AtomicLong();
+        final R result = handler.apply(recorder.countRows(r, rows));
+        recorder.executed(acquired, rows.get());
+        return Optional.ofNullable(result);
       }
     } catch (final SQLException ex) {
+      recorder.failed();
       Common.error(ex, "Failed to query SQL statement.", false);
       return Optional.empty();
     }
   }
 
   @Override
-  public void executeBatch(@NotNull final BatchBuilder builder) {
+  public <R> @NotNull Stream<R> queryStream(@Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> mapper,
+      final int fetchSize) {
+    return this.queryStream(false, query, preparer, mapper, fetchSize);
+  }
+
+  @NotNull
+  private <R> Stream<R> queryStream(final boolean primary, @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> mapper,
+      final int fetchSize) {
+
+    final SqlMetrics.Recorder recorder = this.metrics.recorder(query);
+    final long start = System.nanoTime();
+    Connection c = null;
+    PreparedStatement s = null;
+
+    try {
+      c = primary ? this.getConnection() : this.getReadConnection();
+      final long acquired = recorder.acquired(start);
+      s = c.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+      // Negative sizes, such as STREAMING_FETCH_SIZE, are MySQL-specific and rejected by embedded
+      // drivers.
+      if (fetchSize >= 0 || !this.embedded) {
+        s.setFetchSize(fetchSize);
+      }
+
+      preparer.accept(s);
+
+      final ResultSet r = s.executeQuery();
+      final ResultSetSpliterator<R> spliterator = new ResultSetSpliterator<>(c, s, r, mapper,
+          recorder, System.nanoTime() - acquired);
+      return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
 
-    if (builder.getHandlers().isEmpty()) {
-      return;
+    } catch (final SQLException ex) {
+      recorder.failed();
+      Common.error(ex, "Failed to stream SQL query.", false);
+      closeQuietly(s);
+      closeQuietly(c);
+      return Stream.empty();
+
+    } catch (final RuntimeException ex) {
+      recorder.failed();
+      closeQuietly(s);
+      closeQuietly(c);
+      throw ex;
     }
+  }
 
-    if (builder.getHandlers().size() == 1) {
-      this.execute(builder.getStatement(), builder.getHandlers().iterator().next());
-      return;
+  @Override
+  public void executeBatch(@NotNull final BatchBuilder builder) {
+    for (final BatchResult.Chunk chunk : this.executeBatchWithResult(builder).getFailedChunks()) {
+      Common.error(chunk.getError(), "Failed to batch execute SQL statement.", false);
     }
+  }
+
+  @Override
+  public @NotNull BatchResult executeBatchWithResult(@NotNull final BatchBuilder builder) {
+
+    final int rows = builder.getRowCount();
+
+    if (rows == 0) {
+      return new BatchResult(Collections.emptyList());
+    }
+
+    final int chunkSize = builder.getChunkSize();
+    final int chunkCount = (rows + chunkSize - 1) / chunkSize;
+    final boolean atomic = builder.isAtomic();
+
+    final BatchResult.Status[] statuses = new BatchResult.Status[chunkCount];
+    final SQLException[] errors = new SQLException[chunkCount];
+    Arrays.fill(statuses, BatchResult.Status.SKIPPED);
+
+    final SqlMetrics.Recorder recorder = this.metrics.recorder(builder.getStatement());
+    final long start = System.nanoTime();
+    long acquired = start;
+    long affected = 0;
+    boolean failed = false;
 
     try (final Connection c = this.getConnection();
         final PreparedStatement s = c.prepareStatement(builder.getStatement())) {
-      for (final SqlConsumer<PreparedStatement> handlers : builder.getHandlers()) {
-        handlers.accept(s);
-        s.addBatch();
+
+      acquired = recorder.acquired(start);
+
+      final boolean autoCommit = c.getAutoCommit();
+      c.setAutoCommit(false);
+
+      // Whether every statement sent so far has been committed or rolled back.
+      boolean settled = false;
+
+      try {
+        for (int index = 0; index < chunkCount && !(failed && atomic); index++) {
+          final int firstRow = index * chunkSize;
+          final int lastRow = Math.min(firstRow + chunkSize, rows);
+
+          try {
+            for (int row = firstRow; row < lastRow; row++) {
+              builder.bind(s, row);
+              s.addBatch();
+            }
+
+            for (final int count : s.executeBatch()) {
+              affected += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+            }
+
+            if (!atomic) {
+              c.commit();
+            }
+
+            statuses[index] = BatchResult.Status.COMMITTED;
+
+          } catch (final SQLException | RuntimeException ex) {
+            failed = true;
+            statuses[index] = BatchResult.Status.FAILED;
+            errors[index] = ex instanceof SQLException ? (SQLException) ex : new SQLException(ex);
+            s.clearBatch();
+            c.rollback();
+          }
+        }
+
+        if (atomic) {
+          if (failed) {
+            for (int index = 0; index < chunkCount; index++) {
+              if (statuses[index] == BatchResult.Status.COMMITTED) {
+                statuses[index] = BatchResult.Status.ROLLED_BACK;
+              }
+            }
+          } else {
+            c.commit();
+          }
+        }
+
+        settled = true;
+
+      } finally {
+        // Restoring auto-commit commits any pending work, so it is rolled back first. If that
+        // fails, the connection is left to the pool, which rolls back and discards it.
+        if (settled || rollbackQuietly(c)) {
+          c.setAutoCommit(autoCommit);
+        }
+      }
+
+    } catch (final SQLException | RuntimeException ex) {
+      failed = true;
+      final SQLException error =
+          ex instanceof SQLException ? (SQLException) ex : new SQLException(ex);
+      // The connection itself failed, so nothing that was not already committed went through.
+      for (int index = 0; index < chunkCount; index++) {
+        if (statuses[index] != BatchResult.Status.FAILED
+            && (atomic || statuses[index] == BatchResult.Status.SKIPPED)) {
+          statuses[index] = BatchResult.Status.FAILED;
+          errors[index] = error;
+        }
+      }
+    }
+
+    if (failed) {
+      recorder.failed();
+    } else {
+      recorder.executed(acquired, affected);
+    }
+
+    final List<BatchResult.Chunk> chunks = new ArrayList<>(chunkCount);
+
+    for (int index = 0; index < chunkCount; index++) {
+      final int firstRow = index * chunkSize;
+      chunks.add(new BatchResult.Chunk(index, firstRow, Math.min(chunkSize, rows - firstRow),
+          statuses[index], errors[index]));
+    }
+
+    return new BatchResult(chunks);
+  }
+
+  private static boolean rollbackQuietly(@NotNull final Connection connection) {
+    try {
+      connection.rollback();
+      return true;
+    } catch (final SQLException ex) {
+      return false;
+    }
+  }
+
+  private static boolean restoreQuietly(
+      @NotNull final Connection connection,
+      final boolean autoCommit,
+      @NotNull final SqlTransaction.Isolation isolation,
+      final int previousIsolation,
+      @Nullable final Exception failure) {
+
+    try {
+      connection.setAutoCommit(autoCommit);
+      if (isolation != SqlTransaction.Isolation.DEFAULT) {
+        connection.setTransactionIsolation(previousIsolation);
       }
-      s.executeBatch();
+      return true;
+
     } catch (final SQLException ex) {
-      Common.error(ex, "Failed to batch execute SQL statement.", false);
+      // Never replaces the error that ended the transaction.
+      if (failure != null) {
+        failure.addSuppressed(ex);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Calls made through this database from within the work, on the same thread, join the
+   * transaction and use its connection. A nested transaction runs as part of the outer one, and
+   * a nested execution, batch chunk or transaction which fails causes the outer transaction to be
+   * rolled back once its work completes.</p>
+   */
+  @Override
+  public <R> @NotNull Optional<R> transaction(
+      @NotNull final SqlTransaction.Isolation isolation,
+      @NotNull final SqlFunction<SqlTransaction, R> work) {
+
+    final ActiveTransaction current = this.transactions.get();
+
+    if (current != null) {
+      try {
+        return Optional.ofNullable(work.apply(new SqlTransaction(current.connection)));
+      } catch (final SQLException ex) {
+        current.rollbackOnly = true;
+        Common.error(ex, "Failed to execute SQL transaction.", false);
+        return Optional.empty();
+      }
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      try (final Connection c = this.getConnection()) {
+
+        final boolean autoCommit = c.getAutoCommit();
+        final int previousIsolation = c.getTransactionIsolation();
+
+        // Whether the transaction was committed or rolled back, so the connection can be reused.
+        boolean settled = false;
+        Exception failure = null;
+
+        try {
+          if (isolation != SqlTransaction.Isolation.DEFAULT) {
+            c.setTransactionIsolation(isolation.getLevel());
+          }
+
+          c.setAutoCommit(false);
+
+          final ActiveTransaction active = new ActiveTransaction(c);
+          final R result;
+          this.transactions.set(active);
+
+          try {
+            result = work.apply(new SqlTransaction(c));
+          } finally {
+            this.transactions.remove();
+          }
+
+          if (active.rollbackOnly) {
+            throw new SQLException("A call made within the transaction failed");
+          }
+
+          c.commit();
+          settled = true;
+          return Optional.ofNullable(result);
+
+        } catch (final SQLException | RuntimeException ex) {
+          failure = ex;
+
+          try {
+            c.rollback();
+            settled = true;
+          } catch (final SQLException rollbackEx) {
+            ex.addSuppressed(rollbackEx);
+          }
+          throw ex;
+
+        } finally {
+          // Restoring auto-commit commits any pending work, so a connection that could not be
+          // rolled back is discarded instead.
+          if (!settled || !restoreQuietly(c, autoCommit, isolation, previousIsolation, failure)) {
+            this.source.evictConnection(c);
+          }
+        }
+
+      } catch (final SQLException ex) {
+        if (attempt < TRANSACTION_ATTEMPTS && SqlTransaction.isRetryable(ex)
+            && backoff(attempt)) {
+          continue;
+        }
+
+        Common.error(ex, "Failed to execute SQL transaction.", false);
+        return Optional.empty();
+      }
+    }
+  }
+
+  private static boolean backoff(final int attempt) {
+    // Full jitter, so that transactions which deadlocked each other do not retry in lockstep.
+    final long ceiling = Math.min(TRANSACTION_MAX_BACKOFF, TRANSACTION_BACKOFF << attempt);
+
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+      return true;
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
     }
   }
 
@@ -203,8 +830,177 @@ public class Sql implements ISql {
     return new BatchBuilder(this, statement);
   }
 
+  /**
+   * Creates a new {@link WriteBehindQueue} backed by this database. The queue must be configured
+   * and then {@link WriteBehindQueue#start() started} before writes can be queued.
+   *
+   * <p>All queues created by this method are flushed when this database is closed.</p>
+   *
+   * @return A new, unstarted write-behind queue
+   */
+  @NotNull
+  public WriteBehindQueue writeBehind() {
+    final WriteBehindQueue queue = new WriteBehindQueue(this);
+    this.writeBehindQueues.add(queue);
+    return queue;
+  }
+
+  private static void closeQuietly(@Nullable final AutoCloseable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (final Exception ignored) {
+      }
+    }
+  }
+
   @Override
   public void close() {
+
+    for (final WriteBehindQueue queue : this.writeBehindQueues) {
+      queue.close();
+    }
+
+    this.writeBehindQueues.clear();
+    this.executor.close();
     this.source.close();
+
+    for (final HikariDataSource replica : this.replicas) {
+      replica.close();
+    }
+  }
+
+  /**
+   * The strategy used to pick a replica for each query.
+   */
+  public enum ReplicaBalancing {
+    /**
+     * Cycles through the replicas in order.
+     */
+    ROUND_ROBIN,
+    /**
+     * Picks the replica with the fewest active connections and waiting threads.
+     */
+    LEAST_PENDING
+  }
+
+  /**
+   * A view of the database that routes queries to the primary instead of the replicas.
+   */
+  /**
+   * A transaction in progress on a thread. Calls that join it are given a view of its connection
+   * which leaves closing, committing and rolling back to the transaction itself.
+   */
+  private static final class ActiveTransaction {
+
+    @NotNull private final Connection connection;
+    @NotNull private final Connection view;
+    private volatile boolean rollbackOnly;
+
+    private ActiveTransaction(@NotNull final Connection connection) {
+      this.connection = connection;
+      this.view = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "close":
+              case "commit":
+              case "setAutoCommit":
+              case "setTransactionIsolation":
+                return null;
+              case "rollback":
+                if (args == null) {
+                  this.rollbackOnly = true;
+                  return null;
+                }
+                break;
+              default:
+                break;
+            }
+
+            try {
+              return method.invoke(connection, args);
+            } catch (final InvocationTargetException ex) {
+              throw ex.getCause();
+            }
+          });
+    }
+  }
+
+  private final class PrimaryView implements ISql {
+
+    @NotNull
+    @Override
+    public HikariDataSource getHikari() {
+      return Sql.this.getHikari();
+    }
+
+    @NotNull
+    @Override
+    public Connection getConnection() throws SQLException {
+      return Sql.this.getConnection();
+    }
+
+    @NotNull
+    @Override
+    public SqlStream stream() {
+      return Sql.this.stream();
+    }
+
+    @NotNull
+    @Override
+    public <T> Promise<T> supplyAsync(@NotNull final Supplier<T> supplier) {
+      return Sql.this.supplyAsync(supplier);
+    }
+
+    @Override
+    public void execute(@Language("SQL") @NotNull final String statement,
+        @NotNull final SqlConsumer<PreparedStatement> preparer) {
+      Sql.this.execute(statement, preparer);
+    }
+
+    @Override
+    public <R> @NotNull Optional<R> query(@Language("SQL") @NotNull final String query,
+        @NotNull final SqlConsumer<PreparedStatement> preparer,
+        @NotNull final SqlFunction<ResultSet, R> handler) {
+      return Sql.this.query(true, query, preparer, handler);
+    }
+
+    @Override
+    public <R> @NotNull Stream<R> queryStream(@Language("SQL") @NotNull final String query,
+        @NotNull final SqlConsumer<PreparedStatement> preparer,
+        @NotNull final SqlFunction<ResultSet, R> mapper,
+        final int fetchSize) {
+      return Sql.this.queryStream(true, query, preparer, mapper, fetchSize);
+    }
+
+    @Override
+    public void executeBatch(@NotNull final BatchBuilder builder) {
+      Sql.this.executeBatch(builder);
+    }
+
+    @Override
+    public @NotNull BatchResult executeBatchWithResult(@NotNull final BatchBuilder builder) {
+      return Sql.this.executeBatchWithResult(builder);
+    }
+
+    @Override
+    public <R> @NotNull Optional<R> transaction(
+        @NotNull final SqlTransaction.Isolation isolation,
+        @NotNull final SqlFunction<SqlTransaction, R> work) {
+      return Sql.this.transaction(isolation, work);
+    }
+
+    @Override
+    public @NotNull BatchBuilder batch(@Language("SQL") @NotNull final String statement) {
+      return Sql.this.batch(statement);
+    }
+
+    /**
+     * Does nothing, as the view shares the lifecycle of the database it was created from.
+     */
+    @Override
+    public void close() {
+      // Closing the view must not close the underlying pools.
+    }
   }
 }
@@ -24,6 +24,7 @@
 
 package dev.demeng.pluginbase.sql;
 
+import java.io.File;
 import lombok.Data;
 import org.bukkit.configuration.ConfigurationSection;
 import org.jetbrains.annotations.NotNull;
@@ -59,6 +60,18 @@ public final class SqlCredentials {
    */
   @NotNull private final String password;
 
+  /**
+   * Gets the credentials of an embedded database stored in the provided file, for use with
+   * {@link Sql#SQLITE_DRIVER} or {@link Sql#H2_DRIVER}.
+   *
+   * @param file The database file
+   * @return The database credentials of the file
+   */
+  @NotNull
+  public static SqlCredentials ofFile(@NotNull final File file) {
+    return new SqlCredentials("localhost", 0, file.getAbsolutePath(), "", "");
+  }
+
   /**
    * Gets database credentials from a configuration section.
    *
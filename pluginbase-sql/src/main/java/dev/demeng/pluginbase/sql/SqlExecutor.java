@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A bounded executor dedicated to database work. Uses a fixed number of threads, sized to the
+ * connection pool, and a bounded queue, so that a slow database cannot cause an unbounded number of
+ * threads to pile up waiting for connections.
+ *
+ * <p>Tasks submitted while the queue is full are rejected immediately, completing their
+ * {@link Promise} exceptionally with a {@link RejectedExecutionException}.</p>
+ */
+public final class SqlExecutor implements Executor, Terminable {
+
+  private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+  @NotNull private final ThreadPoolExecutor executor;
+  @NotNull private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * The maximum number of tasks that may wait for a thread.
+   */
+  @Getter private final int queueCapacity;
+
+  /**
+   * Creates a new bounded executor.
+   *
+   * @param name          The name used as a prefix for the executor's threads
+   * @param threads       The number of threads, typically the size of the connection pool
+   * @param queueCapacity The maximum number of tasks that may wait for a thread
+   */
+  public SqlExecutor(@NotNull final String name, final int threads, final int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+    this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat(name + "-sql-%d")
+            .build(),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void execute(@NotNull final Runnable runnable) {
+    try {
+      this.executor.execute(runnable);
+    } catch (final RejectedExecutionException ex) {
+      this.rejected.incrementAndGet();
+      throw ex;
+    }
+  }
+
+  /**
+   * Supplies a promise using the result of the supplier, executed on this executor.
+   *
+   * @param supplier The supplier
+   * @param <T>      The result type
+   * @return A promise completed with the result, or exceptionally if the supplier threw or the task
+   * was rejected
+   */
+  @NotNull
+  public <T> Promise<T> supply(@NotNull final Supplier<T> supplier) {
+    final Promise<T> promise = Promise.empty();
+
+    try {
+      execute(() -> {
+        try {
+          promise.supply(supplier.get());
+        } catch (final Throwable t) {
+          promise.supplyException(t);
+        }
+      });
+    } catch (final RejectedExecutionException ex) {
+      promise.supplyException(ex);
+    }
+
+    return promise;
+  }
+
+  /**
+   * Gets the number of tasks waiting for a thread.
+   *
+   * @return The queue depth
+   */
+  public int getQueueDepth() {
+    return this.executor.getQueue().size();
+  }
+
+  /**
+   * Gets the number of threads currently executing a task.
+   *
+   * @return The number of active threads
+   */
+  public int getActiveThreads() {
+    return this.executor.getActiveCount();
+  }
+
+  /**
+   * Gets the maximum number of threads.
+   *
+   * @return The maximum number of threads
+   */
+  public int getMaximumThreads() {
+    return this.executor.getMaximumPoolSize();
+  }
+
+  /**
+   * Gets the approximate number of tasks that have completed.
+   *
+   * @return The number of completed tasks
+   */
+  public long getCompletedTasks() {
+    return this.executor.getCompletedTaskCount();
+  }
+
+  /**
+   * Gets the number of tasks rejected because the queue was full or the executor was closed.
+   *
+   * @return The number of rejected tasks
+   */
+  public long getRejectedTasks() {
+    return this.rejected.get();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return this.executor.isShutdown();
+  }
+
+  /**
+   * Stops accepting new tasks and waits for queued tasks to finish, up to a timeout.
+   */
+  @Override
+  public void close() {
+    this.executor.shutdown();
+
+    try {
+      if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        this.executor.shutdownNow();
+      }
+    } catch (final InterruptedException ex) {
+      this.executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
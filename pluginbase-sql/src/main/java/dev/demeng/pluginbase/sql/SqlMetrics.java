@@ -0,0 +1,478 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.demeng.pluginbase.text.Text;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Per-statement instrumentation of an {@link Sql} instance. Records connection acquire time,
+ * execution time and row counts for each normalized statement, logs slow statements, and exposes
+ * everything together with the Hikari pool state through {@link #snapshot()}.
+ *
+ * <p>Statements are normalized by replacing literals with placeholders and collapsing whitespace,
+ * so that statements differing only in inlined values share the same statistics.</p>
+ */
+public final class SqlMetrics {
+
+  /**
+   * The maximum number of distinct normalized statements tracked. Additional statements are
+   * recorded under {@link #OTHER_STATEMENT}.
+   */
+  public static final int MAX_STATEMENTS = 512;
+
+  /**
+   * The key under which statements exceeding {@link #MAX_STATEMENTS} are recorded.
+   */
+  public static final String OTHER_STATEMENT = "<other>";
+
+  @NotNull private final HikariDataSource source;
+  @NotNull private final List<HikariDataSource> replicas;
+  @NotNull private final Map<String, Recorder> byStatement = new ConcurrentHashMap<>();
+  @NotNull private final Map<String, Recorder> byNormalized = new ConcurrentHashMap<>();
+  @NotNull private final Histogram acquireTimes = new Histogram();
+  @NotNull private final Histogram[] replicaAcquireTimes;
+  @NotNull private final Recorder noop = new Recorder(null);
+
+  @Getter private volatile boolean enabled = true;
+  @Getter private volatile long slowQueryThreshold = TimeUnit.MILLISECONDS.toNanos(250);
+
+  SqlMetrics(
+      @NotNull final HikariDataSource source,
+      @NotNull final List<HikariDataSource> replicas) {
+    this.source = source;
+    this.replicas = replicas;
+    this.replicaAcquireTimes = new Histogram[replicas.size()];
+
+    for (int i = 0; i < this.replicaAcquireTimes.length; i++) {
+      this.replicaAcquireTimes[i] = new Histogram();
+    }
+  }
+
+  /**
+   * Sets whether statements should be instrumented. Disabling instrumentation does not clear
+   * statistics that have already been recorded.
+   *
+   * @param enabled True to record statistics
+   * @return this
+   */
+  @NotNull
+  public SqlMetrics withEnabled(final boolean enabled) {
+    this.enabled = enabled;
+    return this;
+  }
+
+  /**
+   * Sets the execution time above which a statement is logged as slow.
+   *
+   * @param threshold The threshold, or 0 to disable the slow query log
+   * @param unit      The unit of the threshold
+   * @return this
+   */
+  @NotNull
+  public SqlMetrics withSlowQueryThreshold(final long threshold, @NotNull final TimeUnit unit) {
+    this.slowQueryThreshold = unit.toNanos(threshold);
+    return this;
+  }
+
+  /**
+   * Clears every recorded statistic.
+   */
+  public void reset() {
+    this.byStatement.clear();
+    this.byNormalized.clear();
+    this.acquireTimes.reset();
+
+    for (final Histogram histogram : this.replicaAcquireTimes) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Records the time taken to acquire a connection from one of the pools.
+   *
+   * @param replica The index of the replica pool, or -1 for the primary pool
+   * @param nanos   The time taken, in nanoseconds
+   */
+  void poolAcquired(final int replica, final long nanos) {
+    if (this.enabled) {
+      (replica < 0 ? this.acquireTimes : this.replicaAcquireTimes[replica]).record(nanos);
+    }
+  }
+
+  /**
+   * Takes a snapshot of the pool state and the statistics of every recorded statement.
+   *
+   * @return The snapshot
+   */
+  @NotNull
+  public Snapshot snapshot() {
+    final List<StatementStatistics> statements = new ArrayList<>();
+
+    for (final Recorder recorder : this.byNormalized.values()) {
+      statements.add(recorder.snapshot());
+    }
+
+    // Hottest statements first, by total time spent executing.
+    statements.sort(Comparator.comparingLong(
+        (StatementStatistics stats) -> stats.getExecuteNanos().getSum()).reversed());
+
+    final List<PoolStatistics> replicaPools = new ArrayList<>(this.replicas.size());
+    for (int i = 0; i < this.replicas.size(); i++) {
+      replicaPools.add(pool(this.replicas.get(i), this.replicaAcquireTimes[i].snapshot()));
+    }
+
+    return new Snapshot(pool(this.source, this.acquireTimes.snapshot()),
+        Collections.unmodifiableList(replicaPools), Collections.unmodifiableList(statements));
+  }
+
+  @NotNull
+  private static PoolStatistics pool(
+      @NotNull final HikariDataSource source,
+      @NotNull final Histogram.Snapshot acquireNanos) {
+    final HikariPoolMXBean bean = source.getHikariPoolMXBean();
+
+    if (bean == null) {
+      return new PoolStatistics(source.getPoolName(), 0, 0, 0, 0, source.getMaximumPoolSize(),
+          acquireNanos);
+    }
+
+    return new PoolStatistics(source.getPoolName(), bean.getActiveConnections(),
+        bean.getIdleConnections(), bean.getTotalConnections(),
+        bean.getThreadsAwaitingConnection(), source.getMaximumPoolSize(), acquireNanos);
+  }
+
+  /**
+   * Gets the recorder for the given statement, or a no-op recorder if instrumentation is
+   * disabled.
+   *
+   * @param statement The raw statement
+   * @return The recorder
+   */
+  @NotNull
+  Recorder recorder(@NotNull final String statement) {
+
+    if (!this.enabled) {
+      return this.noop;
+    }
+
+    final Recorder cached = this.byStatement.get(statement);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    final String normalized = this.byNormalized.size() < MAX_STATEMENTS
+        ? normalize(statement) : OTHER_STATEMENT;
+    final Recorder recorder = this.byNormalized.computeIfAbsent(normalized, Recorder::new);
+
+    if (this.byStatement.size() < MAX_STATEMENTS * 4) {
+      this.byStatement.put(statement, recorder);
+    }
+
+    return recorder;
+  }
+
+  /**
+   * Normalizes a statement by replacing string and numeric literals with {@code ?}, collapsing
+   * placeholder lists and collapsing whitespace.
+   *
+   * @param statement The raw statement
+   * @return The normalized statement
+   */
+  @NotNull
+  static String normalize(@NotNull final String statement) {
+    final StringBuilder sb = new StringBuilder(statement.length());
+    final int length = statement.length();
+    boolean space = false;
+
+    for (int i = 0; i < length; i++) {
+      final char c = statement.charAt(i);
+
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+        continue;
+      }
+
+      if (space) {
+        sb.append(' ');
+        space = false;
+      }
+
+      if (c == '\'' || c == '"') {
+        // Skip to the closing quote, honouring doubled and backslash-escaped quotes.
+        int j = i + 1;
+        while (j < length) {
+          final char q = statement.charAt(j);
+          if (q == '\\') {
+            j += 2;
+          } else if (q == c && j + 1 < length && statement.charAt(j + 1) == c) {
+            j += 2;
+          } else if (q == c) {
+            break;
+          } else {
+            j++;
+          }
+        }
+        sb.append('?');
+        i = j;
+        continue;
+      }
+
+      final boolean identifierBefore = i > 0
+          && (Character.isLetterOrDigit(statement.charAt(i - 1))
+          || statement.charAt(i - 1) == '_');
+
+      if (Character.isDigit(c) && !identifierBefore) {
+        int j = i;
+        while (j + 1 < length
+            && (Character.isLetterOrDigit(statement.charAt(j + 1))
+            || statement.charAt(j + 1) == '.')) {
+          j++;
+        }
+        sb.append('?');
+        i = j;
+        continue;
+      }
+
+      sb.append(c);
+    }
+
+    return sb.toString().replaceAll("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)", "(?+)");
+  }
+
+  /**
+   * Records the statistics of a single normalized statement.
+   */
+  final class Recorder {
+
+    private final String statement;
+
+    private final Histogram acquireNanos = new Histogram();
+    private final Histogram executeNanos = new Histogram();
+    private final Histogram rows = new Histogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    private Recorder(final String statement) {
+      this.statement = statement;
+    }
+
+    /**
+     * Records the time taken to acquire a connection.
+     *
+     * @param start The value of {@link System#nanoTime()} before the connection was requested
+     * @return The current value of {@link System#nanoTime()}
+     */
+    long acquired(final long start) {
+      final long now = System.nanoTime();
+
+      if (this.statement != null) {
+        final long elapsed = now - start;
+        this.acquireNanos.record(elapsed);
+      }
+
+      return now;
+    }
+
+    /**
+     * Records a successful execution of the statement.
+     *
+     * @param start    The value of {@link System#nanoTime()} before the statement was executed
+     * @param rowCount The number of rows returned or affected
+     */
+    void executed(final long start, final long rowCount) {
+      this.record(System.nanoTime() - start, rowCount);
+    }
+
+    /**
+     * Records a successful execution of the statement.
+     *
+     * @param elapsed  The time taken to execute the statement, in nanoseconds
+     * @param rowCount The number of rows returned or affected
+     */
+    void record(final long elapsed, final long rowCount) {
+
+      if (this.statement == null) {
+        return;
+      }
+
+      this.executeNanos.record(elapsed);
+      this.rows.record(rowCount);
+
+      final long threshold = SqlMetrics.this.slowQueryThreshold;
+      if (threshold > 0 && elapsed > threshold) {
+        Text.log(Level.WARNING, "Slow SQL statement ("
+            + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, " + rowCount + " rows): "
+            + this.statement);
+      }
+    }
+
+    /**
+     * Records a failed execution of the statement.
+     */
+    void failed() {
+      if (this.statement != null) {
+        this.errors.incrementAndGet();
+      }
+    }
+
+    /**
+     * Wraps the result set so that the number of rows read by a handler can be recorded.
+     *
+     * @param resultSet The result set
+     * @param counter   The counter incremented for every row
+     * @return The wrapped result set, or the same result set if instrumentation is disabled
+     */
+    @NotNull
+    ResultSet countRows(@NotNull final ResultSet resultSet, @NotNull final AtomicLong counter) {
+
+      if (this.statement == null) {
+        return resultSet;
+      }
+
+      return new CountingResultSet(resultSet, counter);
+    }
+
+    @NotNull
+    private StatementStatistics snapshot() {
+      return new StatementStatistics(this.statement, this.errors.get(),
+          this.acquireNanos.snapshot(), this.executeNanos.snapshot(), this.rows.snapshot());
+    }
+  }
+
+  /**
+   * A snapshot of the pool state and every recorded statement.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Snapshot {
+
+    /**
+     * The state of the primary connection pool.
+     */
+    @NotNull private final PoolStatistics pool;
+
+    /**
+     * The state of each replica connection pool.
+     */
+    @NotNull private final List<PoolStatistics> replicaPools;
+
+    /**
+     * The statistics of each normalized statement, ordered by total execution time, descending.
+     */
+    @NotNull private final List<StatementStatistics> statements;
+  }
+
+  /**
+   * A snapshot of the state of the Hikari connection pool.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class PoolStatistics {
+
+    /**
+     * The name of the pool.
+     */
+    @NotNull private final String name;
+
+    /**
+     * The number of connections currently in use.
+     */
+    private final int active;
+
+    /**
+     * The number of connections currently idle in the pool.
+     */
+    private final int idle;
+
+    /**
+     * The total number of connections in the pool.
+     */
+    private final int total;
+
+    /**
+     * The number of threads currently waiting for a connection.
+     */
+    private final int pending;
+
+    /**
+     * The maximum size of the pool.
+     */
+    private final int maximum;
+
+    /**
+     * The time taken to acquire a connection from this pool, in nanoseconds.
+     */
+    @NotNull private final Histogram.Snapshot acquireNanos;
+  }
+
+  /**
+   * A snapshot of the statistics of a single normalized statement.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class StatementStatistics {
+
+    /**
+     * The normalized statement.
+     */
+    @NotNull private final String statement;
+
+    /**
+     * The number of failed executions.
+     */
+    private final long errors;
+
+    /**
+     * The time taken to acquire a connection, in nanoseconds.
+     */
+    @NotNull private final Histogram.Snapshot acquireNanos;
+
+    /**
+     * The time taken to execute the statement, in nanoseconds.
+     */
+    @NotNull private final Histogram.Snapshot executeNanos;
+
+    /**
+     * The number of rows returned by queries or affected by updates.
+     */
+    @NotNull private final Histogram.Snapshot rows;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Utilities for extracting the tables referenced by an SQL statement.
+ *
+ * <p>Extraction is based on simple pattern matching of table references, and does not understand
+ * views, stored procedures or triggers.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class SqlTables {
+
+  private static final String TABLE =
+      "((?:[`\"]?[\\w$]+[`\"]?\\s*\\.\\s*)?[`\"]?[\\w$]+[`\"]?)";
+
+  private static final Pattern READ_TABLE = Pattern.compile(
+      "\\b(?:FROM|JOIN)\\s+" + TABLE, Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern COMMA_JOIN = Pattern.compile(
+      "\\bFROM\\s+" + TABLE + "(?:\\s+(?:AS\\s+)?[\\w$]+)?\\s*,", Pattern.CASE_INSENSITIVE);
+
+  private static final String MODIFIERS =
+      "(?:\\s+(?:LOW_PRIORITY|DELAYED|HIGH_PRIORITY|QUICK|IGNORE|OR\\s+[\\w$]+))*";
+
+  private static final Pattern INSERT = Pattern.compile(
+      "^\\s*(?:INSERT|REPLACE|MERGE)" + MODIFIERS + "(?:\\s+INTO)?\\s+" + TABLE,
+      Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern UPDATE = Pattern.compile(
+      "^\\s*UPDATE" + MODIFIERS + "\\s+(.+?)\\s+SET\\b",
+      Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  private static final Pattern DELETE = Pattern.compile(
+      "^\\s*DELETE" + MODIFIERS
+          + "\\s+(.+?)(?:\\s+(?:WHERE|ORDER\\s+BY|LIMIT|RETURNING)\\b|;|$)",
+      Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  // Keywords come first, so a reference such as "FROM t" is not read as a table named FROM.
+  private static final Pattern TABLE_REFERENCE = Pattern.compile(
+      "(?:\\b(?:FROM|USING|JOIN)|,|^)\\s*" + TABLE, Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Gets the tables read by a query.
+   *
+   * @param query The query
+   * @return The tables, or null if they cannot be determined reliably
+   */
+  @Nullable
+  static Set<String> readTables(@NotNull final String query) {
+
+    if (COMMA_JOIN.matcher(query).find()) {
+      return null;
+    }
+
+    final Set<String> tables = collect(READ_TABLE.matcher(query));
+    return tables.isEmpty() ? null : tables;
+  }
+
+  /**
+   * Gets the tables that may be modified by a statement. Only INSERT, REPLACE, MERGE, UPDATE and
+   * DELETE statements are understood, including multi-table UPDATE and DELETE statements, and
+   * aliases or other names in their table list are returned as well.
+   *
+   * @param statement The statement
+   * @return The tables, or null if they cannot be determined, such as for schema changes
+   */
+  @Nullable
+  static Set<String> writtenTables(@NotNull final String statement) {
+
+    final Matcher insert = INSERT.matcher(statement);
+
+    if (insert.find()) {
+      return Collections.singleton(normalize(insert.group(1)));
+    }
+
+    Matcher tableList = UPDATE.matcher(statement);
+
+    if (!tableList.find()) {
+      tableList = DELETE.matcher(statement);
+
+      if (!tableList.find()) {
+        return null;
+      }
+    }
+
+    final Set<String> tables = collect(TABLE_REFERENCE.matcher(tableList.group(1)));
+    return tables.isEmpty() ? null : tables;
+  }
+
+  @NotNull
+  private static Set<String> collect(@NotNull final Matcher matcher) {
+    final Set<String> tables = new LinkedHashSet<>();
+
+    while (matcher.find()) {
+      tables.add(normalize(matcher.group(1)));
+    }
+
+    return tables;
+  }
+
+  @NotNull
+  private static String normalize(@NotNull final String table) {
+    final String unquoted = table.replace("`", "").replace("\"", "").replaceAll("\\s", "");
+    final int dot = unquoted.lastIndexOf('.');
+    return (dot == -1 ? unquoted : unquoted.substring(dot + 1)).toLowerCase(Locale.ROOT);
+  }
+}
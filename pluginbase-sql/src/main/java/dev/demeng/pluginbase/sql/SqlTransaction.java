@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import be.bendem.sqlstreams.util.SqlConsumer;
+import be.bendem.sqlstreams.util.SqlFunction;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import lombok.Getter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A handle to a transaction in progress, passed to the work of
+ * {@link ISql#transaction(SqlTransaction.Isolation, SqlFunction)}. Every statement executed through
+ * the handle uses the same connection and is committed or rolled back together.
+ *
+ * <p>Unlike the methods of {@link ISql}, failures are thrown rather than reported, so that the
+ * transaction can be rolled back and, if the failure was a deadlock, retried.</p>
+ */
+public class SqlTransaction {
+
+  /**
+   * The connection the transaction is running on. Statements executed directly on the connection
+   * are part of the transaction, but are not seen by a {@link CachingSql}.
+   */
+  @NotNull @Getter private final Connection connection;
+
+  @NotNull private final List<String> statements = new ArrayList<>();
+
+  SqlTransaction(@NotNull final Connection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Executes a statement with no preparation as part of the transaction.
+   *
+   * @param statement The statement to be executed
+   * @return The update count, or -1 if the statement returned a result set
+   * @throws SQLException If the statement fails
+   */
+  public int execute(@Language("SQL") @NotNull final String statement) throws SQLException {
+    return this.execute(statement, stmt -> {
+    });
+  }
+
+  /**
+   * Executes a statement with preparation as part of the transaction.
+   *
+   * @param statement The statement to be executed
+   * @param preparer  The preparation used for this statement
+   * @return The update count, or -1 if the statement returned a result set
+   * @throws SQLException If the statement fails
+   */
+  public int execute(
+      @Language("SQL") @NotNull final String statement,
+      @NotNull final SqlConsumer<PreparedStatement> preparer) throws SQLException {
+    this.statements.add(statement);
+
+    try (final PreparedStatement s = this.connection.prepareStatement(statement)) {
+      preparer.accept(s);
+      s.execute();
+      return s.getUpdateCount();
+    }
+  }
+
+  /**
+   * Executes a query with preparation as part of the transaction.
+   *
+   * @param query    The query to be executed
+   * @param preparer The preparation used for this statement
+   * @param handler  The handler for the data returned by the query
+   * @param <R>      The returned type
+   * @return The result of the handler, or empty if it evaluated to null
+   * @throws SQLException If the query fails
+   */
+  @NotNull
+  public <R> Optional<R> query(
+      @Language("SQL") @NotNull final String query,
+      @NotNull final SqlConsumer<PreparedStatement> preparer,
+      @NotNull final SqlFunction<ResultSet, R> handler) throws SQLException {
+
+    try (final PreparedStatement s = this.connection.prepareStatement(query)) {
+      preparer.accept(s);
+      try (final ResultSet r = s.executeQuery()) {
+        return Optional.ofNullable(handler.apply(r));
+      }
+    }
+  }
+
+  /**
+   * Executes a batch as part of the transaction, in chunks of the builder's chunk size. The
+   * builder's atomic setting is ignored, as the whole transaction is atomic.
+   *
+   * @param builder The builder to be used
+   * @return The total update count
+   * @throws SQLException If any chunk fails
+   */
+  public long executeBatch(@NotNull final BatchBuilder builder) throws SQLException {
+    this.statements.add(builder.getStatement());
+
+    final int rows = builder.getRowCount();
+    long affected = 0;
+
+    try (final PreparedStatement s = this.connection.prepareStatement(builder.getStatement())) {
+      for (int firstRow = 0; firstRow < rows; firstRow += builder.getChunkSize()) {
+        final int lastRow = Math.min(firstRow + builder.getChunkSize(), rows);
+
+        for (int row = firstRow; row < lastRow; row++) {
+          builder.bind(s, row);
+          s.addBatch();
+        }
+
+        for (final int count : s.executeBatch()) {
+          affected += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+        }
+      }
+    }
+
+    return affected;
+  }
+
+  /**
+   * Gets the statements executed through this handle, in order.
+   *
+   * @return The executed statements
+   */
+  @NotNull
+  List<String> getStatements() {
+    return Collections.unmodifiableList(this.statements);
+  }
+
+  /**
+   * Checks if a failure is transient and the transaction may succeed if retried, such as a
+   * deadlock or a serialization failure.
+   *
+   * @param ex The failure
+   * @return True if the transaction should be retried
+   */
+  static boolean isRetryable(@NotNull final SQLException ex) {
+
+    for (Throwable t = ex; t != null; t = t.getCause()) {
+
+      if (!(t instanceof SQLException)) {
+        continue;
+      }
+
+      for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+        final String state = e.getSQLState();
+
+        // 40001: serialization failure, which MySQL also reports for deadlocks (1213).
+        // 40P01: PostgreSQL deadlock. 1205: MySQL lock wait timeout.
+        if ("40001".equals(state) || "40P01".equals(state)
+            || e.getErrorCode() == 1213 || e.getErrorCode() == 1205) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * The isolation level of a transaction.
+   */
+  public enum Isolation {
+    /**
+     * Uses the connection's current isolation level.
+     */
+    DEFAULT(-1),
+    READ_UNCOMMITTED(Connection.TRANSACTION_READ_UNCOMMITTED),
+    READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+    REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+    SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+    /**
+     * The JDBC isolation level constant, or -1 for {@link #DEFAULT}.
+     */
+    @Getter private final int level;
+
+    Isolation(final int level) {
+      this.level = level;
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.promise.Promise;
+import dev.demeng.pluginbase.text.Text;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import lombok.Getter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A registry of the statements a plugin uses most often, declared up front so that they can be
+ * prepared on the pooled connections before players start joining.
+ *
+ * <p>Registered statements are looked up by name, so the SQL is declared in a single place:</p>
+ *
+ * <pre>{@code
+ * sql.getStatements().register("load-player", "SELECT * FROM players WHERE uuid = ?");
+ * sql.getStatements().warmupAsync();
+ *
+ * sql.queryAsync(sql.getStatements().sql("load-player"), stmt -> stmt.setString(1, uuid), handler);
+ * }</pre>
+ */
+public class StatementRegistry {
+
+  @NotNull private final Sql owner;
+  @NotNull private final Map<String, NamedStatement> statements = new ConcurrentHashMap<>();
+
+  StatementRegistry(@NotNull final Sql owner) {
+    this.owner = owner;
+  }
+
+  /**
+   * Registers a statement, replacing any statement previously registered with the same name.
+   *
+   * @param name      The name of the statement
+   * @param statement The statement
+   * @return The registered statement
+   */
+  @NotNull
+  public NamedStatement register(
+      @NotNull final String name,
+      @Language("SQL") @NotNull final String statement) {
+    final NamedStatement named = new NamedStatement(name, statement);
+    this.statements.put(name, named);
+    return named;
+  }
+
+  /**
+   * Gets a registered statement.
+   *
+   * @param name The name of the statement
+   * @return The registered statement
+   * @throws IllegalArgumentException If no statement is registered with the name
+   */
+  @NotNull
+  public NamedStatement get(@NotNull final String name) {
+
+    final NamedStatement statement = this.statements.get(name);
+
+    if (statement == null) {
+      throw new IllegalArgumentException("No statement registered as " + name);
+    }
+
+    return statement;
+  }
+
+  /**
+   * Gets the SQL of a registered statement.
+   *
+   * @param name The name of the statement
+   * @return The SQL of the statement
+   * @throws IllegalArgumentException If no statement is registered with the name
+   */
+  @NotNull
+  public String sql(@NotNull final String name) {
+    return this.get(name).getStatement();
+  }
+
+  /**
+   * Gets every registered statement.
+   *
+   * @return The registered statements
+   */
+  @NotNull
+  public Collection<NamedStatement> getAll() {
+    return Collections.unmodifiableCollection(this.statements.values());
+  }
+
+  /**
+   * Prepares every registered statement on the idle connections of the primary pool and each
+   * replica pool, filling the driver's statement cache and the server's prepared statement cache.
+   *
+   * <p>At most the pool's minimum idle connections are warmed, as those are the ones the pool keeps
+   * open; connections above it would be retired once idle. Warming a pool stops as soon as a
+   * connection cannot be obtained or another caller is waiting for one, so the warmup never
+   * starves the plugin's own queries.</p>
+   *
+   * <p>Statements which fail to prepare are reported and skipped.</p>
+   *
+   * <p>This will be executed on whichever thread it's called from.</p>
+   *
+   * @return The number of statements prepared
+   */
+  public int warmup() {
+
+    if (this.statements.isEmpty()) {
+      return 0;
+    }
+
+    final long start = System.nanoTime();
+    final List<HikariDataSource> sources = new ArrayList<>();
+    sources.add(this.owner.getSource());
+    sources.addAll(this.owner.getReplicas());
+
+    int prepared = 0;
+    int connections = 0;
+
+    for (final HikariDataSource source : sources) {
+      final List<Connection> held = acquire(source);
+      connections += held.size();
+
+      try {
+        for (final Connection connection : held) {
+          for (final NamedStatement statement : this.statements.values()) {
+            if (statement.prepare(connection)) {
+              prepared++;
+            }
+          }
+        }
+
+      } finally {
+        for (final Connection connection : held) {
+          try {
+            connection.close();
+          } catch (final SQLException ignored) {
+          }
+        }
+      }
+    }
+
+    Text.log(Level.INFO, "Prepared " + this.statements.size() + " statements on "
+        + connections + " connections in "
+        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+
+    return prepared;
+  }
+
+  /**
+   * Prepares every registered statement on the idle pooled connections.
+   *
+   * <p>This will be executed on an asynchronous thread.</p>
+   *
+   * @return A Promise of the number of statements prepared
+   * @see #warmup() for details
+   */
+  @NotNull
+  public Promise<Integer> warmupAsync() {
+    return this.owner.supplyAsync(this::warmup);
+  }
+
+  @NotNull
+  private static List<Connection> acquire(@NotNull final HikariDataSource source) {
+
+    // Connections are held until the end, otherwise the pool would hand back the same one.
+    final List<Connection> connections = new ArrayList<>();
+    final int target = Math.min(source.getMinimumIdle(), source.getMaximumPoolSize());
+
+    while (connections.size() < target) {
+      final HikariPoolMXBean bean = source.getHikariPoolMXBean();
+
+      if (bean != null && bean.getThreadsAwaitingConnection() > 0) {
+        break;
+      }
+
+      try {
+        connections.add(source.getConnection());
+      } catch (final SQLException ex) {
+        break;
+      }
+    }
+
+    return connections;
+  }
+
+  /**
+   * A statement registered in a {@link StatementRegistry}.
+   */
+  public static final class NamedStatement {
+
+    /**
+     * The name of the statement.
+     */
+    @NotNull @Getter private final String name;
+
+    /**
+     * The SQL of the statement.
+     */
+    @NotNull @Getter private final String statement;
+
+    @NotNull private final Histogram prepareNanos = new Histogram();
+    private volatile boolean failed;
+
+    private NamedStatement(@NotNull final String name, @NotNull final String statement) {
+      this.name = name;
+      this.statement = statement;
+    }
+
+    /**
+     * Gets the time taken to prepare the statement on each connection during warmup, in
+     * nanoseconds.
+     *
+     * @return The prepare times
+     */
+    @NotNull
+    public Histogram.Snapshot getPrepareNanos() {
+      return this.prepareNanos.snapshot();
+    }
+
+    private boolean prepare(@NotNull final Connection connection) {
+
+      // An invalid statement would fail on every connection, so it is only reported once.
+      if (this.failed) {
+        return false;
+      }
+
+      final long start = System.nanoTime();
+
+      // Closing the statement returns it to the driver's cache rather than deallocating it.
+      try (final PreparedStatement s = connection.prepareStatement(this.statement)) {
+        s.getMetaData();
+        this.prepareNanos.record(System.nanoTime() - start);
+        return true;
+
+      } catch (final SQLException ex) {
+        // Other failures, such as a broken connection, may not recur on the next connection.
+        this.failed = isInvalid(ex);
+        Common.error(ex, "Failed to prepare SQL statement " + this.name + ".", false);
+        return false;
+      }
+    }
+
+    private static boolean isInvalid(@NotNull final SQLException ex) {
+      // SQLState class 42: syntax error or access rule violation.
+      return ex instanceof SQLSyntaxErrorException
+          || (ex.getSQLState() != null && ex.getSQLState().startsWith("42"));
+    }
+  }
+}
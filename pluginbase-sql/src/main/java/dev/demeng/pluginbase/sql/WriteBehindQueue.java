@@ -0,0 +1,507 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import be.bendem.sqlstreams.util.SqlConsumer;
+import dev.demeng.pluginbase.Common;
+import dev.demeng.pluginbase.Schedulers;
+import dev.demeng.pluginbase.delegate.Delegates;
+import dev.demeng.pluginbase.scheduler.Task;
+import dev.demeng.pluginbase.terminable.Terminable;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A write-behind queue that collects statements per SQL string and flushes them as JDBC batches
+ * once either the batch size or the flush interval is reached. Intended for high-volume,
+ * fire-and-forget writes such as statistic increments or logs.
+ *
+ * <p>Writes for the same statement are flushed in the order they were queued. No ordering is
+ * guaranteed between different statements.</p>
+ *
+ * <p>If a batch fails, for example because of a constraint violation, its writes are retried one
+ * at a time so that only the failing writes are lost. Retried writes may be applied after later
+ * writes of the same batch.</p>
+ *
+ * <p>Obtain an instance using {@link Sql#writeBehind()}, configure it, then call
+ * {@link #start()}. The queue is flushed and closed automatically when the owning {@link Sql} is
+ * closed.</p>
+ */
+public class WriteBehindQueue implements Terminable {
+
+  private static final int DEFAULT_BATCH_SIZE = 500;
+  private static final long DEFAULT_FLUSH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+  private static final int DEFAULT_CAPACITY = 10000;
+
+  @NotNull private final Sql owner;
+  @NotNull private final Map<String, StatementQueue> queues = new ConcurrentHashMap<>();
+  @NotNull private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  @Getter private int batchSize = DEFAULT_BATCH_SIZE;
+  @Getter private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+  @Getter private int capacity = DEFAULT_CAPACITY;
+  @NotNull @Getter private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+
+  @Nullable private Semaphore permits;
+  @Nullable private Task flushTask;
+
+  WriteBehindQueue(@NotNull final Sql owner) {
+    this.owner = owner;
+  }
+
+  /**
+   * Sets the number of queued writes for a single statement that triggers an immediate flush. This
+   * is also the maximum size of a single JDBC batch.
+   *
+   * @param batchSize The batch size, must be positive
+   * @return this
+   */
+  @NotNull
+  public WriteBehindQueue withBatchSize(final int batchSize) {
+    checkNotStarted();
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time a queued write may wait before being flushed.
+   *
+   * @param interval The flush interval, must be positive
+   * @param unit     The unit of the interval
+   * @return this
+   */
+  @NotNull
+  public WriteBehindQueue withFlushInterval(final long interval, @NotNull final TimeUnit unit) {
+    checkNotStarted();
+
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Flush interval must be positive");
+    }
+
+    this.flushInterval = unit.toMillis(interval);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of writes that may be queued across all statements.
+   *
+   * @param capacity The capacity, must be positive
+   * @return this
+   */
+  @NotNull
+  public WriteBehindQueue withCapacity(final int capacity) {
+    checkNotStarted();
+
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+
+    this.capacity = capacity;
+    return this;
+  }
+
+  /**
+   * Sets the policy applied when a write is queued while the queue is full. Defaults to
+   * {@link OverflowPolicy#REJECT}, as the other policies make the caller wait for the database,
+   * which stalls the server if writes are queued from the main thread.
+   *
+   * @param overflowPolicy The overflow policy
+   * @return this
+   */
+  @NotNull
+  public WriteBehindQueue withOverflowPolicy(@NotNull final OverflowPolicy overflowPolicy) {
+    checkNotStarted();
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  /**
+   * Starts the periodic flush task. Writes may only be queued after the queue has been started.
+   *
+   * @return this
+   */
+  @NotNull
+  public WriteBehindQueue start() {
+    checkNotStarted();
+
+    if (this.closed.get()) {
+      throw new IllegalStateException("Write-behind queue is closed");
+    }
+
+    this.permits = new Semaphore(this.capacity);
+    this.flushTask = Schedulers.async().runRepeating(task -> flush(),
+        this.flushInterval, TimeUnit.MILLISECONDS, this.flushInterval, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  /**
+   * Queues a write with no preparation.
+   *
+   * @param statement The statement to be executed
+   * @return True if the write was queued or executed, false if it was rejected
+   * @see #enqueue(String, SqlConsumer)
+   */
+  public boolean enqueue(@Language("SQL") @NotNull final String statement) {
+    return enqueue(statement, stmt -> {
+    });
+  }
+
+  /**
+   * Queues a write to be executed as part of a batch with other writes of the same statement.
+   *
+   * <p>If the queue is full, the configured {@link OverflowPolicy} is applied.</p>
+   *
+   * @param statement The statement to be executed
+   * @param preparer  The preparation used for this statement
+   * @return True if the write was queued or executed, false if it was rejected
+   */
+  public boolean enqueue(
+      @Language("SQL") @NotNull final String statement,
+      @NotNull final SqlConsumer<PreparedStatement> preparer) {
+
+    final Semaphore semaphore = this.permits;
+
+    if (semaphore == null) {
+      throw new IllegalStateException("Write-behind queue has not been started");
+    }
+
+    if (this.closed.get()) {
+      return false;
+    }
+
+    final StatementQueue queue = this.queues.computeIfAbsent(statement, StatementQueue::new);
+
+    if (!semaphore.tryAcquire()) {
+      switch (this.overflowPolicy) {
+        case BLOCK:
+          // Give the full statement a chance to drain before waiting for space.
+          this.owner.supplyAsync(Delegates.runnableToSupplier(() -> queue.flush(false)));
+          try {
+            semaphore.acquire();
+          } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            queue.rejected.incrementAndGet();
+            return false;
+          }
+          break;
+        case CALLER_RUNS:
+          queue.overflowed.incrementAndGet();
+          // Earlier writes of the statement are sent first, so they are not overtaken.
+          queue.flush(true);
+          this.owner.execute(statement, preparer);
+          return true;
+        case REJECT:
+          queue.rejected.incrementAndGet();
+          return false;
+        default:
+          throw new AssertionError();
+      }
+    }
+
+    queue.writes.add(preparer);
+    final long size = queue.size.incrementAndGet();
+
+    if (this.closed.get()) {
+      // Closed while queuing, so the final flush may have already run.
+      queue.flush(true);
+      return true;
+    }
+
+    if (size >= this.batchSize && !queue.lock.isLocked()) {
+      this.owner.supplyAsync(Delegates.runnableToSupplier(() -> queue.flush(false)));
+    }
+
+    return true;
+  }
+
+  /**
+   * Flushes every queued write on the calling thread.
+   */
+  public void flush() {
+    for (final StatementQueue queue : this.queues.values()) {
+      queue.flush(true);
+    }
+  }
+
+  /**
+   * Gets the number of writes currently waiting to be flushed.
+   *
+   * @return The number of queued writes
+   */
+  public int getPending() {
+    final Semaphore semaphore = this.permits;
+    return semaphore == null ? 0 : this.capacity - semaphore.availablePermits();
+  }
+
+  /**
+   * Gets a snapshot of the flush statistics for each statement that has been queued.
+   *
+   * @return An unmodifiable map of statement to statistics
+   */
+  @NotNull
+  public Map<String, FlushStatistics> getStatistics() {
+    final Map<String, FlushStatistics> statistics = new LinkedHashMap<>();
+
+    for (final StatementQueue queue : this.queues.values()) {
+      statistics.put(queue.statement, queue.snapshot());
+    }
+
+    return Collections.unmodifiableMap(statistics);
+  }
+
+  @Override
+  public boolean isClosed() {
+    return this.closed.get();
+  }
+
+  /**
+   * Stops the flush task and flushes every remaining write on the calling thread.
+   */
+  @Override
+  public void close() {
+
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    if (this.flushTask != null) {
+      this.flushTask.stop();
+    }
+
+    flush();
+  }
+
+  private void checkNotStarted() {
+    if (this.permits != null) {
+      throw new IllegalStateException("Write-behind queue has already been started");
+    }
+  }
+
+  /**
+   * The policy applied when a write is queued while the queue is at capacity.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Blocks the calling thread until space is available. Should not be used if writes are queued
+     * from the main thread.
+     */
+    BLOCK,
+    /**
+     * Flushes the writes already queued for the statement, then executes the write immediately,
+     * both on the calling thread. Should not be used if writes are queued from the main thread, as
+     * the write then blocks it on the database.
+     */
+    CALLER_RUNS,
+    /**
+     * Discards the write and returns false. This is the default.
+     */
+    REJECT
+  }
+
+  /**
+   * An immutable snapshot of the flush statistics of a single statement.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class FlushStatistics {
+
+    /**
+     * The number of writes currently waiting to be flushed.
+     */
+    private final int pending;
+
+    /**
+     * The number of batches that have been executed.
+     */
+    private final long flushes;
+
+    /**
+     * The number of writes that have been executed successfully.
+     */
+    private final long written;
+
+    /**
+     * The number of writes in batches that failed.
+     */
+    private final long failed;
+
+    /**
+     * The number of writes that were executed directly because the queue was full.
+     */
+    private final long overflowed;
+
+    /**
+     * The number of writes that were discarded because the queue was full.
+     */
+    private final long rejected;
+
+    /**
+     * The total time spent executing batches, in nanoseconds.
+     */
+    private final long flushNanos;
+
+    /**
+     * Gets the average time spent executing a single batch.
+     *
+     * @param unit The unit to return in
+     * @return The average flush time, or 0 if nothing has been flushed yet
+     */
+    public long getAverageFlushTime(@NotNull final TimeUnit unit) {
+      return this.flushes == 0 ? 0 : unit.convert(this.flushNanos / this.flushes,
+          TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private final class StatementQueue {
+
+    @NotNull private final String statement;
+    @NotNull private final Queue<SqlConsumer<PreparedStatement>> writes =
+        new ConcurrentLinkedQueue<>();
+    @NotNull private final ReentrantLock lock = new ReentrantLock();
+
+    @NotNull private final AtomicLong size = new AtomicLong();
+    @NotNull private final AtomicLong flushes = new AtomicLong();
+    @NotNull private final AtomicLong written = new AtomicLong();
+    @NotNull private final AtomicLong failed = new AtomicLong();
+    @NotNull private final AtomicLong overflowed = new AtomicLong();
+    @NotNull private final AtomicLong rejected = new AtomicLong();
+    @NotNull private final AtomicLong flushNanos = new AtomicLong();
+
+    private StatementQueue(@NotNull final String statement) {
+      this.statement = statement;
+    }
+
+    private void flush(final boolean wait) {
+
+      if (wait) {
+        this.lock.lock();
+      } else if (!this.lock.tryLock()) {
+        return;
+      }
+
+      try {
+        while (!this.writes.isEmpty()) {
+          flushBatch();
+        }
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    private void flushBatch() {
+
+      // Chunks are committed separately, so a failing write only affects its own chunk.
+      final BatchBuilder builder = WriteBehindQueue.this.owner.batch(this.statement)
+          .withAtomic(false);
+      final List<SqlConsumer<PreparedStatement>> batch = new ArrayList<>();
+
+      SqlConsumer<PreparedStatement> write;
+      while (batch.size() < WriteBehindQueue.this.batchSize
+          && (write = this.writes.poll()) != null) {
+        builder.batch(write);
+        batch.add(write);
+      }
+
+      final int count = batch.size();
+
+      if (count == 0) {
+        return;
+      }
+
+      this.size.addAndGet(-count);
+      final long start = System.nanoTime();
+
+      try {
+        final BatchResult result = WriteBehindQueue.this.owner.executeBatchWithResult(builder);
+        this.written.addAndGet(result.getCommittedRows());
+
+        for (final BatchResult.Chunk chunk : result.getChunks()) {
+          if (chunk.getStatus() != BatchResult.Status.COMMITTED) {
+            this.retryRows(batch.subList(chunk.getFirstRow(),
+                chunk.getFirstRow() + chunk.getRowCount()));
+          }
+        }
+      } finally {
+        this.flushNanos.addAndGet(System.nanoTime() - start);
+        this.flushes.incrementAndGet();
+        if (WriteBehindQueue.this.permits != null) {
+          WriteBehindQueue.this.permits.release(count);
+        }
+      }
+    }
+
+    /**
+     * Executes the writes of a failed chunk one at a time, so that only the writes which fail on
+     * their own are lost.
+     */
+    private void retryRows(@NotNull final List<SqlConsumer<PreparedStatement>> rows) {
+
+      for (final SqlConsumer<PreparedStatement> row : rows) {
+        final BatchResult result = WriteBehindQueue.this.owner.executeBatchWithResult(
+            WriteBehindQueue.this.owner.batch(this.statement).batch(row));
+
+        if (result.isSuccessful()) {
+          this.written.incrementAndGet();
+          continue;
+        }
+
+        this.failed.incrementAndGet();
+
+        for (final BatchResult.Chunk chunk : result.getFailedChunks()) {
+          Common.error(chunk.getError(), "Failed to flush write-behind SQL write.", false);
+        }
+      }
+    }
+
+    @NotNull
+    private FlushStatistics snapshot() {
+      return new FlushStatistics((int) this.size.get(), this.flushes.get(), this.written.get(),
+          this.failed.get(), this.overflowed.get(), this.rejected.get(), this.flushNanos.get());
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Demeng Chen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package dev.demeng.pluginbase.sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import dev.demeng.pluginbase.plugin.BaseManager;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SqlEmbeddedTest {
+
+  // Longer than any of the tests should take, but well below the connection timeout.
+  private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+  @TempDir Path directory;
+
+  private Sql sql;
+
+  @BeforeAll
+  static void setUpPlugin() {
+    final JavaPlugin plugin = mock(JavaPlugin.class);
+    when(plugin.getDescription()).thenReturn(
+        new PluginDescriptionFile("SqlEmbeddedTest", "1.0", SqlEmbeddedTest.class.getName()));
+    when(plugin.getLogger()).thenReturn(Logger.getLogger("SqlEmbeddedTest"));
+    BaseManager.setPlugin(plugin);
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (this.sql != null) {
+      this.sql.close();
+    }
+  }
+
+  private void open(final String driver) {
+    final File file = this.directory.resolve("test").toFile();
+    this.sql = new Sql(driver, null, SqlCredentials.ofFile(file));
+    this.sql.execute("CREATE TABLE players (id INT PRIMARY KEY, name VARCHAR(32) NOT NULL)");
+  }
+
+  private int count() {
+    return this.sql.query("SELECT COUNT(*) FROM players", r -> {
+      r.next();
+      return r.getInt(1);
+    }).orElse(-1);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {Sql.SQLITE_DRIVER, Sql.H2_DRIVER})
+  void testExecuteAndQuery(final String driver) {
+    this.open(driver);
+
+    this.sql.execute("INSERT INTO players (id, name) VALUES (?, ?)", s -> {
+      s.setInt(1, 1);
+      s.setString(2, "Demeng");
+    });
+
+    final Optional<String> name = this.sql.query("SELECT name FROM players WHERE id = ?",
+        s -> s.setInt(1, 1), r -> r.next() ? r.getString(1) : null);
+
+    assertEquals(Optional.of("Demeng"), name);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {Sql.SQLITE_DRIVER, Sql.H2_DRIVER})
+  void testNestedCallsJoinTransaction(final String driver) {
+    this.open(driver);
+
+    // The writer pool has a single connection, so nested calls would otherwise wait for it until
+    // the connection timeout.
+    final int seen = assertTimeoutPreemptively(TIMEOUT, () -> this.sql.transaction(tx -> {
+      tx.execute("INSERT INTO players (id, name) VALUES (1, 'a')");
+      this.sql.execute("INSERT INTO players (id, name) VALUES (2, 'b')");
+      this.sql.batch("INSERT INTO players (id, name) VALUES (?, ?)")
+          .values(3, "c")
+          .values(4, "d")
+          .execute();
+      this.sql.transaction(nested -> nested.execute("INSERT INTO players VALUES (5, 'e')"));
+      return this.count();
+    })).orElse(-1);
+
+    assertEquals(5, seen);
+    assertEquals(5, this.count());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {Sql.SQLITE_DRIVER, Sql.H2_DRIVER})
+  void testNestedCallsRollBackWithTransaction(final String driver) {
+    this.open(driver);
+
+    assertThrows(IllegalStateException.class,
+        () -> assertTimeoutPreemptively(TIMEOUT, () -> this.sql.transaction(tx -> {
+          this.sql.execute("INSERT INTO players (id, name) VALUES (1, 'a')");
+          this.sql.transaction(nested -> nested.execute("INSERT INTO players VALUES (2, 'b')"));
+          throw new IllegalStateException("Abort");
+        })));
+
+    assertEquals(0, this.count());
+
+    // The connection is usable again once the transaction has ended.
+    this.sql.execute("INSERT INTO players (id, name) VALUES (3, 'c')");
+    assertEquals(1, this.count());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {Sql.SQLITE_DRIVER, Sql.H2_DRIVER})
+  void testQueryStreamIgnoresStreamingFetchSize(final String driver) {
+    this.open(driver);
+
+    final BatchBuilder batch = this.sql.batch("INSERT INTO players (id, name) VALUES (?, ?)");
+    for (int i = 0; i < 10; i++) {
+      batch.values(i, "player" + i);
+    }
+    this.sql.executeBatch(batch);
+
+    try (final Stream<Integer> ids = this.sql.queryStream("SELECT id FROM players ORDER BY id",
+        s -> {
+        }, r -> r.getInt(1), Sql.STREAMING_FETCH_SIZE)) {
+      final List<Integer> collected = ids.collect(Collectors.toList());
+      assertEquals(10, collected.size());
+      assertEquals(9, collected.get(9));
+    }
+  }
+}